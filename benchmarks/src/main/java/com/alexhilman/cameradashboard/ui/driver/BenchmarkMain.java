@@ -0,0 +1,97 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks with the usual JMH options and always profiles allocation, then summarizes each benchmark in
+ * frames per second, nanoseconds per frame and allocation:
+ * <pre>
+ * {@code
+ * java -jar target/benchmarks.jar [JMH options] [benchmark regexp]
+ * }
+ * </pre>
+ */
+public class BenchmarkMain {
+    private static final String SUMMARY_FORMAT = "%-50s %14s %14s %12s %12s%n";
+
+    public static void main(final String[] args) throws Exception {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions)
+                                                                  .addProfiler(GCProfiler.class);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            options.include(MotionDetectionBenchmark.class.getSimpleName());
+        }
+
+        final Runner runner = new Runner(options.build());
+        if (commandLineOptions.shouldList()) {
+            runner.list();
+            return;
+        }
+        printSummary(runner.run());
+    }
+
+    private static void printSummary(final Collection<RunResult> results) {
+        System.out.println();
+        System.out.printf(SUMMARY_FORMAT, "Benchmark", "ns/frame", "frames/s", "B/frame", "MB/s");
+        for (final RunResult result : results) {
+            final Result primary = result.getPrimaryResult();
+            final String name = simpleNameOf(result.getParams().getBenchmark()) + paramsOf(result);
+            if (!"ns/op".equals(primary.getScoreUnit())) {
+                // another mode was asked for; JMH's own report has it
+                continue;
+            }
+            final double nanosPerFrame = primary.getScore();
+            System.out.printf(SUMMARY_FORMAT,
+                              name,
+                              String.format("%.1f", nanosPerFrame),
+                              String.format("%.1f", 1e9 / nanosPerFrame),
+                              secondary(result, "gc.alloc.rate.norm"),
+                              secondary(result, "gc.alloc.rate"));
+        }
+    }
+
+    /**
+     * @return Benchmark name without its package, e.g. {@code MotionDetectionBenchmark.detect}
+     */
+    private static String simpleNameOf(final String benchmark) {
+        final int method = benchmark.lastIndexOf('.');
+        return benchmark.substring(benchmark.lastIndexOf('.', method - 1) + 1);
+    }
+
+    private static String paramsOf(final RunResult result) {
+        final StringBuilder params = new StringBuilder();
+        for (final String key : result.getParams().getParamsKeys()) {
+            params.append(params.length() == 0 ? " (" : ", ")
+                  .append(key)
+                  .append('=')
+                  .append(result.getParams().getParam(key));
+        }
+        return params.length() == 0 ? "" : params.append(')').toString();
+    }
+
+    /**
+     * The profiler's results are labelled with a prefix, which differs between JMH versions.
+     */
+    private static String secondary(final RunResult result, final String label) {
+        for (final Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+            if (secondary.getKey().endsWith("\u00b7" + label) || secondary.getKey().equals(label)) {
+                return String.format("%.1f", secondary.getValue().getScore());
+            }
+        }
+        return "-";
+    }
+}
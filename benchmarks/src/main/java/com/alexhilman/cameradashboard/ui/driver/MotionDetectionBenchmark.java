@@ -0,0 +1,183 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacpp.opencv_video;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.javacpp.avutil.AV_PIX_FMT_GRAY8;
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.javacpp.opencv_core.cvCopy;
+import static org.bytedeco.javacpp.opencv_core.cvCountNonZero;
+
+/**
+ * Replays a {@link SyntheticClip} through the steps the motion pipeline takes for every sampled frame. Each
+ * invocation handles one frame, so the scores are in nanoseconds per frame; {@link BenchmarkMain} adds frames per
+ * second and the allocation rate.
+ * <ul>
+ * <li>{@code decode}: decoding a packet and scaling it to a grayscale analysis image</li>
+ * <li>{@code mog2Apply}: applying an analysis image to the MOG2 background model</li>
+ * <li>{@code countNonZero}: counting the foreground pixels of a mask</li>
+ * <li>{@code integerSampler}: sampling a count and averaging the samples</li>
+ * <li>{@code detect}: all of {@link MotionDetector#detect}</li>
+ * <li>{@code decodeAndDetect}: decoding and detecting, as the pipeline does for a sampled frame</li>
+ * </ul>
+ * The analysis images and masks of the steps that do not decode are prepared once, so every step is measured alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class MotionDetectionBenchmark {
+    @Param({"h264", "mjpeg"})
+    public String codec;
+
+    private SyntheticClip clip;
+    private List<avcodec.AVPacket> packets;
+    private PacketDecoder decoder;
+    private opencv_core.IplImage[] images;
+    private opencv_core.Mat[] imageMats;
+    private opencv_core.IplImage[] masks;
+    private int[] counts;
+    private opencv_video.BackgroundSubtractorMOG2 mog;
+    private opencv_core.IplImage mask;
+    private opencv_core.Mat maskMat;
+    private IntegerSampler sampler;
+    private MotionDetector motionDetector;
+    private int packetIndex;
+    private int frameIndex;
+
+    @Setup
+    public void setup() throws IOException {
+        clip = SyntheticClip.open(codec);
+        packets = clip.getPackets();
+        final int width = MotionProcessor.DEFAULT_ANALYSIS_WIDTH;
+        final int height = MotionProcessor.DEFAULT_ANALYSIS_HEIGHT;
+
+        try (final PacketDecoder frameDecoder = newDecoder();
+             final opencv_video.BackgroundSubtractorMOG2 frameMog = MotionDetector.newBackgroundSubtractor()) {
+            images = new opencv_core.IplImage[packets.size()];
+            imageMats = new opencv_core.Mat[packets.size()];
+            masks = new opencv_core.IplImage[packets.size()];
+            counts = new int[packets.size()];
+            int frames = 0;
+            for (final avcodec.AVPacket packet : packets) {
+                final opencv_core.IplImage image = frameDecoder.decode(packet, true);
+                if (image == null) {
+                    continue;
+                }
+                images[frames] = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, 1);
+                cvCopy(image, images[frames]);
+                imageMats[frames] = new opencv_core.Mat(images[frames]);
+                masks[frames] = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, 1);
+                try (final opencv_core.Mat frameMask = new opencv_core.Mat(masks[frames])) {
+                    frameMog.apply(imageMats[frames], frameMask, MotionDetector.LEARNING_RATE);
+                }
+                counts[frames] = cvCountNonZero(masks[frames]);
+                frames++;
+            }
+            images = Arrays.copyOf(images, frames);
+            imageMats = Arrays.copyOf(imageMats, frames);
+            masks = Arrays.copyOf(masks, frames);
+            counts = Arrays.copyOf(counts, frames);
+        }
+        if (images.length == 0) {
+            throw new IOException("No frames could be decoded from the " + codec + " clip");
+        }
+
+        decoder = newDecoder();
+        mog = MotionDetector.newBackgroundSubtractor();
+        mask = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, 1);
+        maskMat = new opencv_core.Mat(mask);
+        sampler = IntegerSampler.forSamples(5);
+        motionDetector = new MotionDetector(width, height);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        motionDetector.close();
+        maskMat.close();
+        mask.close();
+        mog.close();
+        decoder.close();
+        for (int i = 0; i < images.length; i++) {
+            imageMats[i].close();
+            images[i].close();
+            masks[i].close();
+        }
+        clip.close();
+    }
+
+    @Benchmark
+    public opencv_core.IplImage decode() {
+        return decoder.decode(nextPacket(), true);
+    }
+
+    @Benchmark
+    public opencv_core.Mat mog2Apply() {
+        mog.apply(imageMats[nextFrame()], maskMat, MotionDetector.LEARNING_RATE);
+        return maskMat;
+    }
+
+    @Benchmark
+    public int countNonZero() {
+        return cvCountNonZero(masks[nextFrame()]);
+    }
+
+    @Benchmark
+    public int integerSampler() {
+        sampler.sample(counts[nextFrame()]);
+        return sampler.average();
+    }
+
+    @Benchmark
+    public boolean detect() {
+        return motionDetector.detect(images[nextFrame()]);
+    }
+
+    @Benchmark
+    public boolean decodeAndDetect() {
+        final opencv_core.IplImage image = decoder.decode(nextPacket(), true);
+        return image != null && motionDetector.detect(image);
+    }
+
+    private PacketDecoder newDecoder() {
+        return new PacketDecoder(clip.getVideoStream(),
+                                 MotionProcessor.DEFAULT_ANALYSIS_WIDTH,
+                                 MotionProcessor.DEFAULT_ANALYSIS_HEIGHT,
+                                 AV_PIX_FMT_GRAY8);
+    }
+
+    /**
+     * The clip loops; it starts with a key frame, so the decoder picks up where it began.
+     */
+    private avcodec.AVPacket nextPacket() {
+        final avcodec.AVPacket packet = packets.get(packetIndex);
+        packetIndex = (packetIndex + 1) % packets.size();
+        return packet;
+    }
+
+    private int nextFrame() {
+        final int frame = frameIndex;
+        frameIndex = (frameIndex + 1) % images.length;
+        return frame;
+    }
+}
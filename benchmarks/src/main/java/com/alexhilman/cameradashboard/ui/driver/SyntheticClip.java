@@ -0,0 +1,215 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avformat;
+import org.bytedeco.javacpp.indexer.UByteIndexer;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bytedeco.javacpp.avcodec.AV_CODEC_ID_H264;
+import static org.bytedeco.javacpp.avcodec.AV_CODEC_ID_MJPEG;
+import static org.bytedeco.javacpp.avcodec.av_packet_alloc;
+import static org.bytedeco.javacpp.avcodec.av_packet_free;
+import static org.bytedeco.javacpp.avcodec.av_packet_ref;
+import static org.bytedeco.javacpp.avcodec.av_packet_unref;
+import static org.bytedeco.javacpp.avutil.AVMEDIA_TYPE_VIDEO;
+import static org.bytedeco.javacpp.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.javacpp.avutil.AV_PIX_FMT_YUVJ420P;
+import static org.bytedeco.javacpp.opencv_core.CV_8UC3;
+import static org.bytedeco.javacpp.opencv_core.FONT_HERSHEY_SIMPLEX;
+import static org.bytedeco.javacpp.opencv_imgproc.circle;
+import static org.bytedeco.javacpp.opencv_imgproc.putText;
+import static org.bytedeco.javacpp.opencv_imgproc.rectangle;
+
+/**
+ * A camera-like clip of shapes and a frame counter moving over a textured background, which keep the motion detector
+ * busy. The frames are drawn with OpenCV and encoded with the FFmpeg libraries JavaCV bundles the first time the clip
+ * is needed; FFmpeg's own test patterns are not used, since its devices need X libraries a headless host lacks. The
+ * clip is kept in {@code target/clips}, so every run replays the same bytes. Its packets are read into memory once, so
+ * the benchmarks measure no I/O.
+ */
+class SyntheticClip implements AutoCloseable {
+    static final int WIDTH = 1280;
+    static final int HEIGHT = 720;
+    static final int FRAME_RATE = 15;
+    private static final int SECONDS = 20;
+    private static final File CLIP_DIRECTORY = new File(System.getProperty("clipDirectory", "target/clips"));
+
+    private final FFmpegFrameGrabber grabber;
+    private final avformat.AVStream videoStream;
+    private final List<avcodec.AVPacket> packets = new ArrayList<>();
+
+    private SyntheticClip(final File clip) throws IOException {
+        grabber = new FFmpegFrameGrabber(clip);
+        grabber.start();
+        final avformat.AVFormatContext formatContext = grabber.getFormatContext();
+        final int videoStreamIndex = videoStreamIndexOf(formatContext);
+        videoStream = formatContext.streams(videoStreamIndex);
+
+        avcodec.AVPacket packet;
+        while ((packet = grabber.grabPacket()) != null) {
+            try {
+                if (packet.stream_index() == videoStreamIndex) {
+                    final avcodec.AVPacket copy = av_packet_alloc();
+                    if (av_packet_ref(copy, packet) < 0) {
+                        av_packet_free(copy);
+                        throw new IOException("Could not copy packet of " + clip);
+                    }
+                    packets.add(copy);
+                }
+            } finally {
+                av_packet_unref(packet);
+            }
+        }
+        if (packets.isEmpty()) {
+            throw new IOException("No video packets in " + clip);
+        }
+    }
+
+    /**
+     * Opens the clip of a codec, generating it if it does not exist yet.
+     *
+     * @param codec {@code h264} for the inter-coded streams of RTSP cameras, {@code mjpeg} for the intra-coded streams
+     *              of HTTP cameras
+     * @return The clip's packets in memory
+     * @throws IOException If the clip cannot be generated or read
+     */
+    static SyntheticClip open(final String codec) throws IOException {
+        final File clip = new File(CLIP_DIRECTORY, "shapes-" + WIDTH + "x" + HEIGHT + "-" + codec + ".mkv");
+        if (!clip.isFile()) {
+            generate(codec, clip);
+        }
+        return new SyntheticClip(clip);
+    }
+
+    avformat.AVStream getVideoStream() {
+        return videoStream;
+    }
+
+    List<avcodec.AVPacket> getPackets() {
+        return packets;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final avcodec.AVPacket packet : packets) {
+            av_packet_free(packet);
+        }
+        packets.clear();
+        grabber.close();
+    }
+
+    private static void generate(final String codec, final File clip) throws IOException {
+        if (!CLIP_DIRECTORY.isDirectory() && !CLIP_DIRECTORY.mkdirs()) {
+            throw new IOException("Could not create " + CLIP_DIRECTORY);
+        }
+
+        final File partial = new File(CLIP_DIRECTORY, clip.getName() + ".partial");
+        final OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        try (final opencv_core.Mat background = newBackground();
+             final opencv_core.Mat image = new opencv_core.Mat(HEIGHT, WIDTH, CV_8UC3);
+             final FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(partial, WIDTH, HEIGHT, 0)) {
+            recorder.setFormat("matroska");
+            recorder.setFrameRate(FRAME_RATE);
+            switch (codec) {
+                case "h264":
+                    recorder.setVideoCodec(AV_CODEC_ID_H264);
+                    recorder.setPixelFormat(AV_PIX_FMT_YUV420P);
+                    // cameras stream without B-frames and with a key frame every couple of seconds
+                    recorder.setGopSize(FRAME_RATE * 2);
+                    recorder.setVideoOption("tune", "zerolatency");
+                    break;
+                case "mjpeg":
+                    recorder.setVideoCodec(AV_CODEC_ID_MJPEG);
+                    recorder.setPixelFormat(AV_PIX_FMT_YUVJ420P);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown codec " + codec);
+            }
+            recorder.start();
+
+            for (int frame = 0; frame < FRAME_RATE * SECONDS; frame++) {
+                background.copyTo(image);
+                draw(image, frame);
+                recorder.record(converter.convert(image));
+            }
+            recorder.stop();
+        }
+        Files.move(partial.toPath(), clip.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * A fixed grid of gradients, so the encoders have detail to spend bits on as they do for a real scene.
+     */
+    private static opencv_core.Mat newBackground() {
+        final opencv_core.Mat background = new opencv_core.Mat(HEIGHT, WIDTH, CV_8UC3);
+        final UByteIndexer pixels = background.createIndexer();
+        try {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    pixels.put(y, x, 0, (x * 255 / WIDTH + (y / 40) * 16) & 0xff);
+                    pixels.put(y, x, 1, (y * 255 / HEIGHT + (x / 40) * 16) & 0xff);
+                    pixels.put(y, x, 2, ((x ^ y) & 0x3f) + 96);
+                }
+            }
+        } finally {
+            pixels.release();
+        }
+        return background;
+    }
+
+    /**
+     * Shapes crossing the frame at different speeds, and a counter which changes every frame.
+     */
+    private static void draw(final opencv_core.Mat image, final int frame) {
+        final int square = bounce(frame * 9, WIDTH - 160);
+        rectangle(image,
+                  new opencv_core.Point(square, 120),
+                  new opencv_core.Point(square + 160, 280),
+                  new opencv_core.Scalar(255, 255, 255, 0),
+                  -1, 8, 0);
+        circle(image,
+               new opencv_core.Point(WIDTH / 2, 100 + bounce(frame * 5, HEIGHT - 200)),
+               100,
+               new opencv_core.Scalar(0, 0, 255, 0),
+               -1, 8, 0);
+        rectangle(image,
+                  new opencv_core.Point(bounce(frame * 3, WIDTH - 320), HEIGHT - 160),
+                  new opencv_core.Point(bounce(frame * 3, WIDTH - 320) + 320, HEIGHT - 40),
+                  new opencv_core.Scalar(0, 255, 0, 0),
+                  -1, 8, 0);
+        putText(image,
+                String.format("%05d", frame),
+                new opencv_core.Point(40, 80),
+                FONT_HERSHEY_SIMPLEX,
+                2,
+                new opencv_core.Scalar(0, 0, 0, 0),
+                4, 8, false);
+    }
+
+    /**
+     * @return {@code distance} folded back and forth within {@code [0, range]}
+     */
+    private static int bounce(final int distance, final int range) {
+        final int folded = distance % (2 * range);
+        return folded <= range ? folded : 2 * range - folded;
+    }
+
+    private static int videoStreamIndexOf(final avformat.AVFormatContext formatContext) throws IOException {
+        for (int i = 0; i < formatContext.nb_streams(); i++) {
+            if (formatContext.streams(i).codecpar().codec_type() == AVMEDIA_TYPE_VIDEO) {
+                return i;
+            }
+        }
+        throw new IOException("No video stream");
+    }
+}
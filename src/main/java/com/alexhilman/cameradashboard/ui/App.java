@@ -1,11 +1,12 @@
 package com.alexhilman.cameradashboard.ui;
 
+import com.alexhilman.cameradashboard.ui.video.LiveStreamServlet;
+import com.alexhilman.cameradashboard.ui.video.MovieResourceHandler;
 import com.google.common.base.Strings;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
-import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.server.handler.ShutdownHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.resource.Resource;
@@ -40,11 +41,9 @@ public class App {
         try {
             final Server server = new Server(PORT);
 
-            final ResourceHandler resourceHandler = new ResourceHandler();
-            resourceHandler.setDirectoriesListed(true);
-            resourceHandler.setResourceBase(cameraDashboardProperties.getProperty("cameradashboard.video.location"));
             final ContextHandler moviesContext = new ContextHandler("/movies");
-            moviesContext.setHandler(resourceHandler);
+            moviesContext.setHandler(new MovieResourceHandler(
+                    new File(cameraDashboardProperties.getProperty("cameradashboard.video.location"))));
 
             final WebAppContext webAppContext = new WebAppContext() {
                 @Override
@@ -60,6 +59,7 @@ public class App {
             webAppContext.setContextPath("/ui");
             final ServletHolder servletHolder = webAppContext.addServlet(MyVaadinUI.MyVaadinServlet.class, "/*");
             servletHolder.setInitOrder(0);
+            webAppContext.addServlet(LiveStreamServlet.class, "/live/*");
             webAppContext.setBaseResource(Resource.newClassPathResource("webapp"));
 
             final ShutdownHandler shutdownHandler = new ShutdownHandler("dccb2e0d-3f38-4ba1-9d05-4e810294aa18",
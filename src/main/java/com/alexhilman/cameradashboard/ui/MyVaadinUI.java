@@ -1,7 +1,12 @@
 package com.alexhilman.cameradashboard.ui;
 
 import com.alexhilman.cameradashboard.ui.inject.CameraDashboardInitializer;
+import com.alexhilman.cameradashboard.ui.video.CameraConfigurationWatcher;
 import com.alexhilman.cameradashboard.ui.video.CameraWatcher;
+import com.alexhilman.cameradashboard.ui.video.LiveStreamServlet;
+import com.alexhilman.cameradashboard.ui.video.LiveStreams;
+import com.alexhilman.cameradashboard.ui.video.RetentionService;
+import com.alexhilman.cameradashboard.ui.video.SystemMetricsSampler;
 import com.alexhilman.cameradashboard.ui.view.ErrorView;
 import com.alexhilman.cameradashboard.ui.view.ViewContainer;
 import com.alexhilman.cameradashboard.ui.view.layout.RootLayout;
@@ -23,6 +28,7 @@ import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.URL;
 
@@ -44,6 +50,12 @@ public class MyVaadinUI extends UI {
     @PackagesToScan(value = "com.alexhilman.cameradashboard.ui")
     @CameraDashboardInitializer
     public static class MyVaadinServlet extends GuiceVaadinServlet {
+        private CameraWatcher cameraWatcher;
+        private CameraConfigurationWatcher cameraConfigurationWatcher;
+        private RetentionService retentionService;
+        private LiveStreams liveStreams;
+        private SystemMetricsSampler systemMetricsSampler;
+
         private static final org.slf4j.Logger getLogger() {
             return LoggerFactory.getLogger(VaadinServlet.class);
         }
@@ -94,7 +106,46 @@ public class MyVaadinUI extends UI {
                 throw new IllegalStateException("Cannot get the injector");
             }
 
-            injector.getInstance(CameraWatcher.class).start();
+            retentionService = injector.getInstance(RetentionService.class);
+            retentionService.start();
+
+            systemMetricsSampler = injector.getInstance(SystemMetricsSampler.class);
+            systemMetricsSampler.start();
+
+            cameraWatcher = injector.getInstance(CameraWatcher.class);
+            cameraWatcher.start();
+
+            liveStreams = injector.getInstance(LiveStreams.class);
+            liveStreams.start();
+            servletConfig.getServletContext().setAttribute(LiveStreamServlet.LIVE_STREAMS_ATTRIBUTE, liveStreams);
+
+            cameraConfigurationWatcher = injector.getInstance(CameraConfigurationWatcher.class);
+            try {
+                cameraConfigurationWatcher.start();
+            } catch (IOException e) {
+                getLogger().warn("Cannot watch the camera configuration; changes need a restart", e);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            if (cameraConfigurationWatcher != null) {
+                cameraConfigurationWatcher.stop();
+            }
+            if (liveStreams != null) {
+                getServletContext().removeAttribute(LiveStreamServlet.LIVE_STREAMS_ATTRIBUTE);
+                liveStreams.stop();
+            }
+            if (cameraWatcher != null) {
+                cameraWatcher.stop();
+            }
+            if (systemMetricsSampler != null) {
+                systemMetricsSampler.stop();
+            }
+            if (retentionService != null) {
+                retentionService.stop();
+            }
+            super.destroy();
         }
     }
 }
\ No newline at end of file
@@ -15,16 +15,19 @@ public class Camera {
     private final String username;
     private final String password;
     private final List<StreamSource> streams;
+    private final List<MotionZone> zones;
 
     @JsonCreator
     public Camera(@JsonProperty(value = "name", required = true) final String name,
                   @JsonProperty("username") final String username,
                   @JsonProperty("password") final String password,
-                  @JsonProperty("streams") final List<StreamSource> streams) {
+                  @JsonProperty("streams") final List<StreamSource> streams,
+                  @JsonProperty("zones") final List<MotionZone> zones) {
         this.name = checkNotNull(name, "name cannot be null");
         this.username = username;
         this.password = password;
         this.streams = ImmutableList.copyOf(checkNotNull(streams, "streams cannot be null"));
+        this.zones = zones == null ? ImmutableList.of() : ImmutableList.copyOf(zones);
     }
 
     public String getName() {
@@ -43,6 +46,15 @@ public class Camera {
         return streams;
     }
 
+    /**
+     * Zones watched for motion; empty to watch the whole picture.
+     *
+     * @return Motion zones
+     */
+    public List<MotionZone> getZones() {
+        return zones;
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) return true;
@@ -53,7 +65,8 @@ public class Camera {
         if (name != null ? !name.equals(camera.name) : camera.name != null) return false;
         if (username != null ? !username.equals(camera.username) : camera.username != null) return false;
         if (password != null ? !password.equals(camera.password) : camera.password != null) return false;
-        return streams != null ? streams.equals(camera.streams) : camera.streams == null;
+        if (streams != null ? !streams.equals(camera.streams) : camera.streams != null) return false;
+        return zones.equals(camera.zones);
     }
 
     @Override
@@ -62,6 +75,7 @@ public class Camera {
         result = 31 * result + (username != null ? username.hashCode() : 0);
         result = 31 * result + (password != null ? password.hashCode() : 0);
         result = 31 * result + (streams != null ? streams.hashCode() : 0);
+        result = 31 * result + zones.hashCode();
         return result;
     }
 
@@ -72,6 +86,7 @@ public class Camera {
                 ", username='" + username + '\'' +
                 ", password='" + password + '\'' +
                 ", streams=" + streams +
+                ", zones=" + zones +
                 '}';
     }
 }
@@ -9,6 +9,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.toList;
 
 /**
  * Immutable configuration read from the {@code cameras.json} file.
@@ -28,6 +29,20 @@ public class CameraConfiguration {
         return cameras;
     }
 
+    /**
+     * Cameras of this configuration that another configuration does not have with identical settings. Comparing an
+     * old configuration to a new one gives the cameras to stop; the reverse gives the cameras to start.
+     *
+     * @param other Configuration to compare to
+     * @return Cameras missing or changed in the other configuration
+     */
+    public List<Camera> camerasNotIn(final CameraConfiguration other) {
+        checkNotNull(other, "other cannot be null");
+        return cameras.stream()
+                      .filter(camera -> !other.cameras.contains(camera))
+                      .collect(toList());
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) return true;
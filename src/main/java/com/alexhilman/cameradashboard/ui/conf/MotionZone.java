@@ -0,0 +1,110 @@
+package com.alexhilman.cameradashboard.ui.conf;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Polygonal region of a camera's picture watched for motion. Points are {@code [x, y]} pairs relative to the picture,
+ * from 0.0 (left, top) to 1.0 (right, bottom), so a zone fits any stream resolution. When a camera has zones, pixels
+ * outside all of them are ignored.
+ */
+public class MotionZone {
+    public static final double DEFAULT_THRESHOLD_PERCENT = 1.0;
+
+    private final String name;
+    private final double thresholdPercent;
+    private final List<List<Double>> points;
+
+    @JsonCreator
+    public MotionZone(@JsonProperty(value = "name", required = true) final String name,
+                      @JsonProperty("thresholdPercent") final Double thresholdPercent,
+                      @JsonProperty(value = "points", required = true) final List<List<Double>> points) {
+        this.name = checkNotNull(name, "name cannot be null");
+        this.thresholdPercent = thresholdPercent == null ? DEFAULT_THRESHOLD_PERCENT : thresholdPercent;
+        checkNotNull(points, "points cannot be null");
+        checkArgument(points.size() >= 3, "zone %s needs at least three points", name);
+
+        final ImmutableList.Builder<List<Double>> builder = ImmutableList.builder();
+        for (final List<Double> point : points) {
+            checkArgument(point != null && point.size() == 2, "zone %s has a point that is not an [x, y] pair", name);
+            checkArgument(point.get(0) >= 0 && point.get(0) <= 1 && point.get(1) >= 0 && point.get(1) <= 1,
+                          "zone %s has a point outside of the picture", name);
+            builder.add(ImmutableList.copyOf(point));
+        }
+        this.points = builder.build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Share of the zone's pixels that must be in motion for the zone to count as moving.
+     *
+     * @return Percentage, from 0 to 100
+     */
+    public double getThresholdPercent() {
+        return thresholdPercent;
+    }
+
+    public List<List<Double>> getPoints() {
+        return points;
+    }
+
+    /**
+     * Whether a point lies inside the zone's polygon.
+     *
+     * @param x Horizontal position, from 0.0 to 1.0
+     * @param y Vertical position, from 0.0 to 1.0
+     * @return True if inside
+     */
+    public boolean contains(final double x, final double y) {
+        boolean inside = false;
+        for (int i = 0, j = points.size() - 1; i < points.size(); j = i++) {
+            final double xi = points.get(i).get(0);
+            final double yi = points.get(i).get(1);
+            final double xj = points.get(j).get(0);
+            final double yj = points.get(j).get(1);
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final MotionZone that = (MotionZone) o;
+
+        if (Double.compare(that.thresholdPercent, thresholdPercent) != 0) return false;
+        if (!name.equals(that.name)) return false;
+        return points.equals(that.points);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name.hashCode();
+        final long temp = Double.doubleToLongBits(thresholdPercent);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + points.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MotionZone{" +
+                "name='" + name + '\'' +
+                ", thresholdPercent=" + thresholdPercent +
+                ", points=" + points +
+                '}';
+    }
+}
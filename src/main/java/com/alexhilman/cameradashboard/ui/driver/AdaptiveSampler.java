@@ -0,0 +1,100 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides which frames of a stream are analyzed for motion. A quiet scene is sampled at a low rate; once motion is
+ * detected every frame is sampled, and the rate backs off again by halving while the scene stays quiet. The rate never
+ * exceeds what the camera's CPU budget affords at the measured cost per sample.
+ * <p>
+ * Frames must be offered by one thread at a time and samples recorded by one thread at a time, which may differ, as
+ * with the decoding and analyze stages of {@link MotionPipeline}; {@link #getMetrics()} may be read from any thread.
+ */
+@NotThreadSafe
+public class AdaptiveSampler {
+    public static final double DEFAULT_QUIET_SAMPLES_PER_SECOND = 1.0;
+    public static final double DEFAULT_CPU_BUDGET = 0.25;
+    private static final double COST_SMOOTHING = 0.2;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final double frameRate;
+    private final int quietInterval;
+    private final double cpuBudget;
+    private int desiredInterval;
+    private int framesSinceSample;
+    private volatile int interval;
+    private volatile double averageDecodeNanos;
+    private volatile double averageAnalysisNanos;
+
+    /**
+     * @param frameRate              Frame rate of the stream
+     * @param quietSamplesPerSecond  Samples per second while the scene is quiet
+     * @param cpuBudget              Share of one core the sampling may use, where 1.0 is a whole core
+     */
+    public AdaptiveSampler(final double frameRate, final double quietSamplesPerSecond, final double cpuBudget) {
+        checkArgument(quietSamplesPerSecond > 0, "quietSamplesPerSecond must be positive");
+        checkArgument(cpuBudget > 0, "cpuBudget must be positive");
+
+        this.frameRate = frameRate > 0 ? frameRate : 1.0;
+        this.quietInterval = Math.max(1, (int) Math.round(this.frameRate / quietSamplesPerSecond));
+        this.cpuBudget = cpuBudget;
+        this.desiredInterval = quietInterval;
+        this.interval = quietInterval;
+    }
+
+    /**
+     * Offers the next frame of the stream.
+     *
+     * @return True if the frame should be analyzed
+     */
+    public boolean shouldSample() {
+        if (++framesSinceSample >= interval) {
+            framesSinceSample = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the outcome of analyzing a sampled frame and adapts the sampling rate.
+     *
+     * @param decodeNanos    Time sampling the frame added to decoding: converting it, and decoding it unless every
+     *                       frame is decoded anyway
+     * @param analysisNanos  Time spent analyzing the frame
+     * @param motionDetected Whether motion is detected after the frame
+     */
+    public void recordSample(final long decodeNanos, final long analysisNanos, final boolean motionDetected) {
+        averageDecodeNanos = smooth(averageDecodeNanos, decodeNanos);
+        averageAnalysisNanos = smooth(averageAnalysisNanos, analysisNanos);
+
+        desiredInterval = motionDetected ? 1 : Math.min(quietInterval, desiredInterval * 2);
+        interval = Math.max(desiredInterval, budgetInterval());
+    }
+
+    /**
+     * Number of frames between samples at the current rate.
+     *
+     * @return Sampling interval in frames
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    public SamplingMetrics getMetrics() {
+        return new SamplingMetrics(frameRate,
+                                   frameRate / interval,
+                                   averageDecodeNanos / 1_000_000.0,
+                                   averageAnalysisNanos / 1_000_000.0);
+    }
+
+    private int budgetInterval() {
+        final double nanosPerSample = averageDecodeNanos + averageAnalysisNanos;
+        return Math.max(1, (int) Math.ceil(nanosPerSample * frameRate / (cpuBudget * NANOS_PER_SECOND)));
+    }
+
+    private static double smooth(final double average, final long sample) {
+        return average == 0 ? sample : average + COST_SMOOTHING * (sample - average);
+    }
+}
@@ -0,0 +1,21 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+/**
+ * What an observer of an {@link ObservableInputStream} does when it falls too far behind the camera. The camera reader
+ * never waits for an observer, whichever policy it uses.
+ */
+public enum BackpressurePolicy {
+    /**
+     * Discard the oldest unread bytes so the observer is exactly at its lag threshold.
+     */
+    DROP_OLDEST,
+    /**
+     * Jump to the newest keyframe (multipart boundary) in the buffer; falls back to {@link #DROP_OLDEST} for streams
+     * without boundaries.
+     */
+    SKIP_TO_KEYFRAME,
+    /**
+     * End the observer's stream.
+     */
+    DISCONNECT
+}
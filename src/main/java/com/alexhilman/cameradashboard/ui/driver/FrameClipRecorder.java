@@ -0,0 +1,73 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Records motion clips by re-encoding decoded frames.
+ */
+class FrameClipRecorder extends MotionClipRecorder<Frame> {
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private final String format;
+    private final FrameRing startingFrameBuffer;
+    private FFmpegFrameRecorder frameRecorder;
+
+    FrameClipRecorder(final Camera camera,
+                      final int marginFrames,
+                      final Supplier<File> clipFiles,
+                      final Consumer<File> clipListener,
+                      final int width,
+                      final int height,
+                      final double frameRate,
+                      final String format) {
+        super(camera, marginFrames, clipFiles, clipListener);
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.format = format;
+        this.startingFrameBuffer = FrameRing.withCapacity(Math.max(1, marginFrames));
+    }
+
+    @Override
+    protected void open(final File clip) throws FrameRecorder.Exception {
+        frameRecorder = new FFmpegFrameRecorder(clip, 0);
+        frameRecorder.setImageWidth(width);
+        frameRecorder.setImageHeight(height);
+        frameRecorder.setFrameRate(frameRate);
+        frameRecorder.setAudioChannels(0);
+        frameRecorder.setFormat(format);
+        frameRecorder.start();
+    }
+
+    @Override
+    protected void writeBuffered() throws FrameRecorder.Exception {
+        startingFrameBuffer.drainTo(frameRecorder);
+    }
+
+    @Override
+    protected void write(final Frame frame) throws FrameRecorder.Exception {
+        frameRecorder.record(frame);
+    }
+
+    @Override
+    protected void buffer(final Frame frame) {
+        startingFrameBuffer.push(frame);
+    }
+
+    @Override
+    protected void closeClip() throws FrameRecorder.Exception {
+        try {
+            frameRecorder.close();
+        } finally {
+            frameRecorder = null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameRecorder;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Fixed-capacity ring of reusable video frames. Pushing a frame copies its image into the slot of the oldest frame, so
+ * after the first lap no frame memory is allocated unless the stream geometry changes.
+ * <p>
+ * The ring keeps the newest {@link #capacity()} frames. When they hold no key frame, because key frames are further
+ * apart than that, the ring also keeps the frames back to the most recent key frame before them, up to as many again,
+ * so a recording still starts with frames from before the moment it was drained. The ring only grows beyond its
+ * capacity when that happens; a stream of key frames only, as when re-encoding, never takes more than the capacity.
+ */
+@NotThreadSafe
+public class FrameRing {
+    private final Frame[] slots;
+    private final int capacity;
+    private int length;
+    private int next;
+    private int size;
+
+    FrameRing(final int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+        this.slots = new Frame[capacity * 2];
+        this.length = capacity;
+    }
+
+    /**
+     * Creates a new ring holding up to the given number of frames.
+     *
+     * @param capacity Number of frames to keep
+     * @return Ring
+     */
+    public static FrameRing withCapacity(final int capacity) {
+        return new FrameRing(capacity);
+    }
+
+    /**
+     * Copies a video frame into the ring, dropping the oldest frames which are no longer needed.
+     *
+     * @param frame Frame to copy; it is not retained
+     */
+    public void push(final Frame frame) {
+        checkNotNull(frame, "frame cannot be null");
+        checkArgument(frame.image != null && frame.image.length == 1 && frame.image[0] instanceof ByteBuffer,
+                      "frame must be a single plane video frame");
+
+        if (size == length && length < slots.length && isOldestFrameNeeded(frame)) {
+            grow();
+        }
+        slots[next] = copyInto(frame, slots[next]);
+        next = (next + 1) % length;
+        size = Math.min(size + 1, length);
+        trim();
+    }
+
+    /**
+     * Records the buffered frames, oldest first, starting at the oldest key frame so the recording can be decoded
+     * from its first frame; frames before that key frame are discarded. The ring is empty afterwards.
+     *
+     * @param recorder Recorder to write the frames to
+     * @throws FrameRecorder.Exception If the recorder fails
+     */
+    public void drainTo(final FrameRecorder recorder) throws FrameRecorder.Exception {
+        checkNotNull(recorder, "recorder cannot be null");
+
+        boolean keyFrameSeen = false;
+        for (int i = 0; i < size; i++) {
+            final Frame frame = frameAt(i);
+            keyFrameSeen |= frame.keyFrame;
+            if (keyFrameSeen) {
+                recorder.record(frame);
+            }
+        }
+        clear();
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of newest frames always kept
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of frames the ring has allocated memory for.
+     *
+     * @return Allocated frames
+     */
+    int allocatedFrames() {
+        int allocated = 0;
+        for (final Frame slot : slots) {
+            if (slot != null) {
+                allocated++;
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * Whether the oldest frame must outlive the next push: it is the key frame the newest frames start from, and no
+     * later frame up to the window can take its place.
+     *
+     * @param newest Frame about to be pushed
+     */
+    private boolean isOldestFrameNeeded(final Frame newest) {
+        if (!frameAt(0).keyFrame) {
+            return false;
+        }
+        final int windowStart = size + 1 - capacity;
+        for (int i = 1; i <= windowStart; i++) {
+            if ((i < size ? frameAt(i) : newest).keyFrame) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a slot for the newest frame, ahead of the oldest one, so nothing is overwritten.
+     */
+    private void grow() {
+        System.arraycopy(slots, next, slots, next + 1, length - next);
+        slots[next] = null;
+        length++;
+    }
+
+    /**
+     * Drops the frames before the newest {@link #capacity()} frames, except from the most recent key frame before them
+     * on.
+     */
+    private void trim() {
+        if (size <= capacity) {
+            return;
+        }
+        final int windowStart = size - capacity;
+        int keyFrame = windowStart;
+        while (keyFrame >= 0 && !frameAt(keyFrame).keyFrame) {
+            keyFrame--;
+        }
+        size -= keyFrame >= 0 ? keyFrame : windowStart;
+    }
+
+    private Frame frameAt(final int index) {
+        return slots[(next - size + index + length) % length];
+    }
+
+    private static Frame copyInto(final Frame source, final Frame reusable) {
+        final ByteBuffer sourceImage = ((ByteBuffer) source.image[0]).duplicate();
+        sourceImage.clear();
+
+        Frame target = reusable;
+        if (target == null || ((ByteBuffer) target.image[0]).capacity() != sourceImage.capacity()) {
+            target = new Frame();
+            target.image = new Buffer[]{ByteBuffer.allocateDirect(sourceImage.capacity())
+                                                  .order(ByteOrder.nativeOrder())};
+        }
+
+        target.imageWidth = source.imageWidth;
+        target.imageHeight = source.imageHeight;
+        target.imageDepth = source.imageDepth;
+        target.imageChannels = source.imageChannels;
+        target.imageStride = source.imageStride;
+        target.keyFrame = source.keyFrame;
+        target.timestamp = source.timestamp;
+
+        final ByteBuffer targetImage = (ByteBuffer) target.image[0];
+        targetImage.clear();
+        targetImage.put(sourceImage);
+        targetImage.clear();
+        return target;
+    }
+}
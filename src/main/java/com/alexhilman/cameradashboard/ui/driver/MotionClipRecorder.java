@@ -0,0 +1,103 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bytedeco.javacv.FrameRecorder;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.File;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes the stream to a new clip while motion is detected. Items seen while idle are buffered so a clip starts with a
+ * margin before the motion; a clip is finished once motion has been absent for the margin.
+ *
+ * @param <T> Unit of the stream: a decoded frame or a compressed packet
+ */
+@NotThreadSafe
+abstract class MotionClipRecorder<T> implements AutoCloseable {
+    private static final Logger LOG = LogManager.getLogger(MotionClipRecorder.class);
+
+    private final Camera camera;
+    private final int marginFrames;
+    private final Supplier<File> clipFiles;
+    private final Consumer<File> clipListener;
+    private File clip;
+    private int cooloffFrames;
+
+    MotionClipRecorder(final Camera camera,
+                       final int marginFrames,
+                       final Supplier<File> clipFiles,
+                       final Consumer<File> clipListener) {
+        this.camera = checkNotNull(camera, "camera cannot be null");
+        this.marginFrames = marginFrames;
+        this.clipFiles = checkNotNull(clipFiles, "clipFiles cannot be null");
+        this.clipListener = checkNotNull(clipListener, "clipListener cannot be null");
+    }
+
+    /**
+     * Records or buffers the next item of the stream.
+     *
+     * @param item           Next item of the stream
+     * @param motionDetected Whether motion is currently detected
+     * @throws FrameRecorder.Exception If the clip cannot be written
+     */
+    void offer(final T item, final boolean motionDetected) throws FrameRecorder.Exception {
+        if (motionDetected) {
+            cooloffFrames = 0;
+            if (clip == null) {
+                LOG.info("Motion detected on {}", camera.getName());
+                clip = clipFiles.get();
+                open(clip);
+                writeBuffered();
+            }
+            write(item);
+        } else if (clip != null) {
+            write(item);
+            if (++cooloffFrames > marginFrames) {
+                LOG.info("Motion ceased on {}", camera.getName());
+                finish();
+            }
+        } else {
+            buffer(item);
+        }
+    }
+
+    boolean isRecording() {
+        return clip != null;
+    }
+
+    /**
+     * Finishes the clip in progress, if any.
+     *
+     * @throws FrameRecorder.Exception If the clip cannot be finished
+     */
+    @Override
+    public void close() throws FrameRecorder.Exception {
+        if (clip != null) {
+            finish();
+        }
+    }
+
+    private void finish() throws FrameRecorder.Exception {
+        final File finishedClip = clip;
+        clip = null;
+        cooloffFrames = 0;
+        closeClip();
+        clipListener.accept(finishedClip);
+    }
+
+    protected abstract void open(final File clip) throws FrameRecorder.Exception;
+
+    protected abstract void writeBuffered() throws FrameRecorder.Exception;
+
+    protected abstract void write(final T item) throws FrameRecorder.Exception;
+
+    protected abstract void buffer(final T item);
+
+    protected abstract void closeClip() throws FrameRecorder.Exception;
+}
@@ -0,0 +1,266 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.MotionZone;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacpp.opencv_video;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.javacpp.opencv_core.cvCountNonZero;
+import static org.bytedeco.javacpp.opencv_imgproc.CV_BGR2GRAY;
+import static org.bytedeco.javacpp.opencv_imgproc.CV_INTER_AREA;
+import static org.bytedeco.javacpp.opencv_imgproc.cvCvtColor;
+import static org.bytedeco.javacpp.opencv_imgproc.cvResize;
+
+/**
+ * Detects motion in a sequence of sampled images with a MOG2 background subtractor. Each motion zone is scored by the
+ * average share of its pixels in the foreground over the last few samples; motion is reported while any zone's score
+ * exceeds its threshold.
+ * <p>
+ * The analysis runs on grayscale images of the detector's geometry, which is usually much smaller than the camera's;
+ * larger or color images are scaled down and converted first. Only the bounding box of the zones is given to MOG2.
+ * <p>
+ * All native buffers are allocated once per geometry. The {@link opencv_core.Mat} headers of the images analyzed are
+ * kept for the few most recently used images, so a producer rotating a small pool of images, such as
+ * {@link MotionPipeline}, does not make detection allocate in steady state.
+ */
+@NotThreadSafe
+public class MotionDetector implements AutoCloseable {
+    static final double LEARNING_RATE = .1;
+    static final int MAX_WRAPPED_IMAGES = 8;
+
+    private final int width;
+    private final int height;
+    private final ZoneMask zoneMask;
+    private final IntegerSampler[] zoneSamplers;
+    private final int[] zoneCounts;
+    private final double[] zoneScores;
+    private final opencv_core.Rect roi;
+    private final opencv_core.IplImage fgMask;
+    private final opencv_core.Mat fgMaskMat;
+    private final ByteBuffer fgMaskBuffer;
+    private final opencv_core.IplImage gray;
+    private final opencv_video.BackgroundSubtractorMOG2 mog;
+    private final Map<Long, WrappedImage> wrappedImages = new LinkedHashMap<>(16, 0.75f, true);
+    private opencv_core.IplImage resized;
+    private boolean motionDetected;
+
+    /**
+     * @param width  Width of the analysis images
+     * @param height Height of the analysis images
+     */
+    public MotionDetector(final int width, final int height) {
+        this(width, height, Collections.emptyList());
+    }
+
+    /**
+     * @param width  Width of the analysis images
+     * @param height Height of the analysis images
+     * @param zones  Zones to watch; empty to watch the whole picture
+     */
+    public MotionDetector(final int width, final int height, final List<MotionZone> zones) {
+        checkNotNull(zones, "zones cannot be null");
+
+        this.width = width;
+        this.height = height;
+        this.zoneMask = ZoneMask.of(zones, width, height);
+        this.zoneSamplers = new IntegerSampler[zoneMask.getZoneCount()];
+        for (int z = 0; z < zoneSamplers.length; z++) {
+            zoneSamplers[z] = IntegerSampler.forSamples(5);
+        }
+        this.zoneCounts = new int[zoneMask.getZoneCount()];
+        this.zoneScores = new double[zoneMask.getZoneCount()];
+        this.roi = new opencv_core.Rect(zoneMask.getRoiX(),
+                                        zoneMask.getRoiY(),
+                                        zoneMask.getRoiWidth(),
+                                        zoneMask.getRoiHeight());
+        this.fgMask = opencv_core.IplImage.create(zoneMask.getRoiWidth(), zoneMask.getRoiHeight(), IPL_DEPTH_8U, 1);
+        this.fgMaskMat = new opencv_core.Mat(fgMask);
+        this.fgMaskBuffer = fgMask.getByteBuffer();
+        this.gray = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, 1);
+        this.mog = newBackgroundSubtractor();
+    }
+
+    /**
+     * Applies a sampled image to the background model.
+     *
+     * @param image Grayscale or BGR image, at least as large as the analysis geometry
+     * @return True if motion is detected
+     */
+    public boolean detect(final opencv_core.IplImage image) {
+        mog.apply(wrappedImageOf(analysisImageOf(image)).analyzed, fgMaskMat, LEARNING_RATE);
+
+        if (zoneMask.isWholeFrame()) {
+            zoneCounts[0] = cvCountNonZero(fgMask);
+        } else {
+            zoneMask.countForeground(fgMaskBuffer, fgMask.widthStep(), zoneCounts);
+        }
+
+        boolean motionDetected = false;
+        for (int z = 0; z < zoneSamplers.length; z++) {
+            zoneSamplers[z].sample(zoneCounts[z]);
+            final int zonePixels = zoneMask.getZonePixels(z);
+            zoneScores[z] = zonePixels == 0 ? 0 : (double) zoneSamplers[z].average() / (double) zonePixels * 100.0;
+            motionDetected |= zoneScores[z] > zoneMask.getThresholdPercent(z);
+        }
+        this.motionDetected = motionDetected;
+        return motionDetected;
+    }
+
+    /**
+     * Creates the background subtractor motion is detected with.
+     *
+     * @return Subtractor, which must be closed
+     */
+    static opencv_video.BackgroundSubtractorMOG2 newBackgroundSubtractor() {
+        final opencv_video.BackgroundSubtractorMOG2 mog = opencv_video.createBackgroundSubtractorMOG2(300, 64, false);
+        mog.setNMixtures(3);
+        return mog;
+    }
+
+    /**
+     * True once enough samples were taken for the motion average to be meaningful.
+     *
+     * @return True if primed
+     */
+    public boolean isPrimed() {
+        return zoneSamplers[0].isFull();
+    }
+
+    public boolean isMotionDetected() {
+        return motionDetected;
+    }
+
+    /**
+     * Latest score of each zone: the average percentage of its pixels in motion.
+     *
+     * @return Scores by zone name, in configuration order
+     */
+    public Map<String, Double> getZoneScores() {
+        final Map<String, Double> scores = new LinkedHashMap<>();
+        for (int z = 0; z < zoneScores.length; z++) {
+            scores.put(zoneMask.getZoneName(z), zoneScores[z]);
+        }
+        return scores;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void close() {
+        mog.close();
+        wrappedImages.values().forEach(WrappedImage::close);
+        wrappedImages.clear();
+        closeResized();
+        gray.close();
+        fgMaskMat.close();
+        fgMask.close();
+        roi.close();
+    }
+
+    /**
+     * Wraps an image for OpenCV's C++ API, cropped to the zones' region of interest.
+     *
+     * @param image Image of the analysis geometry
+     * @return Wrapper, which must be closed
+     */
+    WrappedImage wrap(final opencv_core.IplImage image) {
+        return new WrappedImage(image, zoneMask.isWholeFrame() ? null : roi);
+    }
+
+    private opencv_core.IplImage analysisImageOf(final opencv_core.IplImage image) {
+        opencv_core.IplImage scaled = image;
+        if (image.width() != width || image.height() != height) {
+            if (resized == null || resized.nChannels() != image.nChannels()) {
+                closeResized();
+                resized = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, image.nChannels());
+            }
+            cvResize(image, resized, CV_INTER_AREA);
+            scaled = resized;
+        }
+
+        if (scaled.nChannels() != 1) {
+            cvCvtColor(scaled, gray, CV_BGR2GRAY);
+            return gray;
+        }
+        return scaled;
+    }
+
+    /**
+     * Images are wrapped once and the wrappers kept by address; an image at an address known for another geometry is
+     * wrapped again. Only the most recently used images are kept.
+     */
+    private WrappedImage wrappedImageOf(final opencv_core.IplImage image) {
+        final WrappedImage wrapped = wrappedImages.get(image.address());
+        if (wrapped != null && wrapped.fits(image)) {
+            return wrapped;
+        }
+        if (wrapped != null) {
+            wrappedImages.remove(image.address()).close();
+        }
+        if (wrappedImages.size() >= MAX_WRAPPED_IMAGES) {
+            final Iterator<WrappedImage> eldest = wrappedImages.values().iterator();
+            eldest.next().close();
+            eldest.remove();
+        }
+        final WrappedImage created = wrap(image);
+        wrappedImages.put(image.address(), created);
+        return created;
+    }
+
+    private void closeResized() {
+        if (resized != null) {
+            final WrappedImage wrapped = wrappedImages.remove(resized.address());
+            if (wrapped != null) {
+                wrapped.close();
+            }
+            resized.close();
+            resized = null;
+        }
+    }
+
+    /**
+     * {@link opencv_core.Mat} headers over an image's pixels, for the whole image and for the part analyzed.
+     */
+    static class WrappedImage implements AutoCloseable {
+        private final int width;
+        private final int height;
+        private final int channels;
+        private final opencv_core.Mat mat;
+        private final opencv_core.Mat analyzed;
+
+        private WrappedImage(final opencv_core.IplImage image, final opencv_core.Rect roi) {
+            this.width = image.width();
+            this.height = image.height();
+            this.channels = image.nChannels();
+            this.mat = new opencv_core.Mat(image);
+            this.analyzed = roi == null ? mat : new opencv_core.Mat(mat, roi);
+        }
+
+        private boolean fits(final opencv_core.IplImage image) {
+            return image.width() == width && image.height() == height && image.nChannels() == channels;
+        }
+
+        @Override
+        public void close() {
+            if (analyzed != mat) {
+                analyzed.close();
+            }
+            mat.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Stretch of a recorded segment during which motion was detected, relative to the start of the segment.
+ */
+@Immutable
+public class MotionInterval {
+    private final long offsetMillis;
+    private final long durationMillis;
+
+    public MotionInterval(final long offsetMillis, final long durationMillis) {
+        this.offsetMillis = offsetMillis;
+        this.durationMillis = durationMillis;
+    }
+
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final MotionInterval that = (MotionInterval) o;
+
+        return offsetMillis == that.offsetMillis && durationMillis == that.durationMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(offsetMillis) + Long.hashCode(durationMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "MotionInterval{" +
+                "offsetMillis=" + offsetMillis +
+                ", durationMillis=" + durationMillis +
+                '}';
+    }
+}
@@ -0,0 +1,425 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import com.google.common.collect.ImmutableList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avformat;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameRecorder;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.bytedeco.javacpp.avcodec.av_packet_alloc;
+import static org.bytedeco.javacpp.avcodec.av_packet_free;
+import static org.bytedeco.javacpp.avcodec.av_packet_ref;
+import static org.bytedeco.javacpp.avcodec.av_packet_unref;
+import static org.bytedeco.javacpp.avutil.AV_PIX_FMT_BGR24;
+import static org.bytedeco.javacpp.avutil.AV_PIX_FMT_GRAY8;
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.javacpp.opencv_core.cvCopy;
+import static org.bytedeco.javacpp.opencv_imgproc.CV_BGR2GRAY;
+import static org.bytedeco.javacpp.opencv_imgproc.CV_INTER_AREA;
+import static org.bytedeco.javacpp.opencv_imgproc.cvCvtColor;
+import static org.bytedeco.javacpp.opencv_imgproc.cvResize;
+
+/**
+ * Motion processing of one camera stream, split into stages so a slow stage never stalls reading from the network.
+ * Ingest, on the camera's thread, references each packet read from the camera and hands it to two branches:
+ * <ul>
+ * <li>the record branch gets every packet. It writes them to motion clips, by copying or by re-encoding them, and
+ * copies them into continuous segments if enabled. When re-encoding, it decodes every frame at full size anyway, so it
+ * also makes the small grayscale images sampled for analysis from those frames;</li>
+ * <li>the analysis branch only exists when packets are copied. Its decode stage converts the packets sampled for
+ * analysis into small grayscale images.</li>
+ * </ul>
+ * The analyze stage runs motion detection on the sampled images and publishes the motion state, which the record
+ * branch applies to the packets it handles next. Analysis that falls behind only skips samples; it never costs the
+ * recordings a packet.
+ * <p>
+ * Decoded images are also handed to a frame listener, for live viewing: the full-color frames decoded for re-encoding,
+ * or the grayscale analysis images when packets are copied and nothing else is decoded.
+ * <p>
+ * Stages are connected by bounded queues and run on a shared executor. Packets and analysis images come from
+ * preallocated pools, one per branch; when a queue or pool is exhausted the packet is dropped and counted rather than
+ * blocking the camera.
+ */
+@ThreadSafe
+class MotionPipeline implements AutoCloseable {
+    private static final Logger LOG = LogManager.getLogger(MotionPipeline.class);
+    static final int DECODE_QUEUE_CAPACITY = 64;
+    static final int RECORD_QUEUE_CAPACITY = 256;
+    private static final int ANALYSIS_IMAGES = 4;
+
+    private final Camera camera;
+    private final MotionDetector motionDetector;
+    private final AdaptiveSampler sampler;
+    private final BlockingQueue<StagedPacket> freeRecordPackets;
+    private final BlockingQueue<StagedPacket> freeDecodePackets;
+    private final BlockingQueue<Sample> freeSamples;
+    private final RateMeter ingested = new RateMeter();
+    private final AtomicLong ingestDropped = new AtomicLong();
+    private final PipelineStage<StagedPacket> decodeStage;
+    private final PipelineStage<Sample> analyzeStage;
+    private final PipelineStage<StagedPacket> recordStage;
+    private final Consumer<opencv_core.IplImage> frameListener;
+
+    // published by the analyze stage
+    private volatile boolean motionDetected;
+    private volatile boolean primed;
+    // decode stage only; packet copy only
+    private final PacketDecoder analysisDecoder;
+    // record stage only; one of the two recorders is used
+    private final PacketClipRecorder packetClipRecorder;
+    private final FrameClipRecorder frameClipRecorder;
+    private final PacketDecoder recordingDecoder;
+    private final opencv_core.IplImage scaledRecording;
+    private final OpenCVFrameConverter.ToIplImage recordingConverter;
+    private final PacketSegmentRecorder segmentRecorder;
+
+    MotionPipeline(final Camera camera,
+                   final FFmpegFrameGrabber grabber,
+                   final avformat.AVStream videoStream,
+                   final RecordingMode recordingMode,
+                   final MotionDetector motionDetector,
+                   final AdaptiveSampler sampler,
+                   final int marginFrames,
+                   final Supplier<File> clipFiles,
+                   final Consumer<File> clipListener,
+                   final long segmentMillis,
+                   final Consumer<RecordedSegment> segmentListener,
+                   final Consumer<opencv_core.IplImage> frameListener,
+                   final Executor executor) {
+        this.camera = checkNotNull(camera, "camera cannot be null");
+        this.frameListener = checkNotNull(frameListener, "frameListener cannot be null");
+        this.motionDetector = checkNotNull(motionDetector, "motionDetector cannot be null");
+        this.sampler = checkNotNull(sampler, "sampler cannot be null");
+
+        freeRecordPackets = packetPool(RECORD_QUEUE_CAPACITY + 1);
+        freeSamples = new ArrayBlockingQueue<>(ANALYSIS_IMAGES);
+        for (int i = 0; i < ANALYSIS_IMAGES; i++) {
+            freeSamples.add(new Sample(opencv_core.IplImage.create(motionDetector.getWidth(),
+                                                                   motionDetector.getHeight(),
+                                                                   IPL_DEPTH_8U,
+                                                                   1)));
+        }
+
+        if (recordingMode == RecordingMode.PACKET_COPY) {
+            packetClipRecorder = new PacketClipRecorder(camera, marginFrames, clipFiles, clipListener, grabber);
+            frameClipRecorder = null;
+            recordingDecoder = null;
+            scaledRecording = null;
+            recordingConverter = null;
+            analysisDecoder = new PacketDecoder(videoStream,
+                                                motionDetector.getWidth(),
+                                                motionDetector.getHeight(),
+                                                AV_PIX_FMT_GRAY8);
+            freeDecodePackets = packetPool(DECODE_QUEUE_CAPACITY + 1);
+        } else {
+            packetClipRecorder = null;
+            frameClipRecorder = new FrameClipRecorder(camera,
+                                                      marginFrames,
+                                                      clipFiles,
+                                                      clipListener,
+                                                      grabber.getImageWidth(),
+                                                      grabber.getImageHeight(),
+                                                      grabber.getFrameRate(),
+                                                      grabber.getFormat());
+            recordingDecoder = new PacketDecoder(videoStream,
+                                                 grabber.getImageWidth(),
+                                                 grabber.getImageHeight(),
+                                                 AV_PIX_FMT_BGR24);
+            scaledRecording = opencv_core.IplImage.create(motionDetector.getWidth(),
+                                                          motionDetector.getHeight(),
+                                                          IPL_DEPTH_8U,
+                                                          3);
+            recordingConverter = new OpenCVFrameConverter.ToIplImage();
+            analysisDecoder = null;
+            freeDecodePackets = null;
+        }
+        segmentRecorder = segmentMillis > 0
+                ? new PacketSegmentRecorder(camera,
+                                            segmentMillis,
+                                            clipFiles,
+                                            segmentListener,
+                                            grabber,
+                                            videoStream.time_base())
+                : null;
+
+        decodeStage = analysisDecoder != null
+                ? new PipelineStage<>("decode", DECODE_QUEUE_CAPACITY, executor, this::decode)
+                : null;
+        analyzeStage = new PipelineStage<>("analyze", ANALYSIS_IMAGES, executor, this::analyze);
+        recordStage = new PipelineStage<>("record", RECORD_QUEUE_CAPACITY, executor, this::record);
+    }
+
+    /**
+     * Feeds a packet read from the camera into the pipeline. Never blocks.
+     *
+     * @param packet Video packet; the caller keeps its reference
+     */
+    void ingest(final avcodec.AVPacket packet) {
+        ingested.mark();
+        forward(recordStage, freeRecordPackets, packet);
+        if (decodeStage != null) {
+            forward(decodeStage, freeDecodePackets, packet);
+        }
+    }
+
+    /**
+     * @return Metrics of the ingest, decode (when packets are copied), analyze and record stages
+     */
+    List<StageMetrics> getStageMetrics() {
+        final ImmutableList.Builder<StageMetrics> metrics = ImmutableList.builder();
+        metrics.add(new StageMetrics("ingest",
+                                     0,
+                                     0,
+                                     ingested.getCount(),
+                                     ingestDropped.get(),
+                                     ingested.getRatePerSecond()));
+        if (decodeStage != null) {
+            metrics.add(decodeStage.getMetrics());
+        }
+        return metrics.add(analyzeStage.getMetrics())
+                      .add(recordStage.getMetrics())
+                      .build();
+    }
+
+    /**
+     * Handles everything ingested so far, finishes a clip in progress and releases the pipeline's native resources.
+     * Nothing may be ingested concurrently. The stages are waited for even if the thread is interrupted, since they
+     * use the decoders, recorders and packets released here.
+     *
+     * @throws Exception If the pipeline cannot be drained or the clip cannot be finished
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            // both decode and record feed the analyze stage
+            if (decodeStage != null) {
+                decodeStage.finish();
+            }
+            recordStage.finish();
+            analyzeStage.finish();
+        } finally {
+            try {
+                if (packetClipRecorder != null) {
+                    packetClipRecorder.close();
+                } else {
+                    frameClipRecorder.close();
+                }
+            } finally {
+                try {
+                    if (segmentRecorder != null) {
+                        segmentRecorder.close();
+                    }
+                } finally {
+                    releaseNativeResources();
+                }
+            }
+        }
+    }
+
+    private static BlockingQueue<StagedPacket> packetPool(final int packets) {
+        final BlockingQueue<StagedPacket> pool = new ArrayBlockingQueue<>(packets);
+        for (int i = 0; i < packets; i++) {
+            pool.add(new StagedPacket(pool));
+        }
+        return pool;
+    }
+
+    private void releaseNativeResources() {
+        if (analysisDecoder != null) {
+            analysisDecoder.close();
+        }
+        if (recordingDecoder != null) {
+            recordingDecoder.close();
+            scaledRecording.close();
+        }
+        freePackets(freeRecordPackets);
+        if (freeDecodePackets != null) {
+            freePackets(freeDecodePackets);
+        }
+        Sample sample;
+        while ((sample = freeSamples.poll()) != null) {
+            sample.image.close();
+        }
+    }
+
+    private static void freePackets(final BlockingQueue<StagedPacket> pool) {
+        StagedPacket staged;
+        while ((staged = pool.poll()) != null) {
+            av_packet_free(staged.packet);
+        }
+    }
+
+    private void decode(final StagedPacket staged) {
+        try {
+            final boolean sample = !primed || sampler.shouldSample();
+            if (!sample && !analysisDecoder.needsEveryPacket()) {
+                return;
+            }
+            // a sampled packet whose image pool is exhausted is still decoded, but not analyzed
+            final Sample target = sample ? freeSamples.poll() : null;
+            final long started = System.nanoTime();
+            final opencv_core.IplImage decoded = analysisDecoder.decode(staged.packet, target != null);
+            if (decoded != null) {
+                final long converted = System.nanoTime();
+                cvCopy(decoded, target.image);
+                // an inter-coded stream is decoded whether sampled or not, so a sample only costs the conversion
+                final long sampledSince = analysisDecoder.needsEveryPacket()
+                        ? converted - analysisDecoder.getConversionNanos()
+                        : started;
+                target.decodeNanos = System.nanoTime() - sampledSince;
+                forward(target);
+            } else if (target != null) {
+                freeSamples.add(target);
+            }
+        } finally {
+            release(staged);
+        }
+    }
+
+    private void analyze(final Sample sample) {
+        try {
+            final long started = System.nanoTime();
+            final boolean detected = motionDetector.detect(sample.image);
+            sampler.recordSample(sample.decodeNanos, System.nanoTime() - started, detected);
+            motionDetected = detected;
+            primed = motionDetector.isPrimed();
+            if (packetClipRecorder != null) {
+                publish(sample.image);
+            }
+        } finally {
+            freeSamples.add(sample);
+        }
+    }
+
+    private void record(final StagedPacket staged) {
+        final boolean primed = this.primed;
+        final boolean motionDetected = this.motionDetected;
+        try {
+            // the segment muxes a reference of its own; the clip recorder's muxer consumes the packet, so it comes last
+            if (segmentRecorder != null) {
+                try {
+                    segmentRecorder.offer(staged.packet, primed && motionDetected);
+                } catch (FrameRecorder.Exception e) {
+                    LOG.warn("Could not write continuous recording of camera {}", camera.getName(), e);
+                }
+            }
+
+            if (packetClipRecorder != null) {
+                if (primed) {
+                    packetClipRecorder.offer(staged.packet, motionDetected);
+                }
+            } else {
+                // the decoder must see every packet, even before motion detection is primed
+                final opencv_core.IplImage image = recordingDecoder.decode(staged.packet, true);
+                if (image != null) {
+                    if (!primed || sampler.shouldSample()) {
+                        sample(image);
+                    }
+                    publish(image);
+                }
+                if (image != null && primed) {
+                    final Frame frame = recordingConverter.convert(image);
+                    frame.keyFrame = true;
+                    frameClipRecorder.offer(frame, motionDetected);
+                }
+            }
+        } catch (FrameRecorder.Exception e) {
+            LOG.warn("Could not write motion clip of camera {}", camera.getName(), e);
+        } finally {
+            release(staged);
+        }
+    }
+
+    /**
+     * Makes an analysis image out of a frame decoded for re-encoding. The frame is decoded anyway, so a sample only
+     * costs the scaling and conversion.
+     */
+    private void sample(final opencv_core.IplImage image) {
+        final Sample sample = freeSamples.poll();
+        if (sample == null) {
+            // analysis is behind; skip this sample
+            return;
+        }
+        final long started = System.nanoTime();
+        cvResize(image, scaledRecording, CV_INTER_AREA);
+        cvCvtColor(scaledRecording, sample.image, CV_BGR2GRAY);
+        sample.decodeNanos = System.nanoTime() - started;
+        forward(sample);
+    }
+
+    private void publish(final opencv_core.IplImage image) {
+        try {
+            frameListener.accept(image);
+        } catch (RuntimeException e) {
+            LOG.warn("Frame listener of camera {} failed", camera.getName(), e);
+        }
+    }
+
+    private void forward(final PipelineStage<StagedPacket> stage,
+                         final BlockingQueue<StagedPacket> pool,
+                         final avcodec.AVPacket packet) {
+        final StagedPacket staged = pool.poll();
+        if (staged == null || av_packet_ref(staged.packet, packet) < 0) {
+            if (staged != null) {
+                pool.add(staged);
+            }
+            ingestDropped.incrementAndGet();
+            return;
+        }
+        if (!stage.offer(staged)) {
+            release(staged);
+        }
+    }
+
+    private void forward(final Sample sample) {
+        if (!analyzeStage.offer(sample)) {
+            freeSamples.add(sample);
+        }
+    }
+
+    private static void release(final StagedPacket staged) {
+        av_packet_unref(staged.packet);
+        staged.pool.add(staged);
+    }
+
+    /**
+     * A pooled packet travelling through the stages of one branch.
+     */
+    private static class StagedPacket {
+        private final avcodec.AVPacket packet = av_packet_alloc();
+        private final BlockingQueue<StagedPacket> pool;
+
+        private StagedPacket(final BlockingQueue<StagedPacket> pool) {
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * A pooled grayscale image sampled for analysis, with what it cost to make.
+     */
+    private static class Sample {
+        private final opencv_core.IplImage image;
+        private long decodeNanos;
+
+        private Sample(final opencv_core.IplImage image) {
+            this.image = image;
+        }
+    }
+}
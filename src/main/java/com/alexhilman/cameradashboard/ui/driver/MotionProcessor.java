@@ -4,39 +4,41 @@ import com.alexhilman.cameradashboard.ui.conf.Camera;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avformat;
+import org.bytedeco.javacpp.avutil;
 import org.bytedeco.javacpp.opencv_core;
 import org.bytedeco.javacpp.opencv_objdetect;
-import org.bytedeco.javacpp.opencv_video;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
-import org.bytedeco.javacv.FFmpegFrameRecorder;
-import org.bytedeco.javacv.Frame;
-import org.bytedeco.javacv.FrameRecorder;
-import org.bytedeco.javacv.OpenCVFrameConverter;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
-import static org.bytedeco.javacpp.opencv_core.cvCountNonZero;
+import static org.bytedeco.javacpp.avcodec.av_packet_unref;
+import static org.bytedeco.javacpp.avutil.AVMEDIA_TYPE_VIDEO;
+import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
 
 /**
  */
 public class MotionProcessor {
+    public static final int DEFAULT_ANALYSIS_WIDTH = 320;
+    public static final int DEFAULT_ANALYSIS_HEIGHT = 180;
     private static final Logger LOG = LogManager.getLogger(MotionProcessor.class);
-    private static final DecimalFormat decimalFormat = new DecimalFormat("000.0000");
-    private static final NumberFormat intFormat = new DecimalFormat("000,000");
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
 
     static {
         Loader.load(opencv_objdetect.class); // documented hack :\ <barf/>
@@ -46,7 +48,21 @@ public class MotionProcessor {
     private final File tmpFolder;
 
     private volatile ObservableInputStream cameraStream;
+    private volatile String cameraStreamContentType;
     private volatile MotionCaptureListener listener;
+    private volatile SegmentListener segmentListener;
+    private volatile FrameListener frameListener;
+    private volatile long segmentMillis;
+    private volatile RecordingMode recordingMode = RecordingMode.REENCODE;
+    private volatile int analysisWidth = DEFAULT_ANALYSIS_WIDTH;
+    private volatile int analysisHeight = DEFAULT_ANALYSIS_HEIGHT;
+    private volatile double quietSamplesPerSecond = AdaptiveSampler.DEFAULT_QUIET_SAMPLES_PER_SECOND;
+    private volatile double cpuBudget = AdaptiveSampler.DEFAULT_CPU_BUDGET;
+    private volatile Executor stageExecutor = ForkJoinPool.commonPool();
+    private volatile AdaptiveSampler sampler;
+    private volatile MotionPipeline pipeline;
+    private volatile boolean streaming;
+    private volatile boolean stopped;
 
     public MotionProcessor(final Camera camera, final File tmpFolder) {
         this.camera = camera;
@@ -54,115 +70,148 @@ public class MotionProcessor {
     }
 
     public void processStream() throws Exception {
+        if (stopped) {
+            throw new IllegalStateException("Processor for camera " + camera.getName() + " is stopped");
+        }
         try (final InputStream inputStream = openStreamToCamera();
              final FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputStream)) {
             grabber.start();
-
-            final OpenCVFrameConverter.ToIplImage converter = new OpenCVFrameConverter.ToIplImage();
-            grabber.setFrameNumber(0);
-            Frame frame = grabber.grab();
-            opencv_core.IplImage grab = converter.convert(frame);
-            int width = grab.width();
-            int height = grab.height();
-            final int pixelsPerFrame = width * height;
+            streaming = true;
 
             final double frameRate = grabber.getFrameRate();
             LOG.debug("Frame rate: {}", frameRate);
-            final int sampleEveryNthFrame = Math.max(1, (int) Math.floor(frameRate / 2.0));
-            final int numFramesForMargin = (int) (frameRate * 3);
-            final List<Frame> startingFrameBuffer = new LinkedList<>();
-            FFmpegFrameRecorder frameRecorder = null;
-            final AtomicReference<File> motionVideo = new AtomicReference<>(null);
-            int cooloffFrames = 0;
-            int framesCaptured = 0;
-
-            final IntegerSampler integerSampler = IntegerSampler.forSamples(5);
-//            final long instantStarted = System.currentTimeMillis();
-//            final long frameTimestampStarted = grabber.getTimestamp();
-            boolean motionDetected = false;
-
-            try (opencv_core.IplImage fgMask = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, 1);
-                 opencv_core.IplImage background = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, 3);
-                 opencv_video.BackgroundSubtractorMOG2 mog =
-                         opencv_video.createBackgroundSubtractorMOG2(300, 64, false)) {
-                mog.setNMixtures(3);
-
-                while ((grab = converter.convert((frame = grabber.grab()))) != null) {
-//                    final long uptime = (System.currentTimeMillis() - instantStarted) / 1000;
-//                    final long frameTime = (frame.timestamp - frameTimestampStarted) / 1000;
-//                    LOG.info("Uptime: {}s; stream time: {}s; drift: ?s",
-//                             uptime,
-//                             frameTime);
-
-                    if (!integerSampler.isFull() || ++framesCaptured % sampleEveryNthFrame == 0) {
-                        try (final opencv_core.Mat imageMat = new opencv_core.Mat(grab);
-                             final opencv_core.Mat fgMaskMat = new opencv_core.Mat(fgMask);
-                             final opencv_core.Mat backgroundMat = new opencv_core.Mat(background)) {
-                            mog.apply(imageMat, fgMaskMat, .1);  // -1);
-
-                            mog.getBackgroundImage(backgroundMat);
-                            final int nonZero = cvCountNonZero(fgMask);
-                            integerSampler.sample(nonZero);
-                            final int average = integerSampler.average();
-                            motionDetected = ((double) average / (double) pixelsPerFrame * 100.0) > 1.0;
-//                        LOG.debug("Timeline {}: average motion pixels: {}; pixels in motion: {}%",
-//                                  decimalFormat.format(grabber.getTimestamp() / 1000000.0),
-//                                  intFormat.format(average),
-//                                  decimalFormat.format(percentMotion));
-
-                            if (motionDetected && frameRecorder == null) {
-                                LOG.info("Motion detected on {}", camera.getName());
-                                motionVideo.set(tmpFile());
-                                frameRecorder = new FFmpegFrameRecorder(motionVideo.get(), 0);
-                                frameRecorder.setImageWidth(width);
-                                frameRecorder.setImageHeight(height);
-                                frameRecorder.setFrameRate(frameRate);
-                                frameRecorder.setAudioChannels(0);
-                                frameRecorder.setFormat(grabber.getFormat());
-                                frameRecorder.start();
-
-                                for (final Frame f : startingFrameBuffer) {
-                                    frameRecorder.record(f);
-                                }
-                                startingFrameBuffer.clear();
-                            }
-                        }
-                    }
+            final avformat.AVFormatContext formatContext = grabber.getFormatContext();
+            final int videoStreamIndex = videoStreamIndexOf(formatContext);
+            final avformat.AVStream videoStream = formatContext.streams(videoStreamIndex);
+            final AdaptiveSampler sampler = newSampler(frameRate);
+            long packetsRead = 0;
 
-                    if (integerSampler.isFull()) {
-                        try {
-                            if (motionDetected) {
-                                cooloffFrames = 0;
-                                frameRecorder.record(frame);
-                            } else {
-                                cooloffFrames++;
-                                if (cooloffFrames > numFramesForMargin) {
-                                    if (frameRecorder != null) {
-                                        LOG.info("Motion ceased on {}", camera.getName());
-                                        frameRecorder.record(frame);
-                                        frameRecorder.close();
-
-                                        frameRecorder = null;
-                                        Optional.ofNullable(listener)
-                                                .ifPresent(l -> l.motionObserved(camera, motionVideo.get()));
-                                    }
-
-                                    if (startingFrameBuffer.size() >= numFramesForMargin) {
-                                        do {
-                                            startingFrameBuffer.remove(0);
-                                        } while (!startingFrameBuffer.get(0).keyFrame);
-                                    }
-                                    startingFrameBuffer.add(frame.clone());
-                                } else if (frameRecorder != null) {
-                                    frameRecorder.record(frame);
-                                }
-                            }
-                        } catch (FrameRecorder.Exception e) {
-                            LOG.warn("Could not motion frame to file", e);
+            try (final MotionDetector motionDetector = motionDetectorFor(grabber.getImageWidth(),
+                                                                         grabber.getImageHeight());
+                 final MotionPipeline pipeline = new MotionPipeline(camera,
+                                                                    grabber,
+                                                                    videoStream,
+                                                                    recordingMode,
+                                                                    motionDetector,
+                                                                    sampler,
+                                                                    marginFramesFor(frameRate),
+                                                                    this::tmpFile,
+                                                                    this::motionCaptured,
+                                                                    segmentMillis,
+                                                                    this::segmentRecorded,
+                                                                    this::frameDecoded,
+                                                                    stageExecutor)) {
+                this.pipeline = pipeline;
+                avcodec.AVPacket packet;
+                while (!stopped && (packet = grabber.grabPacket()) != null) {
+                    try {
+                        if (packet.stream_index() == videoStreamIndex) {
+                            stampIfUntimed(packet, packetsRead++, videoStream.time_base(), frameRate);
+                            pipeline.ingest(packet);
                         }
+                    } finally {
+                        av_packet_unref(packet);
                     }
                 }
             }
+        } finally {
+            streaming = false;
+        }
+    }
+
+    /**
+     * Makes {@link #processStream()} return: the camera connection is closed, which also unblocks a pending read, and
+     * any clip in progress is finished. The processor cannot be restarted.
+     */
+    public void stop() {
+        stopped = true;
+        final ObservableInputStream cameraStream = this.cameraStream;
+        if (cameraStream != null) {
+            try {
+                cameraStream.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close stream of camera {}", camera.getName(), e);
+            }
+        }
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Whether the camera stream is open and being processed.
+     *
+     * @return True while streaming
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Streams such as multipart MJPEG carry no timestamps; the muxer needs them, so they are derived from the frame
+     * rate.
+     */
+    private static void stampIfUntimed(final avcodec.AVPacket packet,
+                                       final long packetIndex,
+                                       final avutil.AVRational timeBase,
+                                       final double frameRate) {
+        if (packet.pts() == AV_NOPTS_VALUE) {
+            final long pts = Math.round(packetIndex * timeBase.den() / (timeBase.num() * frameRate));
+            packet.pts(pts);
+            packet.dts(pts);
+        }
+    }
+
+    /**
+     * Creates a detector watching the camera's zones at the configured resolution, scaled to keep the camera's aspect
+     * ratio and never larger than the camera's own resolution.
+     */
+    MotionDetector motionDetectorFor(final int width, final int height) {
+        final double scale = Math.min(1.0, Math.min((double) analysisWidth / width, (double) analysisHeight / height));
+        final int scaledWidth = Math.max(1, (int) Math.round(width * scale));
+        final int scaledHeight = Math.max(1, (int) Math.round(height * scale));
+        LOG.debug("Analyzing {} at {}x{}", camera.getName(), scaledWidth, scaledHeight);
+        return new MotionDetector(scaledWidth, scaledHeight, camera.getZones());
+    }
+
+    private static int videoStreamIndexOf(final avformat.AVFormatContext formatContext) {
+        for (int i = 0; i < formatContext.nb_streams(); i++) {
+            if (formatContext.streams(i).codecpar().codec_type() == AVMEDIA_TYPE_VIDEO) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No video stream found");
+    }
+
+    private AdaptiveSampler newSampler(final double frameRate) {
+        final AdaptiveSampler sampler = new AdaptiveSampler(frameRate, quietSamplesPerSecond, cpuBudget);
+        this.sampler = sampler;
+        return sampler;
+    }
+
+    private static int marginFramesFor(final double frameRate) {
+        return (int) (frameRate * 3);
+    }
+
+    private static boolean isMultipart(final String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("multipart/");
+    }
+
+    private void motionCaptured(final File motionVideo) {
+        Optional.ofNullable(listener)
+                .ifPresent(l -> l.motionObserved(camera, motionVideo));
+    }
+
+    private void segmentRecorded(final RecordedSegment segment) {
+        Optional.ofNullable(segmentListener)
+                .ifPresent(l -> l.segmentRecorded(camera, segment));
+    }
+
+    private void frameDecoded(final opencv_core.IplImage image) {
+        final FrameListener frameListener = this.frameListener;
+        if (frameListener != null) {
+            frameListener.frameDecoded(camera, image);
         }
     }
 
@@ -171,18 +220,123 @@ public class MotionProcessor {
         return this;
     }
 
-    public InputStream observeStream() {
+    public MotionProcessor onSegmentRecorded(final SegmentListener segmentListener) {
+        this.segmentListener = checkNotNull(segmentListener, "segmentListener cannot be null");
+        return this;
+    }
+
+    /**
+     * Listens to the frames decoded while processing the stream. Frames are not decoded for the listener's sake, so
+     * their resolution and rate depend on the recording mode and motion sampling.
+     *
+     * @param frameListener Listener, called on a pipeline thread; it must not block and must copy what it keeps
+     * @return This processor
+     */
+    public MotionProcessor onFrameDecoded(final FrameListener frameListener) {
+        this.frameListener = checkNotNull(frameListener, "frameListener cannot be null");
+        return this;
+    }
+
+    /**
+     * Records the whole stream in segments of about the given length, in addition to motion clips. Segments are
+     * copied from the camera's packets without re-encoding.
+     *
+     * @param segmentMillis Length of a segment
+     * @return This processor
+     */
+    public MotionProcessor withContinuousRecording(final long segmentMillis) {
+        checkArgument(segmentMillis > 0, "segmentMillis must be positive");
+        this.segmentMillis = segmentMillis;
+        return this;
+    }
+
+    public MotionProcessor withRecordingMode(final RecordingMode recordingMode) {
+        this.recordingMode = checkNotNull(recordingMode, "recordingMode cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the largest resolution motion is analyzed at; recordings keep the camera's resolution.
+     *
+     * @param analysisWidth  Maximum width of the analysis images
+     * @param analysisHeight Maximum height of the analysis images
+     * @return This processor
+     */
+    public MotionProcessor withAnalysisSize(final int analysisWidth, final int analysisHeight) {
+        checkArgument(analysisWidth > 0 && analysisHeight > 0, "analysis size must be positive");
+        this.analysisWidth = analysisWidth;
+        this.analysisHeight = analysisHeight;
+        return this;
+    }
+
+    /**
+     * Sets how often a quiet scene is analyzed, and the share of one core analysis may use at most.
+     *
+     * @param quietSamplesPerSecond Samples per second while no motion is detected
+     * @param cpuBudget             Share of one core, where 1.0 is a whole core
+     * @return This processor
+     */
+    public MotionProcessor withSampling(final double quietSamplesPerSecond, final double cpuBudget) {
+        checkArgument(quietSamplesPerSecond > 0, "quietSamplesPerSecond must be positive");
+        checkArgument(cpuBudget > 0, "cpuBudget must be positive");
+        this.quietSamplesPerSecond = quietSamplesPerSecond;
+        this.cpuBudget = cpuBudget;
+        return this;
+    }
+
+    /**
+     * Current sampling rate and cost of the stream being processed.
+     *
+     * @return Metrics, or empty if no stream was processed yet
+     */
+    public Optional<SamplingMetrics> getSamplingMetrics() {
+        return Optional.ofNullable(sampler).map(AdaptiveSampler::getMetrics);
+    }
+
+    /**
+     * Runs the decode, analysis and recording stages of the stream on the given executor instead of the common pool.
+     *
+     * @param stageExecutor Executor shared by the stages, usually sized to the number of cores
+     * @return This processor
+     */
+    public MotionProcessor withStageExecutor(final Executor stageExecutor) {
+        this.stageExecutor = checkNotNull(stageExecutor, "stageExecutor cannot be null");
+        return this;
+    }
+
+    /**
+     * Queue depth and throughput of each pipeline stage of the stream being processed, in pipeline order.
+     *
+     * @return Metrics of the ingest, decode (when packets are copied), analyze and record stages, or empty if no stream
+     * was processed yet
+     */
+    public List<StageMetrics> getStageMetrics() {
+        final MotionPipeline pipeline = this.pipeline;
+        return pipeline == null ? Collections.emptyList() : pipeline.getStageMetrics();
+    }
+
+    public ObservableInputStream.Observer observeStream(final BackpressurePolicy policy, final long lagThreshold) {
         final ObservableInputStream cameraStream = this.cameraStream;
         if (cameraStream == null) {
             throw new RuntimeException("Camera stream is not operational");
         }
         try {
-            return cameraStream.newObserver();
+            return cameraStream.newObserver(policy, lagThreshold);
         } catch (IOException e) {
             throw new RuntimeException("Cannot spawn observer", e);
         }
     }
 
+    /**
+     * Content type the camera reported for its stream, which observers need to present the stream as-is; for an MJPEG
+     * stream it carries the multipart boundary.
+     *
+     * @return Content type, or null if the stream was not opened yet or the camera did not report one
+     */
+    public String getStreamContentType() {
+        return cameraStreamContentType;
+    }
+
     private File tmpFile() {
         return new File(tmpFolder, UUID.randomUUID() + ".mp4");
     }
@@ -200,9 +354,19 @@ public class MotionProcessor {
             String basicAuth = "Basic " + new String(Base64.getEncoder().encode(userpass.getBytes()));
             connection.setRequestProperty("Authorization", basicAuth);
         }
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
 
         LOG.info("Opening stream to camera {}", camera.getName());
-        cameraStream = new ObservableInputStream(connection.getInputStream());
+        final InputStream inputStream = connection.getInputStream();
+        cameraStreamContentType = connection.getContentType();
+        cameraStream = new ObservableInputStream(inputStream,
+                                                 ObservableInputStream.DEFAULT_BUFFER_SIZE,
+                                                 isMultipart(cameraStreamContentType));
+        if (stopped) {
+            cameraStream.close();
+            throw new IOException("Processor for camera " + camera.getName() + " was stopped");
+        }
         return cameraStream;
     }
 
@@ -210,4 +374,18 @@ public class MotionProcessor {
     public interface MotionCaptureListener {
         void motionObserved(final Camera camera, final File motionVideo);
     }
+
+    @FunctionalInterface
+    public interface FrameListener {
+        /**
+         * @param camera Camera the frame was decoded from
+         * @param image  Decoded image, only valid during the call
+         */
+        void frameDecoded(final Camera camera, final opencv_core.IplImage image);
+    }
+
+    @FunctionalInterface
+    public interface SegmentListener {
+        void segmentRecorded(final Camera camera, final RecordedSegment segment);
+    }
 }
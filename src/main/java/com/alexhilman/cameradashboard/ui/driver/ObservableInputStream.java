@@ -1,28 +1,74 @@
 package com.alexhilman.cameradashboard.ui.driver;
 
+import com.google.common.collect.ImmutableList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.concurrent.GuardedBy;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.util.LinkedList;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.List;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * Stream which can be observed by any number of other observers (other input streams).
+ * <p>
+ * Bytes read from the real stream are copied once into a shared ring buffer; every observer has its own cursor into
+ * that buffer. The reader of this stream never waits for an observer: an observer which falls further behind than its
+ * lag threshold is dealt with according to its {@link BackpressurePolicy}.
+ * <p>
+ * While copying a multipart stream, the positions of multipart boundaries ({@code "\n--"}) are remembered as keyframes
+ * so an observer of an MJPEG stream can resume on a frame boundary. The stream is only scanned while an observer
+ * {@link BackpressurePolicy#SKIP_TO_KEYFRAME skips to keyframes}.
  */
 public class ObservableInputStream extends InputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
     private static final Logger LOG = LogManager.getLogger(ObservableInputStream.class);
+    private static final int KEYFRAME_POSITIONS = 256;
 
-    private final List<PipedOutputStream> observerStreams = new LinkedList<>();
     private final Object lock = new Object();
+    private final byte[] ring;
+    private final boolean multipart;
+    @GuardedBy("lock")
+    private final long[] keyframePositions = new long[KEYFRAME_POSITIONS];
+    @GuardedBy("lock")
+    private final List<Observer> observers = new ArrayList<>();
+
+    @GuardedBy("lock")
+    private long writePosition;
+    @GuardedBy("lock")
+    private long keyframeCount;
+    @GuardedBy("lock")
+    private int boundaryMatch;
+    @GuardedBy("lock")
+    private int keyframeObservers;
+    @GuardedBy("lock")
+    private boolean ended;
 
     private final InputStream realInputStream;
 
     public ObservableInputStream(final InputStream realInputStream) {
+        this(realInputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ObservableInputStream(final InputStream realInputStream, final int bufferSize) {
+        this(realInputStream, bufferSize, true);
+    }
+
+    /**
+     * @param realInputStream Stream to observe
+     * @param bufferSize      Number of bytes observers may fall behind at most
+     * @param multipart       Whether the stream is a multipart stream, whose boundaries are keyframes
+     */
+    public ObservableInputStream(final InputStream realInputStream, final int bufferSize, final boolean multipart) {
+        checkArgument(bufferSize > 0, "bufferSize must be positive");
         this.realInputStream = realInputStream;
+        this.ring = new byte[bufferSize];
+        this.multipart = multipart;
     }
 
     @Override
@@ -52,81 +98,357 @@ public class ObservableInputStream extends InputStream {
 
     @Override
     public void close() throws IOException {
-        realInputStream.close();
+        try {
+            realInputStream.close();
+        } finally {
+            end();
+        }
     }
 
     private synchronized int observedRead() throws IOException {
         LOG.warn("Possible terrible performance: read single byte");
 
         final int byteRead = realInputStream.read();
-
-        final List<PipedOutputStream> streamsToClose = new LinkedList<>();
-
         if (byteRead == -1) {
-            streamsToClose.addAll(observerStreams);
+            end();
         } else {
-            observerStreams.forEach(pipedOutputStream -> {
-                try {
-                    pipedOutputStream.write(byteRead);
-                } catch (IOException e) {
-                    LOG.error("Could not write to observer stream; closing stream", e);
-                    streamsToClose.add(pipedOutputStream);
+            synchronized (lock) {
+                if (isScanningForKeyframes()) {
+                    scanForKeyframe(byteRead, writePosition);
                 }
-            });
-        }
-
-        streamsToClose.forEach(stream -> {
-            try {
-                stream.close();
-            } catch (IOException e) {
-                LOG.error("Could not close stream", e);
-            } finally {
-                observerStreams.remove(stream);
+                ring[ringIndex(writePosition)] = (byte) byteRead;
+                writePosition++;
+                afterPublish();
             }
-        });
+        }
         return byteRead;
     }
 
     private synchronized int observedRead(final byte[] b, final int off, final int len) throws IOException {
-        final byte[] localCopy = new byte[len];
-        final int read = realInputStream.read(localCopy, 0, localCopy.length);
-
-        final List<PipedOutputStream> streamsToClose = new LinkedList<>();
-        observerStreams.forEach(pipedOutputStream -> {
-            LOG.info("Sending {} bytes to observer {}", read, pipedOutputStream);
-            final byte[] observerCopy = new byte[localCopy.length];
-            System.arraycopy(localCopy, 0, observerCopy, 0, read);
-            try {
-                pipedOutputStream.write(observerCopy, 0, read);
-            } catch (IOException e) {
-                LOG.error("Could not write to observer stream; closing stream", e);
-                streamsToClose.add(pipedOutputStream);
-            }
-        });
-
-        System.arraycopy(localCopy, 0, b, off, read);
-
-        streamsToClose.forEach(stream -> {
-            try {
-                stream.close();
-            } catch (IOException e) {
-                LOG.error("Could not close stream", e);
-            } finally {
-                observerStreams.remove(stream);
-            }
-        });
+        final int read = realInputStream.read(b, off, len);
+        if (read == -1) {
+            end();
+        } else if (read > 0) {
+            publish(b, off, read);
+        }
         return read;
     }
 
+    private void publish(final byte[] b, final int off, final int len) {
+        synchronized (lock) {
+            if (isScanningForKeyframes()) {
+                scanForKeyframes(b, off, len);
+            }
+
+            // only the newest ring.length bytes can survive this write
+            final int skipped = Math.max(0, len - ring.length);
+            final long start = writePosition + skipped;
+            final int length = len - skipped;
+
+            final int ringIndex = ringIndex(start);
+            final int firstPart = Math.min(length, ring.length - ringIndex);
+            System.arraycopy(b, off + skipped, ring, ringIndex, firstPart);
+            System.arraycopy(b, off + skipped + firstPart, ring, 0, length - firstPart);
+
+            writePosition += len;
+            afterPublish();
+        }
+    }
+
+    @GuardedBy("lock")
+    private boolean isScanningForKeyframes() {
+        return multipart && keyframeObservers > 0;
+    }
+
+    @GuardedBy("lock")
+    private void scanForKeyframes(final byte[] b, final int off, final int len) {
+        // position of b[i] is positionOffset + i
+        final long positionOffset = writePosition - off;
+        final int end = off + len;
+        int i = off;
+
+        // a boundary may have begun at the end of the previous read
+        while (boundaryMatch > 0 && i < end) {
+            scanForKeyframe(b[i], positionOffset + i);
+            i++;
+        }
+
+        while (i < end) {
+            final int newline = indexOf(b, (byte) '\n', i, end);
+            if (newline == -1) {
+                return;
+            }
+            if (newline + 2 >= end) {
+                // the boundary may continue in the next read
+                for (int j = newline; j < end; j++) {
+                    scanForKeyframe(b[j], positionOffset + j);
+                }
+                return;
+            }
+            if (b[newline + 1] == '-' && b[newline + 2] == '-') {
+                keyframePositions[(int) (keyframeCount++ % KEYFRAME_POSITIONS)] = positionOffset + newline + 1;
+                i = newline + 3;
+            } else {
+                i = newline + 1;
+            }
+        }
+    }
+
+    private static int indexOf(final byte[] b, final byte target, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @GuardedBy("lock")
+    private void scanForKeyframe(final int b, final long position) {
+        if (b == '\n') {
+            boundaryMatch = 1;
+        } else if (b == '-' && boundaryMatch == 1) {
+            boundaryMatch = 2;
+        } else if (b == '-' && boundaryMatch == 2) {
+            keyframePositions[(int) (keyframeCount++ % KEYFRAME_POSITIONS)] = position - 1;
+            boundaryMatch = 0;
+        } else {
+            boundaryMatch = 0;
+        }
+    }
+
+    @GuardedBy("lock")
+    private void afterPublish() {
+        for (final Observer observer : observers) {
+            if (observer.policy == BackpressurePolicy.DISCONNECT && observer.getLag() > observer.lagThreshold) {
+                observer.disconnected = true;
+            }
+        }
+        // disconnected observers never skip to keyframes, so they need no other bookkeeping
+        observers.removeIf(observer -> observer.disconnected);
+        lock.notifyAll();
+    }
+
+    @GuardedBy("lock")
+    private void added(final Observer observer) {
+        observers.add(observer);
+        if (observer.policy == BackpressurePolicy.SKIP_TO_KEYFRAME && keyframeObservers++ == 0) {
+            // a boundary straddling the start of the scan is missed rather than half matched
+            boundaryMatch = 0;
+        }
+    }
+
+    @GuardedBy("lock")
+    private void removed(final Observer observer) {
+        if (observer.policy == BackpressurePolicy.SKIP_TO_KEYFRAME) {
+            keyframeObservers--;
+        }
+    }
+
+    @GuardedBy("lock")
+    private long newestKeyframeAfter(final long position) {
+        for (long i = keyframeCount - 1; i >= 0 && i >= keyframeCount - KEYFRAME_POSITIONS; i--) {
+            final long keyframePosition = keyframePositions[(int) (i % KEYFRAME_POSITIONS)];
+            if (keyframePosition <= position) {
+                return -1;
+            }
+            if (keyframePosition < writePosition) {
+                return keyframePosition;
+            }
+        }
+        return -1;
+    }
+
+    private void end() {
+        synchronized (lock) {
+            ended = true;
+            observers.clear();
+            keyframeObservers = 0;
+            lock.notifyAll();
+        }
+    }
+
+    private int ringIndex(final long position) {
+        return (int) (position % ring.length);
+    }
+
+    /**
+     * Spawn a new observer to the existing stream in its current state - no bytes are replayed. The observer skips ahead
+     * to the oldest buffered bytes if it falls a whole buffer behind.
+     *
+     * @return Stream of the bytes read from this stream from now on
+     * @throws IOException If the observer cannot be created
+     */
+    public Observer newObserver() throws IOException {
+        return newObserver(BackpressurePolicy.DROP_OLDEST, ring.length);
+    }
+
     /**
      * Spawn a new observer to the existing stream in its current state - no bytes are replayed.
      *
-     * @return
-     * @throws IOException
+     * @param policy       What to do when the observer falls more than {@code lagThreshold} bytes behind
+     * @param lagThreshold Number of bytes the observer may fall behind; at most the buffer size
+     * @return Stream of the bytes read from this stream from now on
+     * @throws IOException If the observer cannot be created
+     */
+    public Observer newObserver(final BackpressurePolicy policy, final long lagThreshold) throws IOException {
+        checkNotNull(policy, "policy cannot be null");
+        checkArgument(lagThreshold > 0, "lagThreshold must be positive");
+
+        synchronized (lock) {
+            final Observer observer = new Observer(writePosition, policy, Math.min(lagThreshold, ring.length));
+            if (!ended) {
+                added(observer);
+            }
+            return observer;
+        }
+    }
+
+    /**
+     * @return Observers which are still connected
+     */
+    public List<Observer> getObservers() {
+        synchronized (lock) {
+            return ImmutableList.copyOf(observers);
+        }
+    }
+
+    /**
+     * A reader of the shared ring buffer with its own cursor.
      */
-    public synchronized InputStream newObserver() throws IOException {
-        final PipedOutputStream src = new PipedOutputStream();
-        observerStreams.add(src);
-        return new PipedInputStream(src);
+    public class Observer extends InputStream {
+        private final BackpressurePolicy policy;
+        private final long lagThreshold;
+        @GuardedBy("lock")
+        private long readPosition;
+        @GuardedBy("lock")
+        private boolean closed;
+        @GuardedBy("lock")
+        private boolean disconnected;
+        @GuardedBy("lock")
+        private long droppedBytes;
+        @GuardedBy("lock")
+        private long drops;
+
+        private Observer(final long readPosition, final BackpressurePolicy policy, final long lagThreshold) {
+            this.readPosition = readPosition;
+            this.policy = policy;
+            this.lagThreshold = lagThreshold;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            final int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            synchronized (lock) {
+                while (readPosition == writePosition && !ended && !closed && !disconnected) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for the observed stream");
+                    }
+                }
+
+                if (closed || disconnected || readPosition == writePosition) {
+                    return -1;
+                }
+
+                if (getLag() > lagThreshold) {
+                    catchUp();
+                }
+
+                final int length = (int) Math.min(len, writePosition - readPosition);
+                final int ringIndex = ringIndex(readPosition);
+                final int firstPart = Math.min(length, ring.length - ringIndex);
+                System.arraycopy(ring, ringIndex, b, off, firstPart);
+                System.arraycopy(ring, 0, b, off + firstPart, length - firstPart);
+                readPosition += length;
+                return length;
+            }
+        }
+
+        @GuardedBy("lock")
+        private void catchUp() {
+            long newPosition = writePosition - lagThreshold;
+            if (policy == BackpressurePolicy.SKIP_TO_KEYFRAME) {
+                final long keyframePosition = newestKeyframeAfter(Math.max(readPosition, writePosition - ring.length));
+                if (keyframePosition >= 0) {
+                    newPosition = keyframePosition;
+                }
+            }
+
+            LOG.debug("Observer fell {} bytes behind; skipping {} bytes", getLag(), newPosition - readPosition);
+            droppedBytes += newPosition - readPosition;
+            drops++;
+            readPosition = newPosition;
+        }
+
+        @Override
+        public int available() {
+            synchronized (lock) {
+                return (int) Math.min(lagThreshold, getLag());
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (lock) {
+                closed = true;
+                if (observers.remove(this)) {
+                    removed(this);
+                }
+                lock.notifyAll();
+            }
+        }
+
+        public BackpressurePolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * @return Number of bytes read from the camera which this observer has not read yet
+         */
+        public long getLag() {
+            synchronized (lock) {
+                return writePosition - readPosition;
+            }
+        }
+
+        /**
+         * @return Total number of bytes skipped because this observer fell behind
+         */
+        public long getDroppedBytes() {
+            synchronized (lock) {
+                return droppedBytes;
+            }
+        }
+
+        /**
+         * @return Number of times this observer skipped ahead
+         */
+        public long getDrops() {
+            synchronized (lock) {
+                return drops;
+            }
+        }
+
+        /**
+         * @return True if this observer was disconnected for falling too far behind
+         */
+        public boolean isDisconnected() {
+            synchronized (lock) {
+                return disconnected;
+            }
+        }
     }
 }
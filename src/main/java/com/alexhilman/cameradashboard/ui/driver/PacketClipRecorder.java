@@ -0,0 +1,72 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Records motion clips by copying the camera's compressed packets, keeping its original bitstream.
+ */
+class PacketClipRecorder extends MotionClipRecorder<avcodec.AVPacket> {
+    private final FFmpegFrameGrabber grabber;
+    private final PacketRing startingPacketBuffer;
+    private FFmpegFrameRecorder packetRecorder;
+
+    PacketClipRecorder(final Camera camera,
+                       final int marginFrames,
+                       final Supplier<File> clipFiles,
+                       final Consumer<File> clipListener,
+                       final FFmpegFrameGrabber grabber) {
+        super(camera, marginFrames, clipFiles, clipListener);
+        this.grabber = grabber;
+        this.startingPacketBuffer = new PacketRing(Math.max(1, marginFrames));
+    }
+
+    @Override
+    protected void open(final File clip) throws FrameRecorder.Exception {
+        packetRecorder = new FFmpegFrameRecorder(clip, grabber.getImageWidth(), grabber.getImageHeight(), 0);
+        packetRecorder.setFormat("mp4");
+        packetRecorder.setVideoCodec(grabber.getVideoCodec());
+        packetRecorder.setFrameRate(grabber.getFrameRate());
+        packetRecorder.start(grabber.getFormatContext());
+    }
+
+    @Override
+    protected void writeBuffered() throws FrameRecorder.Exception {
+        startingPacketBuffer.drainTo(packetRecorder);
+    }
+
+    @Override
+    protected void write(final avcodec.AVPacket packet) throws FrameRecorder.Exception {
+        packetRecorder.recordPacket(packet);
+    }
+
+    @Override
+    protected void buffer(final avcodec.AVPacket packet) {
+        startingPacketBuffer.push(packet);
+    }
+
+    @Override
+    protected void closeClip() throws FrameRecorder.Exception {
+        try {
+            packetRecorder.close();
+        } finally {
+            packetRecorder = null;
+        }
+    }
+
+    @Override
+    public void close() throws FrameRecorder.Exception {
+        try {
+            super.close();
+        } finally {
+            startingPacketBuffer.close();
+        }
+    }
+}
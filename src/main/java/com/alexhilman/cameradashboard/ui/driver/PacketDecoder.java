@@ -0,0 +1,148 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avformat;
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacpp.swscale;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.bytedeco.javacpp.avcodec.AV_CODEC_PROP_INTRA_ONLY;
+import static org.bytedeco.javacpp.avcodec.avcodec_alloc_context3;
+import static org.bytedeco.javacpp.avcodec.avcodec_descriptor_get;
+import static org.bytedeco.javacpp.avcodec.avcodec_find_decoder;
+import static org.bytedeco.javacpp.avcodec.avcodec_free_context;
+import static org.bytedeco.javacpp.avcodec.avcodec_open2;
+import static org.bytedeco.javacpp.avcodec.avcodec_parameters_to_context;
+import static org.bytedeco.javacpp.avcodec.avcodec_receive_frame;
+import static org.bytedeco.javacpp.avcodec.avcodec_send_packet;
+import static org.bytedeco.javacpp.avutil.AV_PIX_FMT_BGR24;
+import static org.bytedeco.javacpp.avutil.AV_PIX_FMT_GRAY8;
+import static org.bytedeco.javacpp.avutil.av_frame_alloc;
+import static org.bytedeco.javacpp.avutil.av_frame_free;
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.javacpp.swscale.SWS_AREA;
+import static org.bytedeco.javacpp.swscale.sws_freeContext;
+import static org.bytedeco.javacpp.swscale.sws_getCachedContext;
+import static org.bytedeco.javacpp.swscale.sws_scale;
+
+/**
+ * Decodes compressed packets of a video stream into a reusable image, scaling and converting in a single pass: a small
+ * grayscale image for motion analysis, or a full-size BGR image for re-encoding. Only packets that are converted
+ * produce an image; other packets are merely fed to the decoder so inter-coded streams stay decodable.
+ */
+@NotThreadSafe
+class PacketDecoder implements AutoCloseable {
+    private final avcodec.AVCodecContext codecContext;
+    private final avutil.AVFrame decodedFrame;
+    private final boolean intraOnly;
+    private final int pixelFormat;
+    private final opencv_core.IplImage image;
+    private final PointerPointer sourceData;
+    private final PointerPointer imageData;
+    private final IntPointer imageStride;
+    private swscale.SwsContext swsContext;
+    private long conversionNanos;
+
+    /**
+     * @param stream      Stream the packets belong to
+     * @param width       Width of the decoded images
+     * @param height      Height of the decoded images
+     * @param pixelFormat {@code AV_PIX_FMT_GRAY8} or {@code AV_PIX_FMT_BGR24}
+     */
+    PacketDecoder(final avformat.AVStream stream, final int width, final int height, final int pixelFormat) {
+        checkArgument(pixelFormat == AV_PIX_FMT_GRAY8 || pixelFormat == AV_PIX_FMT_BGR24,
+                      "pixelFormat must be GRAY8 or BGR24");
+        this.pixelFormat = pixelFormat;
+
+        final avcodec.AVCodecParameters parameters = stream.codecpar();
+        final avcodec.AVCodec codec = avcodec_find_decoder(parameters.codec_id());
+        if (codec == null) {
+            throw new IllegalArgumentException("No decoder for codec " + parameters.codec_id());
+        }
+        codecContext = avcodec_alloc_context3(codec);
+        if (avcodec_parameters_to_context(codecContext, parameters) < 0
+                || avcodec_open2(codecContext, codec, (PointerPointer) null) < 0) {
+            avcodec_free_context(codecContext);
+            throw new IllegalStateException("Could not open decoder for codec " + parameters.codec_id());
+        }
+
+        final avcodec.AVCodecDescriptor descriptor = avcodec_descriptor_get(parameters.codec_id());
+        intraOnly = descriptor != null && (descriptor.props() & AV_CODEC_PROP_INTRA_ONLY) != 0;
+
+        decodedFrame = av_frame_alloc();
+        sourceData = new PointerPointer(decodedFrame);
+        image = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, pixelFormat == AV_PIX_FMT_GRAY8 ? 1 : 3);
+        imageData = new PointerPointer(4).put(0, image.imageData());
+        imageStride = new IntPointer(image.widthStep(), 0, 0, 0);
+    }
+
+    /**
+     * Whether every packet must be decoded, because frames depend on earlier frames.
+     *
+     * @return True for inter-coded streams such as H.264
+     */
+    boolean needsEveryPacket() {
+        return !intraOnly;
+    }
+
+    /**
+     * Feeds a packet to the decoder.
+     *
+     * @param packet  Packet of the decoder's stream
+     * @param convert Whether to convert the decoded picture into an image
+     * @return The decoded picture, or null if it was not converted or the decoder has no picture yet; the image is
+     * reused by the next call
+     */
+    opencv_core.IplImage decode(final avcodec.AVPacket packet, final boolean convert) {
+        if (avcodec_send_packet(codecContext, packet) < 0
+                || avcodec_receive_frame(codecContext, decodedFrame) < 0
+                || !convert) {
+            return null;
+        }
+
+        final long conversionStarted = System.nanoTime();
+        swsContext = sws_getCachedContext(swsContext,
+                                          decodedFrame.width(),
+                                          decodedFrame.height(),
+                                          decodedFrame.format(),
+                                          image.width(),
+                                          image.height(),
+                                          pixelFormat,
+                                          SWS_AREA,
+                                          null,
+                                          null,
+                                          (DoublePointer) null);
+        sws_scale(swsContext, sourceData, decodedFrame.linesize(), 0, decodedFrame.height(), imageData, imageStride);
+        conversionNanos = System.nanoTime() - conversionStarted;
+        return image;
+    }
+
+    /**
+     * Time spent scaling and converting the last decoded picture into the image, without decoding it.
+     *
+     * @return Nanoseconds
+     */
+    long getConversionNanos() {
+        return conversionNanos;
+    }
+
+    @Override
+    public void close() {
+        if (swsContext != null) {
+            sws_freeContext(swsContext);
+            swsContext = null;
+        }
+        av_frame_free(decodedFrame);
+        avcodec_free_context(codecContext);
+        image.close();
+        sourceData.close();
+        imageData.close();
+        imageStride.close();
+    }
+}
@@ -0,0 +1,128 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameRecorder;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.bytedeco.javacpp.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.javacpp.avcodec.av_packet_alloc;
+import static org.bytedeco.javacpp.avcodec.av_packet_free;
+import static org.bytedeco.javacpp.avcodec.av_packet_ref;
+import static org.bytedeco.javacpp.avcodec.av_packet_unref;
+
+/**
+ * Fixed-capacity ring of compressed packets. The slots are allocated once; pushing a packet takes a new reference to
+ * its data rather than copying it.
+ * <p>
+ * Like {@link FrameRing}, the ring keeps the newest {@code capacity} packets and, when they hold no key frame, the
+ * packets back to the most recent key frame before them, up to as many again.
+ */
+@NotThreadSafe
+class PacketRing implements AutoCloseable {
+    private final avcodec.AVPacket[] slots;
+    private final int capacity;
+    private int next;
+    private int size;
+
+    PacketRing(final int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+        this.slots = new avcodec.AVPacket[capacity * 2];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = av_packet_alloc();
+        }
+    }
+
+    /**
+     * References a packet from the ring, releasing the oldest packets which are no longer needed.
+     *
+     * @param packet Packet to reference; the caller keeps its own reference
+     */
+    void push(final avcodec.AVPacket packet) {
+        checkNotNull(packet, "packet cannot be null");
+
+        final avcodec.AVPacket slot = slots[next];
+        av_packet_unref(slot);
+        if (av_packet_ref(slot, packet) < 0) {
+            throw new IllegalStateException("Could not reference packet");
+        }
+        next = (next + 1) % slots.length;
+        size = Math.min(size + 1, slots.length);
+        trim();
+    }
+
+    /**
+     * Records the buffered packets, oldest first, starting at the oldest key frame; packets before it are discarded.
+     * The ring is empty afterwards.
+     *
+     * @param recorder Recorder started on the packets' input format
+     * @throws FrameRecorder.Exception If the recorder fails
+     */
+    void drainTo(final FFmpegFrameRecorder recorder) throws FrameRecorder.Exception {
+        checkNotNull(recorder, "recorder cannot be null");
+
+        boolean keyFrameSeen = false;
+        try {
+            for (int i = 0; i < size; i++) {
+                final avcodec.AVPacket packet = packetAt(i);
+                keyFrameSeen |= isKeyFrame(packet);
+                if (keyFrameSeen) {
+                    recorder.recordPacket(packet);
+                }
+            }
+        } finally {
+            clear();
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            av_packet_unref(slots[i]);
+        }
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Releases the packets before the newest {@code capacity} packets, except from the most recent key frame before
+     * them on.
+     */
+    private void trim() {
+        if (size <= capacity) {
+            return;
+        }
+        final int windowStart = size - capacity;
+        int keyFrame = windowStart;
+        while (keyFrame >= 0 && !isKeyFrame(packetAt(keyFrame))) {
+            keyFrame--;
+        }
+        final int dropped = keyFrame >= 0 ? keyFrame : windowStart;
+        for (int i = 0; i < dropped; i++) {
+            av_packet_unref(packetAt(0));
+            size--;
+        }
+    }
+
+    private avcodec.AVPacket packetAt(final int index) {
+        return slots[(next - size + index + slots.length) % slots.length];
+    }
+
+    private static boolean isKeyFrame(final avcodec.AVPacket packet) {
+        return (packet.flags() & AV_PKT_FLAG_KEY) != 0;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < slots.length; i++) {
+            av_packet_free(slots[i]);
+        }
+        size = 0;
+    }
+}
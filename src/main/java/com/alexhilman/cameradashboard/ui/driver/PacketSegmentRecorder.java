@@ -0,0 +1,93 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.time.Clock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.bytedeco.javacpp.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.javacpp.avcodec.av_packet_alloc;
+import static org.bytedeco.javacpp.avcodec.av_packet_free;
+import static org.bytedeco.javacpp.avcodec.av_packet_ref;
+import static org.bytedeco.javacpp.avcodec.av_packet_unref;
+
+/**
+ * Records continuous segments by copying the camera's compressed packets, without re-encoding. The muxer takes over
+ * the packets it writes, so it is given a reference of its own and the packets offered stay intact for the motion clip
+ * and the decoder.
+ */
+class PacketSegmentRecorder extends SegmentRecorder<avcodec.AVPacket> {
+    private final FFmpegFrameGrabber grabber;
+    private final avutil.AVRational timeBase;
+    private final avcodec.AVPacket written = av_packet_alloc();
+    private FFmpegFrameRecorder packetRecorder;
+
+    PacketSegmentRecorder(final Camera camera,
+                          final long segmentMillis,
+                          final Supplier<File> segmentFiles,
+                          final Consumer<RecordedSegment> segmentListener,
+                          final FFmpegFrameGrabber grabber,
+                          final avutil.AVRational timeBase) {
+        super(camera, segmentMillis, segmentFiles, segmentListener, Clock.systemUTC());
+        this.grabber = grabber;
+        this.timeBase = timeBase;
+    }
+
+    void offer(final avcodec.AVPacket packet, final boolean motionDetected) throws FrameRecorder.Exception {
+        final long timestampMillis = packet.pts() * 1000L * timeBase.num() / timeBase.den();
+        offer(packet, timestampMillis, (packet.flags() & AV_PKT_FLAG_KEY) != 0, motionDetected);
+    }
+
+    @Override
+    protected void open(final File segment) throws FrameRecorder.Exception {
+        packetRecorder = new FFmpegFrameRecorder(segment, grabber.getImageWidth(), grabber.getImageHeight(), 0);
+        packetRecorder.setFormat("mp4");
+        packetRecorder.setVideoCodec(grabber.getVideoCodec());
+        packetRecorder.setFrameRate(grabber.getFrameRate());
+        packetRecorder.start(grabber.getFormatContext());
+    }
+
+    @Override
+    protected void write(final avcodec.AVPacket packet) throws FrameRecorder.Exception {
+        if (av_packet_ref(written, packet) < 0) {
+            throw new FrameRecorder.Exception("Could not reference packet");
+        }
+        try {
+            recordPacket(written);
+        } finally {
+            av_packet_unref(written);
+        }
+    }
+
+    /**
+     * Writes a packet to the segment, which consumes its data and timestamps.
+     */
+    void recordPacket(final avcodec.AVPacket packet) throws FrameRecorder.Exception {
+        packetRecorder.recordPacket(packet);
+    }
+
+    @Override
+    protected void closeSegment() throws FrameRecorder.Exception {
+        try {
+            packetRecorder.close();
+        } finally {
+            packetRecorder = null;
+        }
+    }
+
+    @Override
+    public void close() throws FrameRecorder.Exception {
+        try {
+            super.close();
+        } finally {
+            av_packet_free(written);
+        }
+    }
+}
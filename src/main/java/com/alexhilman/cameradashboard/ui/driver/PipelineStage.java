@@ -0,0 +1,144 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * One stage of a camera pipeline: a bounded queue drained in order by at most one task at a time on a shared executor.
+ * Offering never blocks; an item that does not fit is refused and counted as dropped, and the caller keeps ownership
+ * of it.
+ *
+ * @param <T> Items handled by the stage
+ */
+@ThreadSafe
+class PipelineStage<T> {
+    private static final Logger LOG = LogManager.getLogger(PipelineStage.class);
+    private static final int MAX_BATCH = 64;
+
+    private final String name;
+    private final int capacity;
+    private final BlockingQueue<T> queue;
+    private final Executor executor;
+    private final Consumer<T> handler;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private final RateMeter processed = new RateMeter();
+    private final Object idle = new Object();
+
+    PipelineStage(final String name, final int capacity, final Executor executor, final Consumer<T> handler) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.name = checkNotNull(name, "name cannot be null");
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.executor = checkNotNull(executor, "executor cannot be null");
+        this.handler = checkNotNull(handler, "handler cannot be null");
+    }
+
+    /**
+     * Queues an item for the stage.
+     *
+     * @param item Item to handle
+     * @return False if the queue is full; the item was not taken
+     */
+    boolean offer(final T item) {
+        if (!queue.offer(item)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Waits for the stage to handle everything queued so far; items still queued are handled on the calling thread.
+     * Nothing may be offered concurrently.
+     * <p>
+     * Interrupts do not cut the wait short: queued items may hold resources that are released only once they are
+     * handled, and the caller usually frees what the handler works with next. The interrupt status is restored before
+     * returning.
+     */
+    void finish() {
+        boolean interrupted = false;
+        while (!draining.compareAndSet(false, true)) {
+            synchronized (idle) {
+                if (draining.get()) {
+                    try {
+                        idle.wait(100);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        try {
+            T item;
+            while ((item = queue.poll()) != null) {
+                handle(item);
+            }
+        } finally {
+            draining.set(false);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    StageMetrics getMetrics() {
+        return new StageMetrics(name,
+                                queue.size(),
+                                capacity,
+                                processed.getCount(),
+                                dropped.get(),
+                                processed.getRatePerSecond());
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                LOG.warn("Stage {} could not be scheduled; its queue is handled when the stream ends", name);
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            T item;
+            int handled = 0;
+            while (handled++ < MAX_BATCH && (item = queue.poll()) != null) {
+                handle(item);
+            }
+        } finally {
+            draining.set(false);
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void handle(final T item) {
+        try {
+            handler.accept(item);
+        } catch (RuntimeException e) {
+            LOG.error("Stage {} failed to handle an item", name, e);
+        }
+        processed.mark();
+    }
+}
@@ -0,0 +1,42 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events and their rate over the last completed window of about a second. Events must be marked by one thread
+ * at a time; the count and rate may be read from any thread.
+ */
+@ThreadSafe
+class RateMeter {
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final AtomicLong count = new AtomicLong();
+    private volatile long windowStartNanos = System.nanoTime();
+    private volatile long windowStartCount;
+    private volatile double ratePerSecond;
+
+    void mark() {
+        final long count = this.count.incrementAndGet();
+        final long now = System.nanoTime();
+        final long elapsed = now - windowStartNanos;
+        if (elapsed >= WINDOW_NANOS) {
+            ratePerSecond = (count - windowStartCount) * 1_000_000_000.0 / elapsed;
+            windowStartCount = count;
+            windowStartNanos = now;
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Events per second in the last completed window; zero if no event was marked for a couple of windows.
+     *
+     * @return Rate per second
+     */
+    double getRatePerSecond() {
+        return System.nanoTime() - windowStartNanos > 2 * WINDOW_NANOS ? 0.0 : ratePerSecond;
+    }
+}
@@ -0,0 +1,52 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.File;
+import java.time.Instant;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A finished segment of continuous recording, with the motion detected while it was recorded.
+ */
+@Immutable
+public class RecordedSegment {
+    private final File file;
+    private final Instant start;
+    private final List<MotionInterval> motion;
+
+    public RecordedSegment(final File file, final Instant start, final List<MotionInterval> motion) {
+        this.file = checkNotNull(file, "file cannot be null");
+        this.start = checkNotNull(start, "start cannot be null");
+        this.motion = ImmutableList.copyOf(checkNotNull(motion, "motion cannot be null"));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Wall-clock time of the segment's first frame.
+     *
+     * @return Start of the segment
+     */
+    public Instant getStart() {
+        return start;
+    }
+
+    public List<MotionInterval> getMotion() {
+        return motion;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordedSegment{" +
+                "file=" + file +
+                ", start=" + start +
+                ", motion=" + motion +
+                '}';
+    }
+}
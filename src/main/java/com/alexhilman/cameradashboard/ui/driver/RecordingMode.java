@@ -0,0 +1,16 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+/**
+ * How a {@link MotionProcessor} writes motion clips.
+ */
+public enum RecordingMode {
+    /**
+     * Decode every frame and encode the clip anew.
+     */
+    REENCODE,
+    /**
+     * Copy the camera's compressed packets into the clip; only frames sampled for motion analysis are converted, and
+     * intra-only streams such as MJPEG only decode those.
+     */
+    PACKET_COPY
+}
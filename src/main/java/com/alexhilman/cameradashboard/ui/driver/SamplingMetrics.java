@@ -0,0 +1,59 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Snapshot of how often a camera's frames are analyzed for motion, and what each analysis costs.
+ */
+@Immutable
+public class SamplingMetrics {
+    private final double frameRate;
+    private final double samplesPerSecond;
+    private final double decodeMillisPerSample;
+    private final double analysisMillisPerSample;
+
+    public SamplingMetrics(final double frameRate,
+                           final double samplesPerSecond,
+                           final double decodeMillisPerSample,
+                           final double analysisMillisPerSample) {
+        this.frameRate = frameRate;
+        this.samplesPerSecond = samplesPerSecond;
+        this.decodeMillisPerSample = decodeMillisPerSample;
+        this.analysisMillisPerSample = analysisMillisPerSample;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    public double getDecodeMillisPerSample() {
+        return decodeMillisPerSample;
+    }
+
+    public double getAnalysisMillisPerSample() {
+        return analysisMillisPerSample;
+    }
+
+    /**
+     * Share of one core spent on decoding and analyzing samples at the current rate.
+     *
+     * @return CPU share, where 1.0 is a whole core
+     */
+    public double getCpuShare() {
+        return samplesPerSecond * (decodeMillisPerSample + analysisMillisPerSample) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "SamplingMetrics{" +
+                "frameRate=" + frameRate +
+                ", samplesPerSecond=" + samplesPerSecond +
+                ", decodeMillisPerSample=" + decodeMillisPerSample +
+                ", analysisMillisPerSample=" + analysisMillisPerSample +
+                '}';
+    }
+}
@@ -0,0 +1,131 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bytedeco.javacv.FrameRecorder;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.File;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes the whole stream into consecutive segments of about a fixed length, regardless of motion. A segment starts on
+ * a keyframe, so each one plays on its own; the stretches of motion within a segment are reported along with it.
+ * Motion spanning two segments is reported in both.
+ *
+ * @param <T> Unit of the stream
+ */
+@NotThreadSafe
+abstract class SegmentRecorder<T> implements AutoCloseable {
+    private static final Logger LOG = LogManager.getLogger(SegmentRecorder.class);
+
+    private final Camera camera;
+    private final long segmentMillis;
+    private final Supplier<File> segmentFiles;
+    private final Consumer<RecordedSegment> segmentListener;
+    private final Clock clock;
+    private final List<MotionInterval> motion = new ArrayList<>();
+    private File segment;
+    private Instant segmentStart;
+    private long segmentStartMillis;
+    private long lastOffsetMillis;
+    private long motionStartMillis = -1;
+
+    SegmentRecorder(final Camera camera,
+                    final long segmentMillis,
+                    final Supplier<File> segmentFiles,
+                    final Consumer<RecordedSegment> segmentListener,
+                    final Clock clock) {
+        checkArgument(segmentMillis > 0, "segmentMillis must be positive");
+        this.camera = checkNotNull(camera, "camera cannot be null");
+        this.segmentMillis = segmentMillis;
+        this.segmentFiles = checkNotNull(segmentFiles, "segmentFiles cannot be null");
+        this.segmentListener = checkNotNull(segmentListener, "segmentListener cannot be null");
+        this.clock = checkNotNull(clock, "clock cannot be null");
+    }
+
+    /**
+     * Records the next item of the stream. Nothing is recorded before the first keyframe.
+     *
+     * @param item            Next item of the stream
+     * @param timestampMillis Presentation time of the item in the stream
+     * @param keyFrame        Whether the item starts a keyframe
+     * @param motionDetected  Whether motion is currently detected
+     * @throws FrameRecorder.Exception If the segment cannot be written
+     */
+    void offer(final T item,
+               final long timestampMillis,
+               final boolean keyFrame,
+               final boolean motionDetected) throws FrameRecorder.Exception {
+        if (segment == null) {
+            if (!keyFrame) {
+                return;
+            }
+            start(timestampMillis, motionDetected);
+        } else if (keyFrame && timestampMillis - segmentStartMillis >= segmentMillis) {
+            final boolean motionContinues = motionStartMillis >= 0;
+            finish(timestampMillis - segmentStartMillis);
+            start(timestampMillis, motionContinues);
+        }
+
+        final long offsetMillis = timestampMillis - segmentStartMillis;
+        if (motionDetected && motionStartMillis < 0) {
+            motionStartMillis = offsetMillis;
+        } else if (!motionDetected && motionStartMillis >= 0) {
+            motion.add(new MotionInterval(motionStartMillis, offsetMillis - motionStartMillis));
+            motionStartMillis = -1;
+        }
+        lastOffsetMillis = offsetMillis;
+
+        write(item);
+    }
+
+    /**
+     * Finishes the segment in progress, if any.
+     *
+     * @throws FrameRecorder.Exception If the segment cannot be finished
+     */
+    @Override
+    public void close() throws FrameRecorder.Exception {
+        if (segment != null) {
+            finish(lastOffsetMillis);
+        }
+    }
+
+    protected abstract void open(final File segment) throws FrameRecorder.Exception;
+
+    protected abstract void write(final T item) throws FrameRecorder.Exception;
+
+    protected abstract void closeSegment() throws FrameRecorder.Exception;
+
+    private void start(final long timestampMillis, final boolean motionDetected) throws FrameRecorder.Exception {
+        segment = segmentFiles.get();
+        segmentStart = clock.instant();
+        segmentStartMillis = timestampMillis;
+        lastOffsetMillis = 0;
+        motionStartMillis = motionDetected ? 0 : -1;
+        open(segment);
+    }
+
+    private void finish(final long endOffsetMillis) throws FrameRecorder.Exception {
+        if (motionStartMillis >= 0) {
+            motion.add(new MotionInterval(motionStartMillis, endOffsetMillis - motionStartMillis));
+        }
+        final RecordedSegment recorded = new RecordedSegment(segment, segmentStart, motion);
+        motion.clear();
+        motionStartMillis = -1;
+        segment = null;
+        closeSegment();
+        LOG.debug("Recorded segment of {}: {}", camera.getName(), recorded);
+        segmentListener.accept(recorded);
+    }
+}
@@ -0,0 +1,76 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Snapshot of one stage of a camera's pipeline.
+ */
+@Immutable
+public class StageMetrics {
+    private final String name;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long processed;
+    private final long dropped;
+    private final double itemsPerSecond;
+
+    public StageMetrics(final String name,
+                        final int queueDepth,
+                        final int queueCapacity,
+                        final long processed,
+                        final long dropped,
+                        final double itemsPerSecond) {
+        this.name = name;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.processed = processed;
+        this.dropped = dropped;
+        this.itemsPerSecond = itemsPerSecond;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Items waiting for the stage.
+     *
+     * @return Queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Items discarded because the stage's queue was full.
+     *
+     * @return Dropped items
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public double getItemsPerSecond() {
+        return itemsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "StageMetrics{" +
+                "name='" + name + '\'' +
+                ", queueDepth=" + queueDepth +
+                ", queueCapacity=" + queueCapacity +
+                ", processed=" + processed +
+                ", dropped=" + dropped +
+                ", itemsPerSecond=" + itemsPerSecond +
+                '}';
+    }
+}
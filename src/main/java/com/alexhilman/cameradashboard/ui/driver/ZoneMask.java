@@ -0,0 +1,214 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.MotionZone;
+
+import javax.annotation.concurrent.Immutable;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Motion zones rasterized onto the analysis geometry. Only the bounding box of all zones (the region of interest) is
+ * analyzed; within it, each pixel is labelled with the zone it belongs to, or 0 if it belongs to none. Without zones the
+ * whole picture is a single zone.
+ */
+@Immutable
+class ZoneMask {
+    static final String WHOLE_FRAME = "frame";
+
+    private final int roiX;
+    private final int roiY;
+    private final int roiWidth;
+    private final int roiHeight;
+    private final byte[] labels;
+    private final String[] zoneNames;
+    private final double[] thresholdPercents;
+    private final int[] zonePixels;
+
+    private ZoneMask(final int roiX,
+                     final int roiY,
+                     final int roiWidth,
+                     final int roiHeight,
+                     final byte[] labels,
+                     final String[] zoneNames,
+                     final double[] thresholdPercents,
+                     final int[] zonePixels) {
+        this.roiX = roiX;
+        this.roiY = roiY;
+        this.roiWidth = roiWidth;
+        this.roiHeight = roiHeight;
+        this.labels = labels;
+        this.zoneNames = zoneNames;
+        this.thresholdPercents = thresholdPercents;
+        this.zonePixels = zonePixels;
+    }
+
+    /**
+     * Rasterizes zones onto a picture. A pixel belongs to the first zone containing its center; a zone too small to
+     * contain any pixel center gets the unlabelled pixel nearest its first point, and no pixel at all if every pixel
+     * already belongs to another zone.
+     *
+     * @param zones  Zones; empty for the whole picture
+     * @param width  Width of the picture
+     * @param height Height of the picture
+     * @return Zone mask
+     */
+    static ZoneMask of(final List<MotionZone> zones, final int width, final int height) {
+        checkArgument(zones.size() < 256, "at most 255 zones are supported");
+        if (zones.isEmpty()) {
+            return new ZoneMask(0,
+                                0,
+                                width,
+                                height,
+                                null,
+                                new String[]{WHOLE_FRAME},
+                                new double[]{MotionZone.DEFAULT_THRESHOLD_PERCENT},
+                                new int[]{width * height});
+        }
+
+        final byte[] frameLabels = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int z = 0; z < zones.size(); z++) {
+                    if (zones.get(z).contains((x + 0.5) / width, (y + 0.5) / height)) {
+                        frameLabels[y * width + x] = (byte) (z + 1);
+                        break;
+                    }
+                }
+            }
+        }
+        for (int z = 0; z < zones.size(); z++) {
+            if (!hasLabel(frameLabels, z + 1)) {
+                final List<Double> point = zones.get(z).getPoints().get(0);
+                final int x = Math.min(width - 1, (int) (point.get(0) * width));
+                final int y = Math.min(height - 1, (int) (point.get(1) * height));
+                final int pixel = nearestUnlabelledPixel(frameLabels, width, height, x, y);
+                if (pixel >= 0) {
+                    frameLabels[pixel] = (byte) (z + 1);
+                }
+            }
+        }
+
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (frameLabels[y * width + x] != 0) {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+
+        final int roiWidth = maxX - minX + 1;
+        final int roiHeight = maxY - minY + 1;
+        final byte[] labels = new byte[roiWidth * roiHeight];
+        final int[] zonePixels = new int[zones.size()];
+        for (int y = 0; y < roiHeight; y++) {
+            for (int x = 0; x < roiWidth; x++) {
+                final byte label = frameLabels[(y + minY) * width + x + minX];
+                labels[y * roiWidth + x] = label;
+                if (label != 0) {
+                    zonePixels[(label & 0xff) - 1]++;
+                }
+            }
+        }
+
+        final String[] zoneNames = new String[zones.size()];
+        final double[] thresholdPercents = new double[zones.size()];
+        for (int z = 0; z < zones.size(); z++) {
+            zoneNames[z] = zones.get(z).getName();
+            thresholdPercents[z] = zones.get(z).getThresholdPercent();
+        }
+        return new ZoneMask(minX, minY, roiWidth, roiHeight, labels, zoneNames, thresholdPercents, zonePixels);
+    }
+
+    boolean isWholeFrame() {
+        return labels == null;
+    }
+
+    /**
+     * Counts the foreground pixels of each zone in a single pass over the region of interest.
+     *
+     * @param foreground Foreground mask of the region of interest, non-zero for pixels in motion
+     * @param stride     Bytes per row of the foreground mask
+     * @param counts     Receives the count of each zone; its previous contents are overwritten
+     */
+    void countForeground(final ByteBuffer foreground, final int stride, final int[] counts) {
+        for (int z = 0; z < counts.length; z++) {
+            counts[z] = 0;
+        }
+        for (int y = 0; y < roiHeight; y++) {
+            final int row = y * stride;
+            final int labelRow = y * roiWidth;
+            for (int x = 0; x < roiWidth; x++) {
+                final int label = labels[labelRow + x];
+                if (label != 0 && foreground.get(row + x) != 0) {
+                    counts[(label & 0xff) - 1]++;
+                }
+            }
+        }
+    }
+
+    int getRoiX() {
+        return roiX;
+    }
+
+    int getRoiY() {
+        return roiY;
+    }
+
+    int getRoiWidth() {
+        return roiWidth;
+    }
+
+    int getRoiHeight() {
+        return roiHeight;
+    }
+
+    int getZoneCount() {
+        return zoneNames.length;
+    }
+
+    String getZoneName(final int zone) {
+        return zoneNames[zone];
+    }
+
+    double getThresholdPercent(final int zone) {
+        return thresholdPercents[zone];
+    }
+
+    int getZonePixels(final int zone) {
+        return zonePixels[zone];
+    }
+
+    private static int nearestUnlabelledPixel(final byte[] labels,
+                                              final int width,
+                                              final int height,
+                                              final int x,
+                                              final int y) {
+        int nearest = -1;
+        long nearestDistance = Long.MAX_VALUE;
+        for (int py = 0; py < height; py++) {
+            for (int px = 0; px < width; px++) {
+                final long distance = (long) (px - x) * (px - x) + (long) (py - y) * (py - y);
+                if (labels[py * width + px] == 0 && distance < nearestDistance) {
+                    nearest = py * width + px;
+                    nearestDistance = distance;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    private static boolean hasLabel(final byte[] labels, final int label) {
+        for (final byte l : labels) {
+            if ((l & 0xff) == label) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
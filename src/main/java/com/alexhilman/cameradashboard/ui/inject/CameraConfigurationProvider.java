@@ -7,6 +7,7 @@ import com.google.inject.Provider;
 import java.io.File;
 import java.io.IOException;
 
+import static com.alexhilman.cameradashboard.ui.App.CAMERAS_CONFIG_FILE;
 import static com.alexhilman.cameradashboard.ui.App.CONFIGURATION_DIRECTORY_SYSTEM_PROPERTY;
 
 /**
@@ -15,10 +16,23 @@ public class CameraConfigurationProvider implements Provider<CameraConfiguration
     @Override
     public CameraConfiguration get() {
         try {
-            return new ObjectMapper().readValue(new File(System.getProperty(CONFIGURATION_DIRECTORY_SYSTEM_PROPERTY),
-                                                         "cameras.json"), CameraConfiguration.class);
+            return read();
         } catch (IOException e) {
             throw new IllegalStateException("Camera configuration is incorrect", e);
         }
     }
+
+    /**
+     * Reads the current contents of {@code cameras.json}.
+     *
+     * @return Camera configuration
+     * @throws IOException If the file cannot be read or is incorrect
+     */
+    public static CameraConfiguration read() throws IOException {
+        return new ObjectMapper().readValue(configurationFile(), CameraConfiguration.class);
+    }
+
+    public static File configurationFile() {
+        return new File(System.getProperty(CONFIGURATION_DIRECTORY_SYSTEM_PROPERTY), CAMERAS_CONFIG_FILE);
+    }
 }
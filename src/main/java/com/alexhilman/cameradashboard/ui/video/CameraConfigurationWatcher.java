@@ -0,0 +1,117 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.conf.CameraConfiguration;
+import com.alexhilman.cameradashboard.ui.inject.CameraConfigurationProvider;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches {@code cameras.json} and applies changes to the running cameras, so cameras can be added, changed or removed
+ * without restarting the server. An edit is applied once the file has been quiet for a moment; a file that cannot be
+ * read leaves the running configuration in place.
+ */
+@Singleton
+public class CameraConfigurationWatcher {
+    private static final Logger LOG = LogManager.getLogger(CameraConfigurationWatcher.class);
+    private static final long QUIET_PERIOD_MILLIS = 500;
+
+    private final CameraWatcher cameraWatcher;
+    private WatchService watchService;
+    private Thread thread;
+
+    @Inject
+    public CameraConfigurationWatcher(final CameraWatcher cameraWatcher) {
+        this.cameraWatcher = checkNotNull(cameraWatcher, "cameraWatcher cannot be null");
+    }
+
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        final File configurationFile = CameraConfigurationProvider.configurationFile();
+        final Path directory = configurationFile.getAbsoluteFile().getParentFile().toPath();
+
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+        final WatchService watchService = this.watchService;
+        thread = new Thread(() -> watch(watchService, configurationFile.getName()), "camera-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Watching {} for camera changes", configurationFile.getAbsolutePath());
+    }
+
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOG.debug("Could not close watch service", e);
+        }
+        thread.interrupt();
+        watchService = null;
+        thread = null;
+    }
+
+    private void watch(final WatchService watchService, final String fileName) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!changesTo(watchService.take(), fileName)) {
+                    continue;
+                }
+                // editors often write a file in several steps; wait for them to finish
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changesTo(key, fileName);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOG.debug("Stopped watching camera configuration");
+        }
+    }
+
+    private static boolean changesTo(final WatchKey key, final String fileName) {
+        boolean changed = false;
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path && ((Path) event.context()).getFileName().toString().equals(fileName)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+        final CameraConfiguration cameraConfiguration;
+        try {
+            cameraConfiguration = CameraConfigurationProvider.read();
+        } catch (IOException e) {
+            LOG.error("Camera configuration is incorrect; keeping the running cameras", e);
+            return;
+        }
+        try {
+            cameraWatcher.reconfigure(cameraConfiguration);
+        } catch (RuntimeException e) {
+            LOG.error("Could not apply camera configuration", e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+/**
+ * State of a camera's pipeline as seen by its {@link CameraSupervisor}.
+ */
+public enum CameraHealth {
+    /**
+     * Connecting to the camera.
+     */
+    CONNECTING,
+    /**
+     * The camera stream is open and being processed.
+     */
+    STREAMING,
+    /**
+     * The stream failed or ended; waiting before reconnecting.
+     */
+    BACKING_OFF,
+    /**
+     * Not supervised.
+     */
+    STOPPED
+}
@@ -0,0 +1,162 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import com.alexhilman.cameradashboard.ui.driver.MotionProcessor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps one camera's pipeline running. When the stream fails or ends, the camera is reconnected after an exponentially
+ * growing delay, which resets once a stream has stayed up for a while. Waiting for a reconnect holds no thread.
+ */
+@ThreadSafe
+class CameraSupervisor {
+    private static final Logger LOG = LogManager.getLogger(CameraSupervisor.class);
+    static final long INITIAL_BACKOFF_MILLIS = 1_000;
+    static final long MAX_BACKOFF_MILLIS = 60_000;
+    static final long STABLE_STREAM_MILLIS = 30_000;
+
+    private final Camera camera;
+    private final Supplier<MotionProcessor> motionProcessors;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile MotionProcessor motionProcessor;
+    private volatile CameraHealth health = CameraHealth.STOPPED;
+    @GuardedBy("this")
+    private ScheduledFuture<?> nextAttempt;
+    @GuardedBy("this")
+    private long backoffMillis = INITIAL_BACKOFF_MILLIS;
+    @GuardedBy("this")
+    private int consecutiveFailures;
+
+    CameraSupervisor(final Camera camera,
+                     final Supplier<MotionProcessor> motionProcessors,
+                     final ScheduledExecutorService scheduler) {
+        this.camera = checkNotNull(camera, "camera cannot be null");
+        this.motionProcessors = checkNotNull(motionProcessors, "motionProcessors cannot be null");
+        this.scheduler = checkNotNull(scheduler, "scheduler cannot be null");
+    }
+
+    /**
+     * Starts the pipeline with a fresh processor, unless it is running already.
+     */
+    synchronized void start() {
+        if (motionProcessor != null) {
+            return;
+        }
+        final MotionProcessor processor = motionProcessors.get();
+        motionProcessor = processor;
+        backoffMillis = INITIAL_BACKOFF_MILLIS;
+        consecutiveFailures = 0;
+        schedule(processor, 0);
+    }
+
+    /**
+     * Stops the pipeline: a pending reconnect is cancelled and the current stream is closed.
+     */
+    synchronized void stop() {
+        final MotionProcessor processor = motionProcessor;
+        if (processor == null) {
+            return;
+        }
+        motionProcessor = null;
+        health = CameraHealth.STOPPED;
+        if (nextAttempt != null) {
+            nextAttempt.cancel(false);
+            nextAttempt = null;
+        }
+        processor.stop();
+        LOG.info("Stopped camera {}", camera.getName());
+    }
+
+    synchronized void restart() {
+        stop();
+        start();
+    }
+
+    CameraHealth getHealth() {
+        final CameraHealth health = this.health;
+        final MotionProcessor processor = motionProcessor;
+        if (health == CameraHealth.CONNECTING && processor != null && processor.isStreaming()) {
+            return CameraHealth.STREAMING;
+        }
+        return health;
+    }
+
+    synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * The current processor of the camera.
+     *
+     * @return Processor, or null if stopped
+     */
+    MotionProcessor getMotionProcessor() {
+        return motionProcessor;
+    }
+
+    Camera getCamera() {
+        return camera;
+    }
+
+    @GuardedBy("this")
+    private void schedule(final MotionProcessor processor, final long delayMillis) {
+        try {
+            nextAttempt = scheduler.schedule(() -> attempt(processor), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.info("Not reconnecting camera {}; shutting down", camera.getName());
+            motionProcessor = null;
+            health = CameraHealth.STOPPED;
+        }
+    }
+
+    private void attempt(final MotionProcessor processor) {
+        if (processor != motionProcessor) {
+            return;
+        }
+        health = CameraHealth.CONNECTING;
+
+        final long started = System.currentTimeMillis();
+        Exception failure = null;
+        try {
+            processor.processStream();
+        } catch (Exception e) {
+            failure = e;
+        }
+        final long streamedMillis = System.currentTimeMillis() - started;
+
+        synchronized (this) {
+            if (processor != motionProcessor) {
+                return;
+            }
+            if (streamedMillis >= STABLE_STREAM_MILLIS) {
+                backoffMillis = INITIAL_BACKOFF_MILLIS;
+                consecutiveFailures = 0;
+            }
+            consecutiveFailures++;
+            if (failure != null) {
+                LOG.error("Encountered error while processing video stream of camera {}; reconnecting in {}ms",
+                          camera.getName(),
+                          backoffMillis,
+                          failure);
+            } else {
+                LOG.warn("Video stream of camera {} ended; reconnecting in {}ms", camera.getName(), backoffMillis);
+            }
+
+            health = CameraHealth.BACKING_OFF;
+            schedule(processor, backoffMillis);
+            backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+}
@@ -2,33 +2,62 @@ package com.alexhilman.cameradashboard.ui.video;
 
 import com.alexhilman.cameradashboard.ui.conf.Camera;
 import com.alexhilman.cameradashboard.ui.conf.CameraConfiguration;
+import com.alexhilman.cameradashboard.ui.driver.AdaptiveSampler;
+import com.alexhilman.cameradashboard.ui.driver.BackpressurePolicy;
 import com.alexhilman.cameradashboard.ui.driver.MotionProcessor;
-import com.google.common.collect.Lists;
+import com.alexhilman.cameradashboard.ui.driver.ObservableInputStream;
+import com.alexhilman.cameradashboard.ui.driver.RecordingMode;
+import com.alexhilman.cameradashboard.ui.driver.SamplingMetrics;
+import com.alexhilman.cameradashboard.ui.driver.StageMetrics;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.InputStream;
+import javax.inject.Named;
+import java.io.File;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.toList;
 
 /**
  */
 @Singleton
 public class CameraWatcher {
     private static final Logger LOG = LogManager.getLogger(CameraWatcher.class);
+    public static final long DEFAULT_SEGMENT_SECONDS = 60;
 
-    private final CameraConfiguration cameraConfiguration;
+    private volatile CameraConfiguration cameraConfiguration;
     private final MovieFileManager movieFileManager;
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
-    private final ConcurrentMap<Camera, MotionProcessor> streamingDriversByCamera = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Camera, CameraSupervisor> supervisorsByCamera = new ConcurrentHashMap<>();
+    private final List<MotionProcessor.FrameListener> frameListeners = new CopyOnWriteArrayList<>();
+    private final Subject<Movie> newMovies = PublishSubject.<Movie>create().toSerialized();
+    private volatile ScheduledThreadPoolExecutor scheduler;
+    private volatile ExecutorService stageExecutor;
     private volatile boolean running;
+    private volatile BackpressurePolicy observerPolicy = BackpressurePolicy.SKIP_TO_KEYFRAME;
+    private volatile long observerLagThreshold = ObservableInputStream.DEFAULT_BUFFER_SIZE / 2;
+    private volatile RecordingMode recordingMode = RecordingMode.REENCODE;
+    private volatile int analysisWidth = MotionProcessor.DEFAULT_ANALYSIS_WIDTH;
+    private volatile int analysisHeight = MotionProcessor.DEFAULT_ANALYSIS_HEIGHT;
+    private volatile double quietSamplesPerSecond = AdaptiveSampler.DEFAULT_QUIET_SAMPLES_PER_SECOND;
+    private volatile double cpuBudget = AdaptiveSampler.DEFAULT_CPU_BUDGET;
+    private volatile boolean continuousRecording;
+    private volatile long segmentSeconds = DEFAULT_SEGMENT_SECONDS;
 
     @Inject
     public CameraWatcher(final CameraConfiguration cameraConfiguration,
@@ -37,45 +66,279 @@ public class CameraWatcher {
         this.movieFileManager = movieFileManager;
     }
 
+    @Inject(optional = true)
+    void setObserverPolicy(@Named("cameradashboard.stream.observer.policy") final BackpressurePolicy observerPolicy) {
+        this.observerPolicy = checkNotNull(observerPolicy, "observerPolicy cannot be null");
+    }
+
+    @Inject(optional = true)
+    void setObserverLagThreshold(@Named("cameradashboard.stream.observer.lagThresholdBytes") final long observerLagThreshold) {
+        this.observerLagThreshold = observerLagThreshold;
+    }
+
+    @Inject(optional = true)
+    void setRecordingMode(@Named("cameradashboard.recording.mode") final RecordingMode recordingMode) {
+        this.recordingMode = checkNotNull(recordingMode, "recordingMode cannot be null");
+    }
+
+    @Inject(optional = true)
+    void setAnalysisWidth(@Named("cameradashboard.motion.analysis.width") final int analysisWidth) {
+        this.analysisWidth = analysisWidth;
+    }
+
+    @Inject(optional = true)
+    void setAnalysisHeight(@Named("cameradashboard.motion.analysis.height") final int analysisHeight) {
+        this.analysisHeight = analysisHeight;
+    }
+
+    @Inject(optional = true)
+    void setQuietSamplesPerSecond(@Named("cameradashboard.motion.quietSamplesPerSecond") final double quietSamplesPerSecond) {
+        this.quietSamplesPerSecond = quietSamplesPerSecond;
+    }
+
+    @Inject(optional = true)
+    void setCpuBudget(@Named("cameradashboard.motion.cpuBudget") final double cpuBudget) {
+        this.cpuBudget = cpuBudget;
+    }
+
+    @Inject(optional = true)
+    void setContinuousRecording(@Named("cameradashboard.recording.continuous") final boolean continuousRecording) {
+        this.continuousRecording = continuousRecording;
+    }
+
+    @Inject(optional = true)
+    void setSegmentSeconds(@Named("cameradashboard.recording.segmentSeconds") final long segmentSeconds) {
+        this.segmentSeconds = segmentSeconds;
+    }
+
     public void start() {
         boolean running = this.running;
         if (!running) {
             synchronized (this) {
                 running = this.running;
                 if (!running) {
-                    getCameras().forEach(camera -> {
-                        executorService.submit(() -> {
-                            final MotionProcessor motionProcessor =
-                                    new MotionProcessor(camera, movieFileManager.getTempFolderForCamera(camera))
-                                            .onMotionCaptured((c, motionFile) -> {
-                                                movieFileManager.addMoviesToRotatingPool(c,
-                                                                                         Lists.newArrayList(motionFile));
-                                            });
-                            streamingDriversByCamera.put(camera, motionProcessor);
-
-                            final Thread currentThread = Thread.currentThread();
-                            while (!currentThread.isInterrupted()) {
-                                try {
-                                    motionProcessor.processStream();
-                                } catch (Exception e) {
-                                    LOG.error("Encountered error while processing camera video stream", e);
-                                }
-                            }
-                        });
-                    });
+                    final List<Camera> cameras = getCameras();
+                    scheduler = new ScheduledThreadPoolExecutor(Math.max(1, cameras.size()),
+                                                                new ThreadFactoryBuilder().setNameFormat("camera-%d")
+                                                                                          .setDaemon(true)
+                                                                                          .build());
+                    stageExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                                                 new ThreadFactoryBuilder().setNameFormat("camera-stage-%d")
+                                                                                           .setDaemon(true)
+                                                                                           .build());
+                    cameras.forEach(this::startWatching);
                     running = this.running = true;
                 }
             }
         }
     }
 
+    /**
+     * Stops all camera pipelines.
+     */
+    public synchronized void stop() {
+        if (running) {
+            supervisorsByCamera.values().forEach(CameraSupervisor::stop);
+            supervisorsByCamera.clear();
+            scheduler.shutdownNow();
+            stageExecutor.shutdown();
+            running = false;
+        }
+    }
+
+    /**
+     * Applies a new camera configuration: removed cameras are stopped and new ones started. A camera whose settings
+     * changed is restarted; the pipelines of unchanged cameras keep running.
+     *
+     * @param cameraConfiguration New configuration
+     */
+    public synchronized void reconfigure(final CameraConfiguration cameraConfiguration) {
+        checkNotNull(cameraConfiguration, "cameraConfiguration cannot be null");
+        final CameraConfiguration previous = this.cameraConfiguration;
+        final List<Camera> removed = previous.camerasNotIn(cameraConfiguration);
+        final List<Camera> added = cameraConfiguration.camerasNotIn(previous);
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        LOG.info("Camera configuration changed; stopping {}, starting {}", namesOf(removed), namesOf(added));
+
+        this.cameraConfiguration = cameraConfiguration;
+        movieFileManager.setCameraConfiguration(cameraConfiguration);
+        if (!running) {
+            return;
+        }
+        removed.forEach(camera -> Optional.ofNullable(supervisorsByCamera.remove(camera))
+                                          .ifPresent(CameraSupervisor::stop));
+        // every streaming camera holds a scheduler thread
+        scheduler.setCorePoolSize(Math.max(1, cameraConfiguration.getCameras().size()));
+        added.forEach(this::startWatching);
+    }
+
+    /**
+     * Stops a camera's pipeline until it is restarted.
+     *
+     * @param camera Camera to stop
+     */
+    public void stop(final Camera camera) {
+        supervisorOf(camera).stop();
+    }
+
+    /**
+     * Restarts a camera's pipeline with a new connection.
+     *
+     * @param camera Camera to restart
+     */
+    public void restart(final Camera camera) {
+        supervisorOf(camera).restart();
+    }
+
+    public CameraHealth getHealth(final Camera camera) {
+        return Optional.ofNullable(supervisorsByCamera.get(camera))
+                       .map(CameraSupervisor::getHealth)
+                       .orElse(CameraHealth.STOPPED);
+    }
+
     public List<Camera> getCameras() {
         return cameraConfiguration.getCameras();
     }
 
-    public InputStream observe(final Camera camera) {
+    /**
+     * Observes the bytes of a camera's recording stream. The observer never slows down the recording; it follows the
+     * configured {@link BackpressurePolicy} when it falls behind.
+     *
+     * @param camera Camera to observe
+     * @return Observer of the camera stream, with its lag and drop counters
+     */
+    public ObservableInputStream.Observer observe(final Camera camera) {
         LOG.info("Observing {}", camera.getName());
 
-        return streamingDriversByCamera.get(camera).observeStream();
+        final MotionProcessor motionProcessor = supervisorOf(camera).getMotionProcessor();
+        if (motionProcessor == null) {
+            throw new RuntimeException("Camera " + camera.getName() + " is stopped");
+        }
+        return motionProcessor.observeStream(observerPolicy, observerLagThreshold);
+    }
+
+    /**
+     * Movies captured from now on, once they are in the rotating pool and their posters are generated. Observers are
+     * called on the movie finalizing and poster threads and must hand their work off.
+     *
+     * @return New movies of every camera
+     */
+    public Observable<Movie> observeNewMovies() {
+        return newMovies;
+    }
+
+    /**
+     * Listens to the frames decoded from every camera, including cameras started later.
+     *
+     * @param frameListener Listener, called on pipeline threads; it must not block
+     */
+    public void addFrameListener(final MotionProcessor.FrameListener frameListener) {
+        frameListeners.add(checkNotNull(frameListener, "frameListener cannot be null"));
+    }
+
+    public void removeFrameListener(final MotionProcessor.FrameListener frameListener) {
+        frameListeners.remove(frameListener);
+    }
+
+    /**
+     * Content type of a camera's recording stream, as reported by the camera.
+     *
+     * @param camera Camera
+     * @return Content type, or empty if the camera is not streaming yet or did not report one
+     */
+    public Optional<String> getStreamContentType(final Camera camera) {
+        return Optional.ofNullable(supervisorsByCamera.get(camera))
+                       .map(CameraSupervisor::getMotionProcessor)
+                       .map(MotionProcessor::getStreamContentType);
+    }
+
+    /**
+     * Current motion sampling rate and cost of a camera.
+     *
+     * @param camera Camera
+     * @return Metrics, or empty if the camera is not streaming yet
+     */
+    public Optional<SamplingMetrics> getSamplingMetrics(final Camera camera) {
+        return Optional.ofNullable(supervisorsByCamera.get(camera))
+                       .map(CameraSupervisor::getMotionProcessor)
+                       .flatMap(MotionProcessor::getSamplingMetrics);
+    }
+
+    /**
+     * Queue depth and throughput of each pipeline stage of a camera.
+     *
+     * @param camera Camera
+     * @return Metrics in pipeline order, or empty if the camera is not streaming yet
+     */
+    public List<StageMetrics> getStageMetrics(final Camera camera) {
+        return Optional.ofNullable(supervisorsByCamera.get(camera))
+                       .map(CameraSupervisor::getMotionProcessor)
+                       .map(MotionProcessor::getStageMetrics)
+                       .orElse(Collections.emptyList());
+    }
+
+    private static List<String> namesOf(final List<Camera> cameras) {
+        return cameras.stream().map(Camera::getName).collect(toList());
+    }
+
+    private void startWatching(final Camera camera) {
+        final CameraSupervisor supervisor = newSupervisor(camera);
+        supervisorsByCamera.put(camera, supervisor);
+        supervisor.start();
+    }
+
+    CameraSupervisor newSupervisor(final Camera camera) {
+        return new CameraSupervisor(camera, () -> newMotionProcessor(camera), scheduler);
+    }
+
+    ScheduledThreadPoolExecutor getScheduler() {
+        return scheduler;
+    }
+
+    private MotionProcessor newMotionProcessor(final Camera camera) {
+        final MotionProcessor motionProcessor =
+                new MotionProcessor(camera, movieFileManager.getTempFolderForCamera(camera));
+        if (continuousRecording) {
+            motionProcessor.withContinuousRecording(TimeUnit.SECONDS.toMillis(segmentSeconds))
+                           .onSegmentRecorded(movieFileManager::addContinuousSegment);
+        }
+        return motionProcessor
+                .withRecordingMode(recordingMode)
+                .withAnalysisSize(analysisWidth, analysisHeight)
+                .withSampling(quietSamplesPerSecond, cpuBudget)
+                .withStageExecutor(stageExecutor)
+                .onFrameDecoded((c, image) -> frameListeners.forEach(l -> l.frameDecoded(c, image)))
+                .onMotionCaptured(this::motionCaptured);
+    }
+
+    /**
+     * Stores a captured clip in the background, off the camera's recording thread. It is announced to the observers of
+     * new movies once it is in the rotating pool and its poster exists, so views show the real poster rather than a
+     * placeholder; a clip whose poster cannot be generated is announced all the same.
+     */
+    void motionCaptured(final Camera camera, final File motionFile) {
+        movieFileManager.addMotionClipToRotatingPool(camera, motionFile)
+                        .thenCompose(movie -> movieFileManager.generatePosterFor(movie)
+                                                              .handle((poster, e) -> movie))
+                        .whenComplete((movie, e) -> {
+                            if (e != null) {
+                                LOG.error("Could not store motion clip {} of {}",
+                                          motionFile.getAbsolutePath(),
+                                          camera.getName(),
+                                          e);
+                                return;
+                            }
+                            newMovies.onNext(movie);
+                        });
+    }
+
+    private CameraSupervisor supervisorOf(final Camera camera) {
+        final CameraSupervisor supervisor = supervisorsByCamera.get(camera);
+        if (supervisor == null) {
+            throw new IllegalArgumentException("Camera " + camera.getName() + " is not watched");
+        }
+        return supervisor;
     }
 }
@@ -0,0 +1,46 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Outcome of evicting a batch of recordings.
+ */
+@Immutable
+public class Eviction {
+    private final int evicted;
+    private final int failed;
+
+    public Eviction(final int evicted, final int failed) {
+        this.evicted = evicted;
+        this.failed = failed;
+    }
+
+    /**
+     * @return Number of recordings deleted
+     */
+    public int getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * @return Number of recordings which could not be deleted; they are dropped from the catalog all the same
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return True if there were no recordings left to evict
+     */
+    public boolean isEmpty() {
+        return evicted == 0 && failed == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Eviction{" +
+                "evicted=" + evicted +
+                ", failed=" + failed +
+                '}';
+    }
+}
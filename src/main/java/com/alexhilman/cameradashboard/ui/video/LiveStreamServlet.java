@@ -0,0 +1,112 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the live view of a camera as an MJPEG stream ({@code multipart/x-mixed-replace}), which browsers play in an
+ * {@code <img>}:
+ * <pre>
+ * {@code
+ * /live/<camera name>?fps=<frames per second>&width=<pixels>
+ * }
+ * </pre>
+ * The frames come from the application's {@link LiveStreams}, which is looked up in the servlet context under
+ * {@link #LIVE_STREAMS_ATTRIBUTE}.
+ */
+public class LiveStreamServlet extends HttpServlet {
+    private static final Logger LOG = LogManager.getLogger(LiveStreamServlet.class);
+    public static final String LIVE_STREAMS_ATTRIBUTE = LiveStreams.class.getName();
+    public static final double DEFAULT_FRAMES_PER_SECOND = 5;
+    public static final int DEFAULT_WIDTH = 640;
+    private static final String BOUNDARY = "frame";
+    private static final long KEEPALIVE_SECONDS = 10;
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final LiveStreams liveStreams = (LiveStreams) getServletContext().getAttribute(LIVE_STREAMS_ATTRIBUTE);
+        if (liveStreams == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        final String pathInfo = request.getPathInfo();
+        final Optional<Camera> camera = pathInfo == null ? Optional.empty() : liveStreams.findCamera(pathInfo.substring(1));
+        if (!camera.isPresent()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final double framesPerSecond;
+        final int width;
+        try {
+            framesPerSecond = doubleParameter(request, "fps", DEFAULT_FRAMES_PER_SECOND);
+            width = intParameter(request, "width", DEFAULT_WIDTH);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "fps and width must be numbers");
+            return;
+        }
+        if (!(framesPerSecond > 0) || width <= 0) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "fps and width must be positive");
+            return;
+        }
+
+        response.setContentType("multipart/x-mixed-replace; boundary=" + BOUNDARY);
+        response.setHeader("Cache-Control", "no-cache, no-store");
+
+        LOG.debug("Streaming {} to {}", camera.get().getName(), request.getRemoteAddr());
+        try (final LiveStreams.Subscription subscription =
+                     liveStreams.subscribe(camera.get(), framesPerSecond, width)) {
+            final ServletOutputStream output = response.getOutputStream();
+            byte[] lastFrame = null;
+            while (true) {
+                byte[] frame = subscription.awaitFrame(KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+                if (frame == null) {
+                    if (!liveStreams.findCamera(camera.get().getName()).isPresent()) {
+                        return;
+                    }
+                    // repeating the last frame finds out whether the viewer is still there
+                    frame = lastFrame;
+                    if (frame == null) {
+                        continue;
+                    }
+                }
+                writePart(output, frame);
+                lastFrame = frame;
+            }
+        } catch (IOException e) {
+            LOG.debug("Viewer {} of {} went away", request.getRemoteAddr(), camera.get().getName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writePart(final ServletOutputStream output, final byte[] jpeg) throws IOException {
+        output.write(("--" + BOUNDARY + "\r\n" +
+                "Content-Type: image/jpeg\r\n" +
+                "Content-Length: " + jpeg.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        output.write(jpeg);
+        output.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+    }
+
+    private static double doubleParameter(final HttpServletRequest request, final String name, final double defaultValue) {
+        final String value = request.getParameter(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static int intParameter(final HttpServletRequest request, final String name, final int defaultValue) {
+        final String value = request.getParameter(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
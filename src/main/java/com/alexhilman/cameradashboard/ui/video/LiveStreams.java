@@ -0,0 +1,415 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import com.alexhilman.cameradashboard.ui.driver.MotionProcessor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.javacpp.opencv_core.cvCopy;
+import static org.bytedeco.javacpp.opencv_imgproc.CV_INTER_AREA;
+import static org.bytedeco.javacpp.opencv_imgproc.cvResize;
+
+/**
+ * Live JPEG frames of the cameras, downsampled to the frame rate and width each viewer asks for. Viewers asking for
+ * the same camera, frame rate and width share one stream, so every frame is scaled and encoded once no matter how
+ * many of them there are. Frames are taken from those the cameras' pipelines decode anyway; nothing is decoded for
+ * live viewing. The pipeline thread only copies a frame that some stream is due for; scaling and encoding happen on
+ * the encoder threads.
+ */
+@Singleton
+@ThreadSafe
+public class LiveStreams {
+    private static final Logger LOG = LogManager.getLogger(LiveStreams.class);
+    public static final double MAX_FRAMES_PER_SECOND = 30;
+    public static final int MIN_WIDTH = 64;
+    public static final int MAX_WIDTH = 1920;
+
+    private final CameraWatcher cameraWatcher;
+    private final ConcurrentMap<StreamKey, LiveStream> streams = new ConcurrentHashMap<>();
+    private final MotionProcessor.FrameListener frameListener = this::frameDecoded;
+    private final ConcurrentMap<String, opencv_core.IplImage> spareSourcesByCamera = new ConcurrentHashMap<>();
+    private volatile ExecutorService encoder;
+
+    @Inject
+    public LiveStreams(final CameraWatcher cameraWatcher) {
+        this.cameraWatcher = checkNotNull(cameraWatcher, "cameraWatcher cannot be null");
+    }
+
+    public synchronized void start() {
+        if (encoder != null) {
+            return;
+        }
+        encoder = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                                               new ThreadFactoryBuilder().setNameFormat("live-encoder-%d")
+                                                                         .setDaemon(true)
+                                                                         .build());
+        cameraWatcher.addFrameListener(frameListener);
+    }
+
+    public synchronized void stop() {
+        if (encoder != null) {
+            cameraWatcher.removeFrameListener(frameListener);
+            encoder.shutdownNow();
+            encoder = null;
+            spareSourcesByCamera.values().forEach(opencv_core.IplImage::close);
+            spareSourcesByCamera.clear();
+        }
+    }
+
+    public Optional<Camera> findCamera(final String cameraName) {
+        return cameraWatcher.getCameras()
+                            .stream()
+                            .filter(c -> c.getName().equals(cameraName))
+                            .findFirst();
+    }
+
+    /**
+     * Subscribes to the live frames of a camera. The frame rate and width are clamped to what is supported, and the
+     * width never exceeds that of the decoded frames.
+     *
+     * @param camera          Camera to watch
+     * @param framesPerSecond Highest number of frames per second to receive
+     * @param width           Width to scale the frames to, keeping their aspect ratio
+     * @return Subscription, which must be closed once the viewer is gone
+     */
+    public Subscription subscribe(final Camera camera, final double framesPerSecond, final int width) {
+        checkNotNull(camera, "camera cannot be null");
+        checkArgument(framesPerSecond > 0, "framesPerSecond must be positive");
+        checkArgument(width > 0, "width must be positive");
+
+        final StreamKey key = new StreamKey(camera.getName(),
+                                            Math.min(framesPerSecond, MAX_FRAMES_PER_SECOND),
+                                            Math.max(MIN_WIDTH, Math.min(width, MAX_WIDTH)));
+        while (true) {
+            final LiveStream stream = streams.computeIfAbsent(key, LiveStream::new);
+            if (stream.subscribe()) {
+                return new Subscription(stream);
+            }
+            // its last viewer left while we were looking it up; it has to be replaced
+            streams.remove(key, stream);
+        }
+    }
+
+    int getStreamCount() {
+        return streams.size();
+    }
+
+    /**
+     * Hands a frame to the camera's streams which are due for one. The pipeline reuses the image once this returns, so
+     * it is copied once for all of them.
+     */
+    void frameDecoded(final Camera camera, final opencv_core.IplImage image) {
+        final long now = System.nanoTime();
+        List<LiveStream> due = null;
+        for (final LiveStream stream : streams.values()) {
+            if (stream.key.cameraName.equals(camera.getName()) && stream.startFrame(now)) {
+                if (due == null) {
+                    due = new ArrayList<>();
+                }
+                due.add(stream);
+            }
+        }
+        if (due == null) {
+            return;
+        }
+
+        final SourceFrame source;
+        try {
+            source = new SourceFrame(camera.getName(), copyOf(camera.getName(), image), due.size());
+        } catch (RuntimeException e) {
+            LOG.warn("Could not copy live frame of camera {}", camera.getName(), e);
+            due.forEach(stream -> stream.finishEncoding(null));
+            return;
+        }
+        due.forEach(stream -> stream.encodeLater(source));
+    }
+
+    private opencv_core.IplImage copyOf(final String cameraName, final opencv_core.IplImage image) {
+        opencv_core.IplImage copy = spareSourcesByCamera.remove(cameraName);
+        if (copy != null && (copy.width() != image.width() ||
+                copy.height() != image.height() ||
+                copy.nChannels() != image.nChannels())) {
+            copy.close();
+            copy = null;
+        }
+        if (copy == null) {
+            copy = opencv_core.IplImage.create(image.width(), image.height(), IPL_DEPTH_8U, image.nChannels());
+        }
+        cvCopy(image, copy);
+        return copy;
+    }
+
+    private synchronized void recycle(final String cameraName, final opencv_core.IplImage copy) {
+        if (encoder == null || spareSourcesByCamera.putIfAbsent(cameraName, copy) != null) {
+            copy.close();
+        }
+    }
+
+    /**
+     * A viewer of a live stream.
+     */
+    public static class Subscription implements AutoCloseable {
+        private final LiveStream stream;
+        private long lastSequence;
+        private boolean closed;
+
+        private Subscription(final LiveStream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Waits for a frame newer than the last one returned.
+         *
+         * @param timeout Longest time to wait
+         * @param unit    Unit of the timeout
+         * @return JPEG image, or null if no new frame arrived in time
+         * @throws InterruptedException If interrupted while waiting
+         */
+        public byte[] awaitFrame(final long timeout, final TimeUnit unit) throws InterruptedException {
+            final EncodedFrame frame = stream.awaitFrame(lastSequence, unit.toMillis(timeout));
+            if (frame == null) {
+                return null;
+            }
+            lastSequence = frame.sequence;
+            return frame.jpeg;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                stream.unsubscribe();
+            }
+        }
+    }
+
+    /**
+     * A copy of a decoded frame, shared by the streams which scale it and recycled once all of them have.
+     */
+    private class SourceFrame {
+        private final String cameraName;
+        private final opencv_core.IplImage image;
+        private final AtomicInteger users;
+
+        private SourceFrame(final String cameraName, final opencv_core.IplImage image, final int users) {
+            this.cameraName = cameraName;
+            this.image = image;
+            this.users = new AtomicInteger(users);
+        }
+
+        private void release() {
+            if (users.decrementAndGet() == 0) {
+                recycle(cameraName, image);
+            }
+        }
+    }
+
+    /**
+     * Frames of one camera at one frame rate and width. Only one frame is scaled and encoded at a time; frames arriving
+     * meanwhile are skipped.
+     */
+    private class LiveStream {
+        private final StreamKey key;
+        private final long intervalNanos;
+        @GuardedBy("this")
+        private int subscribers;
+        @GuardedBy("this")
+        private boolean closed;
+        @GuardedBy("this")
+        private boolean encoding;
+        @GuardedBy("this")
+        private long nextFrameNanos = System.nanoTime();
+        @GuardedBy("this")
+        private EncodedFrame latest;
+        // only touched while encoding
+        private opencv_core.IplImage scaled;
+        private OpenCVFrameConverter.ToIplImage frameConverter;
+        private Java2DFrameConverter imageConverter;
+
+        private LiveStream(final StreamKey key) {
+            this.key = key;
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / key.framesPerSecond);
+        }
+
+        private synchronized boolean subscribe() {
+            if (closed) {
+                return false;
+            }
+            subscribers++;
+            return true;
+        }
+
+        private synchronized void unsubscribe() {
+            if (--subscribers > 0) {
+                return;
+            }
+            closed = true;
+            streams.remove(key, this);
+            if (!encoding) {
+                releaseScaled();
+            }
+            notifyAll();
+        }
+
+        /**
+         * Claims the next frame if the stream is due for one and no frame is being encoded.
+         *
+         * @return True if the caller must pass a frame to {@link #encodeLater(SourceFrame)}
+         */
+        private synchronized boolean startFrame(final long now) {
+            if (closed || encoding || now - nextFrameNanos < 0) {
+                return false;
+            }
+            encoding = true;
+            nextFrameNanos = now + intervalNanos;
+            return true;
+        }
+
+        private void encodeLater(final SourceFrame source) {
+            final ExecutorService encoder = LiveStreams.this.encoder;
+            try {
+                if (encoder == null) {
+                    throw new RejectedExecutionException("Live streams are stopped");
+                }
+                encoder.execute(() -> encode(source));
+            } catch (RejectedExecutionException e) {
+                source.release();
+                finishEncoding(null);
+            }
+        }
+
+        private void scale(final opencv_core.IplImage image) {
+            final int width = Math.min(key.width, image.width());
+            final int height = Math.max(2, (int) Math.round((double) image.height() * width / image.width()) & ~1);
+            if (scaled == null ||
+                    scaled.width() != width ||
+                    scaled.height() != height ||
+                    scaled.nChannels() != image.nChannels()) {
+                releaseScaled();
+                scaled = opencv_core.IplImage.create(width, height, IPL_DEPTH_8U, image.nChannels());
+            }
+            if (width == image.width() && height == image.height()) {
+                cvCopy(image, scaled);
+            } else {
+                cvResize(image, scaled, CV_INTER_AREA);
+            }
+        }
+
+        private void encode(final SourceFrame source) {
+            byte[] jpeg = null;
+            try {
+                try {
+                    scale(source.image);
+                } finally {
+                    source.release();
+                }
+                if (frameConverter == null) {
+                    frameConverter = new OpenCVFrameConverter.ToIplImage();
+                    imageConverter = new Java2DFrameConverter();
+                }
+                final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                ImageIO.write(imageConverter.convert(frameConverter.convert(scaled)), "jpg", output);
+                jpeg = output.toByteArray();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Could not encode live frame of camera {}", key.cameraName, e);
+            }
+            finishEncoding(jpeg);
+        }
+
+        private synchronized void finishEncoding(final byte[] jpeg) {
+            encoding = false;
+            if (jpeg != null) {
+                latest = new EncodedFrame(latest == null ? 1 : latest.sequence + 1, jpeg);
+                notifyAll();
+            }
+            if (closed) {
+                releaseScaled();
+            }
+        }
+
+        private synchronized EncodedFrame awaitFrame(final long afterSequence, final long timeoutMillis)
+                throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining = timeoutMillis;
+            while (!closed && (latest == null || latest.sequence <= afterSequence) && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return latest != null && latest.sequence > afterSequence ? latest : null;
+        }
+
+        private void releaseScaled() {
+            if (scaled != null) {
+                scaled.close();
+                scaled = null;
+            }
+        }
+    }
+
+    private static class EncodedFrame {
+        private final long sequence;
+        private final byte[] jpeg;
+
+        private EncodedFrame(final long sequence, final byte[] jpeg) {
+            this.sequence = sequence;
+            this.jpeg = jpeg;
+        }
+    }
+
+    private static class StreamKey {
+        private final String cameraName;
+        private final double framesPerSecond;
+        private final int width;
+
+        private StreamKey(final String cameraName, final double framesPerSecond, final int width) {
+            this.cameraName = cameraName;
+            this.framesPerSecond = framesPerSecond;
+            this.width = width;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final StreamKey streamKey = (StreamKey) o;
+
+            if (Double.compare(streamKey.framesPerSecond, framesPerSecond) != 0) return false;
+            if (width != streamKey.width) return false;
+            return cameraName.equals(streamKey.cameraName);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = cameraName.hashCode();
+            result = 31 * result + Double.hashCode(framesPerSecond);
+            result = 31 * result + width;
+            return result;
+        }
+    }
+}
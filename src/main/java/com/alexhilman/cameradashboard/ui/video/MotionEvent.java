@@ -0,0 +1,78 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.File;
+import java.time.Instant;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Motion detected during continuous recording: a pointer into the segment which holds it.
+ */
+@Immutable
+public class MotionEvent {
+    private final File segmentFile;
+    private final Instant start;
+    private final long offsetMillis;
+    private final long durationMillis;
+
+    public MotionEvent(final File segmentFile, final Instant start, final long offsetMillis, final long durationMillis) {
+        this.segmentFile = checkNotNull(segmentFile, "segmentFile cannot be null");
+        this.start = checkNotNull(start, "start cannot be null");
+        this.offsetMillis = offsetMillis;
+        this.durationMillis = durationMillis;
+    }
+
+    public File getSegmentFile() {
+        return segmentFile;
+    }
+
+    public Instant getStart() {
+        return start;
+    }
+
+    /**
+     * Where the motion starts within the segment.
+     *
+     * @return Milliseconds from the start of the segment
+     */
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final MotionEvent that = (MotionEvent) o;
+
+        if (offsetMillis != that.offsetMillis) return false;
+        if (durationMillis != that.durationMillis) return false;
+        if (!segmentFile.equals(that.segmentFile)) return false;
+        return start.equals(that.start);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = segmentFile.hashCode();
+        result = 31 * result + start.hashCode();
+        result = 31 * result + Long.hashCode(offsetMillis);
+        result = 31 * result + Long.hashCode(durationMillis);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MotionEvent{" +
+                "segmentFile=" + segmentFile +
+                ", start=" + start +
+                ", offsetMillis=" + offsetMillis +
+                ", durationMillis=" + durationMillis +
+                '}';
+    }
+}
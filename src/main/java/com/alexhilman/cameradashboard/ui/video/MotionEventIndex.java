@@ -0,0 +1,201 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.driver.MotionInterval;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static com.alexhilman.cameradashboard.ui.video.MovieFileManager.STORAGE_FILE_DATET_TIME_FORMAT;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Index of the motion detected during continuous recording. Only segments with motion have an entry, which lists the
+ * offsets and durations of the motion within the segment. Each camera has an index file, one segment per line:
+ * <pre>
+ * {@code
+ * 2017-01-01 00:00:00.000.mp4	1200:3400,51000:9000
+ * }
+ * </pre>
+ * Index files are loaded on first use and appended to as segments are recorded.
+ */
+@ThreadSafe
+class MotionEventIndex {
+    private static final String INDEX_FILE_EXTENSION = ".idx";
+
+    private final File indexDirectory;
+    private final ConcurrentMap<String, NavigableMap<String, List<MotionInterval>>> motionBySegmentByCamera =
+            new ConcurrentHashMap<>();
+
+    MotionEventIndex(final File indexDirectory) {
+        this.indexDirectory = checkNotNull(indexDirectory, "indexDirectory cannot be null");
+    }
+
+    void record(final String cameraName, final String segmentName, final List<MotionInterval> motion) {
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(segmentName, "segmentName cannot be null");
+        checkNotNull(motion, "motion cannot be null");
+        if (motion.isEmpty()) {
+            return;
+        }
+
+        final NavigableMap<String, List<MotionInterval>> motionBySegment = motionBySegmentFor(cameraName);
+        synchronized (motionBySegment) {
+            motionBySegment.put(segmentName, motion);
+            append(indexFileFor(cameraName), lineFor(segmentName, motion));
+        }
+    }
+
+    /**
+     * Drops the entries of deleted segments.
+     *
+     * @param cameraName   Camera which recorded the segments
+     * @param segmentNames Segment file names
+     */
+    void removeAll(final String cameraName, final Collection<String> segmentNames) {
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(segmentNames, "segmentNames cannot be null");
+
+        final NavigableMap<String, List<MotionInterval>> motionBySegment = motionBySegmentFor(cameraName);
+        synchronized (motionBySegment) {
+            if (motionBySegment.keySet().removeAll(segmentNames)) {
+                rewrite(indexFileFor(cameraName), motionBySegment);
+            }
+        }
+    }
+
+    /**
+     * Finds the motion of a camera starting within the given range (inclusive).
+     *
+     * @param cameraName       Camera
+     * @param segmentDirectory Directory holding the camera's segments
+     * @param from             Beginning of the range
+     * @param to               End of the range
+     * @return Motion events, oldest first
+     */
+    List<MotionEvent> findInRange(final String cameraName,
+                                  final File segmentDirectory,
+                                  final Instant from,
+                                  final Instant to) {
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(segmentDirectory, "segmentDirectory cannot be null");
+        checkNotNull(from, "from cannot be null");
+        checkNotNull(to, "to cannot be null");
+
+        final String toName = to.atZone(ZoneId.systemDefault()).format(STORAGE_FILE_DATET_TIME_FORMAT) +
+                Character.MAX_VALUE;
+        final List<MotionEvent> events = new ArrayList<>();
+        motionBySegmentFor(cameraName).headMap(toName, true).forEach((segmentName, motion) -> {
+            final Instant segmentStart = startOf(segmentName);
+            for (final MotionInterval interval : motion) {
+                final Instant start = segmentStart.plusMillis(interval.getOffsetMillis());
+                if (!start.isBefore(from) && !start.isAfter(to)) {
+                    events.add(new MotionEvent(new File(segmentDirectory, segmentName),
+                                               start,
+                                               interval.getOffsetMillis(),
+                                               interval.getDurationMillis()));
+                }
+            }
+        });
+        return events;
+    }
+
+    private NavigableMap<String, List<MotionInterval>> motionBySegmentFor(final String cameraName) {
+        return motionBySegmentByCamera.computeIfAbsent(cameraName, name -> read(indexFileFor(name)));
+    }
+
+    private File indexFileFor(final String cameraName) {
+        return new File(indexDirectory, cameraName + INDEX_FILE_EXTENSION);
+    }
+
+    private static Instant startOf(final String segmentName) {
+        return LocalDateTime.parse(segmentName.substring(0, segmentName.lastIndexOf('.')),
+                                   STORAGE_FILE_DATET_TIME_FORMAT)
+                            .atZone(ZoneId.systemDefault())
+                            .toInstant();
+    }
+
+    private static String lineFor(final String segmentName, final List<MotionInterval> motion) {
+        return segmentName + '\t' + motion.stream()
+                                          .map(i -> i.getOffsetMillis() + ":" + i.getDurationMillis())
+                                          .collect(joining(","));
+    }
+
+    private static NavigableMap<String, List<MotionInterval>> read(final File indexFile) {
+        final NavigableMap<String, List<MotionInterval>> motionBySegment = new ConcurrentSkipListMap<>();
+        if (!indexFile.exists()) {
+            return motionBySegment;
+        }
+        try {
+            for (final String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+                final int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    continue;
+                }
+                final List<MotionInterval> motion = new ArrayList<>();
+                for (final String interval : line.substring(tab + 1).split(",")) {
+                    final int colon = interval.indexOf(':');
+                    motion.add(new MotionInterval(Long.parseLong(interval.substring(0, colon)),
+                                                  Long.parseLong(interval.substring(colon + 1))));
+                }
+                motionBySegment.put(line.substring(0, tab), Collections.unmodifiableList(motion));
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Could not read motion index " + indexFile.getAbsolutePath(), e);
+        }
+        return motionBySegment;
+    }
+
+    private void append(final File indexFile, final String line) {
+        mkDirsIfMissing(indexFile.getParentFile());
+        try {
+            Files.write(indexFile.toPath(),
+                        Collections.singletonList(line),
+                        StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not append to motion index " + indexFile.getAbsolutePath(), e);
+        }
+    }
+
+    private void rewrite(final File indexFile, final Map<String, List<MotionInterval>> motionBySegment) {
+        mkDirsIfMissing(indexFile.getParentFile());
+        final File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try {
+            Files.write(tmpFile.toPath(),
+                        motionBySegment.entrySet()
+                                       .stream()
+                                       .map(e -> lineFor(e.getKey(), e.getValue()))
+                                       .collect(toList()),
+                        StandardCharsets.UTF_8);
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write motion index " + indexFile.getAbsolutePath(), e);
+        }
+    }
+
+    private void mkDirsIfMissing(final File dir) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create motion index directory: " + dir);
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import static com.alexhilman.cameradashboard.ui.video.MovieFileManager.STORAGE_FILE_DATET_TIME_FORMAT;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sorted index of the movie files in each storage pool, keyed by camera.
+ * <p>
+ * Movie file names start with their timestamp (see {@link MovieFileManager#STORAGE_FILE_DATET_TIME_FORMAT}) so the
+ * natural ordering of the names is also their chronological ordering. Each camera directory has an index file under the
+ * catalog directory listing its movie file names, one per line; the in-memory index keeps the same names in sorted sets
+ * so range queries never need to list the camera directories. Each pool's version file records the
+ * {@link #CATALOG_VERSION} its indexes were written by.
+ * <pre>
+ * {@code
+ * catalogDir
+ * |-- rotating
+ *     |-- version
+ *     |-- cam1.idx
+ *     |-- cam2.idx
+ * |-- saved
+ *     |-- version
+ *     |-- cam1.idx
+ * }
+ * </pre>
+ */
+@ThreadSafe
+class MovieCatalog {
+    private static final Logger LOG = LogManager.getLogger(MovieCatalog.class);
+    /**
+     * Raised whenever the files the catalog indexes change, so indexes written by earlier versions are rebuilt.
+     */
+    static final int CATALOG_VERSION = 2;
+    private static final String INDEX_FILE_EXTENSION = ".idx";
+    private static final String VERSION_FILE_NAME = "version";
+    private static final String MOVIE_FILE_EXTENSION = ".mp4";
+
+    private final File catalogDirectory;
+    private final ConcurrentMap<Pool, File> poolDirectories = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Pool, ConcurrentMap<String, NavigableSet<String>>> movieNamesByCameraByPool =
+            new ConcurrentHashMap<>();
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    MovieCatalog(final File catalogDirectory) {
+        this.catalogDirectory = checkNotNull(catalogDirectory, "catalogDirectory cannot be null");
+    }
+
+    static boolean isMovieFileName(final String fileName) {
+        final int extensionIndex = fileName.lastIndexOf('.');
+        if (extensionIndex <= 0 || !fileName.endsWith(MOVIE_FILE_EXTENSION)) {
+            return false;
+        }
+
+        try {
+            LocalDateTime.parse(fileName.substring(0, extensionIndex), STORAGE_FILE_DATET_TIME_FORMAT);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads the index for every camera directory in the pool. The application records every movie it adds to or
+     * removes from a pool, so a camera's index file is trusted whenever the pool's catalog was written by this
+     * {@link #CATALOG_VERSION}; posters and temporary files written next to the movies never force a listing. A camera
+     * without an index file, or any camera of a pool written by another version, is listed once and its index file is
+     * rewritten. Movies copied into a pool by hand are picked up by deleting the catalog directory.
+     *
+     * @param pool          Pool to load
+     * @param poolDirectory Directory containing one directory per camera
+     */
+    void rebuild(final Pool pool, final File poolDirectory) {
+        checkNotNull(pool, "pool cannot be null");
+        checkNotNull(poolDirectory, "poolDirectory cannot be null");
+
+        poolDirectories.put(pool, poolDirectory);
+        final ConcurrentMap<String, NavigableSet<String>> movieNamesByCamera = movieNamesByCameraFor(pool);
+        movieNamesByCamera.clear();
+
+        final File[] cameraDirectories = poolDirectory.listFiles(File::isDirectory);
+        if (cameraDirectories == null) {
+            return;
+        }
+
+        final File versionFile = new File(new File(catalogDirectory, pool.name()), VERSION_FILE_NAME);
+        final boolean currentVersion = isCurrentVersion(versionFile);
+        for (final File cameraDirectory : cameraDirectories) {
+            final String cameraName = cameraDirectory.getName();
+            final File indexFile = indexFileFor(pool, cameraName);
+            final NavigableSet<String> movieNames = new ConcurrentSkipListSet<>();
+
+            if (currentVersion && indexFile.exists()) {
+                movieNames.addAll(readIndex(indexFile));
+            } else {
+                LOG.info("Rebuilding {} catalog for {}", pool, cameraName);
+                final String[] fileNames = cameraDirectory.list((dir, name) -> isMovieFileName(name));
+                if (fileNames != null) {
+                    movieNames.addAll(Arrays.asList(fileNames));
+                }
+                writeIndex(indexFile, movieNames);
+            }
+
+            movieNamesByCamera.put(cameraName, movieNames);
+        }
+        if (!currentVersion) {
+            writeVersion(versionFile);
+        }
+    }
+
+    void add(final Pool pool, final String cameraName, final String fileName) {
+        checkNotNull(pool, "pool cannot be null");
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(fileName, "fileName cannot be null");
+
+        final NavigableSet<String> movieNames =
+                movieNamesByCameraFor(pool).computeIfAbsent(cameraName, name -> new ConcurrentSkipListSet<>());
+        final boolean added;
+        synchronized (movieNames) {
+            added = movieNames.add(fileName);
+            if (added) {
+                appendIndex(indexFileFor(pool, cameraName), fileName);
+            }
+        }
+        if (added) {
+            changed(pool, cameraName, fileName);
+        }
+    }
+
+    void remove(final Pool pool, final String cameraName, final String fileName) {
+        checkNotNull(pool, "pool cannot be null");
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(fileName, "fileName cannot be null");
+
+        final NavigableSet<String> movieNames = movieNamesByCameraFor(pool).get(cameraName);
+        if (movieNames == null) {
+            return;
+        }
+
+        final boolean removed;
+        synchronized (movieNames) {
+            removed = movieNames.remove(fileName);
+            if (removed) {
+                writeIndex(indexFileFor(pool, cameraName), movieNames);
+            }
+        }
+        if (removed) {
+            changed(pool, cameraName, fileName);
+        }
+    }
+
+    /**
+     * Removes several movies of a camera, rewriting its index file once.
+     *
+     * @param pool       Pool the movies are in
+     * @param cameraName Camera which recorded the movies
+     * @param fileNames  Movie file names
+     */
+    void removeAll(final Pool pool, final String cameraName, final Collection<String> fileNames) {
+        checkNotNull(pool, "pool cannot be null");
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(fileNames, "fileNames cannot be null");
+
+        final NavigableSet<String> movieNames = movieNamesByCameraFor(pool).get(cameraName);
+        if (movieNames == null) {
+            return;
+        }
+
+        final List<String> removed = new ArrayList<>(fileNames.size());
+        synchronized (movieNames) {
+            fileNames.stream().filter(movieNames::remove).forEach(removed::add);
+            if (!removed.isEmpty()) {
+                writeIndex(indexFileFor(pool, cameraName), movieNames);
+            }
+        }
+        removed.forEach(fileName -> changed(pool, cameraName, fileName));
+    }
+
+    /**
+     * Listens to movies being added to or removed from the catalog once it is built.
+     *
+     * @param changeListener Listener, called after the change
+     */
+    void addChangeListener(final ChangeListener changeListener) {
+        changeListeners.add(checkNotNull(changeListener, "changeListener cannot be null"));
+    }
+
+    /**
+     * @return Names of the cameras with movies in the rotating or saved pools
+     */
+    Set<String> getCameraNames() {
+        final Set<String> cameraNames = new TreeSet<>();
+        movieNamesByCameraByPool.forEach((pool, movieNamesByCamera) -> {
+            if (pool != Pool.continuous) {
+                cameraNames.addAll(movieNamesByCamera.keySet());
+            }
+        });
+        return cameraNames;
+    }
+
+    /**
+     * Finds the oldest movie files of a pool across all cameras, by merging the sorted indexes of the cameras.
+     *
+     * @param pool  Pool to search
+     * @param limit Maximum number of files
+     * @return Movie files, oldest first
+     */
+    List<File> findOldest(final Pool pool, final int limit) {
+        checkNotNull(pool, "pool cannot be null");
+
+        final File poolDirectory = poolDirectories.get(pool);
+        final List<String> cameraNames = new ArrayList<>();
+        final List<PeekingIterator<String>> movieNames = new ArrayList<>();
+        movieNamesByCameraFor(pool).forEach((cameraName, names) -> {
+            cameraNames.add(cameraName);
+            movieNames.add(Iterators.peekingIterator(names.iterator()));
+        });
+
+        final List<File> files = new ArrayList<>();
+        while (files.size() < limit) {
+            int oldest = -1;
+            for (int i = 0; i < movieNames.size(); i++) {
+                if (movieNames.get(i).hasNext()
+                        && (oldest < 0 || movieNames.get(i).peek().compareTo(movieNames.get(oldest).peek()) < 0)) {
+                    oldest = i;
+                }
+            }
+            if (oldest < 0) {
+                break;
+            }
+            files.add(new File(new File(poolDirectory, cameraNames.get(oldest)), movieNames.get(oldest).next()));
+        }
+        return files;
+    }
+
+    /**
+     * Finds the movie files of every camera, in the rotating and saved pools, whose timestamps fall within the given
+     * range (inclusive).
+     *
+     * @param from Beginning of the range
+     * @param to   End of the range
+     * @return Movie files in the range, newest first
+     */
+    List<File> findInRange(final Instant from, final Instant to) {
+        return findInRange(from, to, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds a page of the movie files of every camera, in the rotating and saved pools, whose timestamps fall within
+     * the given range (inclusive), by merging the sorted indexes of the cameras.
+     *
+     * @param from   Beginning of the range
+     * @param to     End of the range
+     * @param offset Number of files to skip
+     * @param limit  Maximum number of files
+     * @return Movie files in the range, newest first
+     */
+    List<File> findInRange(final Instant from, final Instant to, final int offset, final int limit) {
+        checkNotNull(from, "from cannot be null");
+        checkNotNull(to, "to cannot be null");
+
+        final List<File> cameraDirectories = new ArrayList<>();
+        final List<PeekingIterator<String>> movieNames = new ArrayList<>();
+        forEachInRange(from, to, (cameraDirectory, names) -> {
+            cameraDirectories.add(cameraDirectory);
+            movieNames.add(Iterators.peekingIterator(names.descendingIterator()));
+        });
+
+        final List<File> files = new ArrayList<>();
+        int skipped = 0;
+        while (files.size() < limit) {
+            int newest = -1;
+            for (int i = 0; i < movieNames.size(); i++) {
+                if (movieNames.get(i).hasNext()
+                        && (newest < 0 || movieNames.get(i).peek().compareTo(movieNames.get(newest).peek()) > 0)) {
+                    newest = i;
+                }
+            }
+            if (newest < 0) {
+                break;
+            }
+            final String name = movieNames.get(newest).next();
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                files.add(new File(cameraDirectories.get(newest), name));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Finds the movie files of one camera, in the rotating and saved pools, whose timestamps fall within the given
+     * range (inclusive).
+     *
+     * @param cameraName Camera
+     * @param from       Beginning of the range
+     * @param to         End of the range
+     * @return Movie files in the range, newest first
+     */
+    List<File> findInRange(final String cameraName, final Instant from, final Instant to) {
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(from, "from cannot be null");
+        checkNotNull(to, "to cannot be null");
+
+        final List<File> files = new ArrayList<>();
+        forEachInRange(from, to, (cameraDirectory, names) -> {
+            if (cameraDirectory.getName().equals(cameraName)) {
+                names.forEach(name -> files.add(new File(cameraDirectory, name)));
+            }
+        });
+        files.sort((f1, f2) -> f2.getName().compareTo(f1.getName()));
+        return files;
+    }
+
+    /**
+     * Counts the movie files of every camera, in the rotating and saved pools, whose timestamps fall within the given
+     * range (inclusive).
+     *
+     * @param from Beginning of the range
+     * @param to   End of the range
+     * @return Number of movie files in the range
+     */
+    int countInRange(final Instant from, final Instant to) {
+        checkNotNull(from, "from cannot be null");
+        checkNotNull(to, "to cannot be null");
+
+        final int[] count = {0};
+        forEachInRange(from, to, (cameraDirectory, names) -> count[0] += names.size());
+        return count[0];
+    }
+
+    private void forEachInRange(final Instant from,
+                                final Instant to,
+                                final BiConsumer<File, NavigableSet<String>> consumer) {
+        final String fromName = from.atZone(ZoneId.systemDefault()).format(STORAGE_FILE_DATET_TIME_FORMAT);
+        final String toName = to.atZone(ZoneId.systemDefault()).format(STORAGE_FILE_DATET_TIME_FORMAT) +
+                Character.MAX_VALUE;
+        if (fromName.compareTo(toName) > 0) {
+            return;
+        }
+
+        movieNamesByCameraByPool.forEach((pool, movieNamesByCamera) -> {
+            if (pool == Pool.continuous) {
+                return;
+            }
+            final File poolDirectory = poolDirectories.get(pool);
+            movieNamesByCamera.forEach((cameraName, movieNames) -> {
+                consumer.accept(new File(poolDirectory, cameraName),
+                                movieNames.subSet(fromName, true, toName, true));
+            });
+        });
+    }
+
+    private void changed(final Pool pool, final String cameraName, final String fileName) {
+        changeListeners.forEach(l -> l.changed(pool, cameraName, fileName));
+    }
+
+    private ConcurrentMap<String, NavigableSet<String>> movieNamesByCameraFor(final Pool pool) {
+        return movieNamesByCameraByPool.computeIfAbsent(pool, p -> new ConcurrentHashMap<>());
+    }
+
+    private File indexFileFor(final Pool pool, final String cameraName) {
+        return new File(new File(catalogDirectory, pool.name()), cameraName + INDEX_FILE_EXTENSION);
+    }
+
+    private List<String> readIndex(final File indexFile) {
+        try {
+            final List<String> movieNames = new ArrayList<>();
+            for (final String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    movieNames.add(line);
+                }
+            }
+            return movieNames;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read catalog index " + indexFile.getAbsolutePath(), e);
+        }
+    }
+
+    private boolean isCurrentVersion(final File versionFile) {
+        if (!versionFile.exists()) {
+            return false;
+        }
+        try {
+            final List<String> lines = Files.readAllLines(versionFile.toPath(), StandardCharsets.UTF_8);
+            return !lines.isEmpty() && String.valueOf(CATALOG_VERSION).equals(lines.get(0).trim());
+        } catch (IOException e) {
+            LOG.warn("Could not read catalog version " + versionFile.getAbsolutePath() + "; rebuilding", e);
+            return false;
+        }
+    }
+
+    private void writeVersion(final File versionFile) {
+        mkDirsIfMissing(versionFile.getParentFile());
+        try {
+            Files.write(versionFile.toPath(),
+                        Collections.singletonList(String.valueOf(CATALOG_VERSION)),
+                        StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write catalog version " + versionFile.getAbsolutePath(), e);
+        }
+    }
+
+    private void appendIndex(final File indexFile, final String fileName) {
+        mkDirsIfMissing(indexFile.getParentFile());
+        try {
+            Files.write(indexFile.toPath(),
+                        Collections.singletonList(fileName),
+                        StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not append to catalog index " + indexFile.getAbsolutePath(), e);
+        }
+    }
+
+    private void writeIndex(final File indexFile, final Iterable<String> movieNames) {
+        mkDirsIfMissing(indexFile.getParentFile());
+        final File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try {
+            Files.write(tmpFile.toPath(), movieNames, StandardCharsets.UTF_8);
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write catalog index " + indexFile.getAbsolutePath(), e);
+        }
+    }
+
+    private void mkDirsIfMissing(final File dir) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create catalog directory: " + dir);
+        }
+    }
+
+    /**
+     * Storage pools; the names match the pool directory names. Only the rotating and saved pools hold movies; the
+     * continuous pool holds the segments of continuous recording.
+     */
+    enum Pool {
+        rotating, saved, continuous
+    }
+
+    @FunctionalInterface
+    interface ChangeListener {
+        void changed(final Pool pool, final String cameraName, final String fileName);
+    }
+}
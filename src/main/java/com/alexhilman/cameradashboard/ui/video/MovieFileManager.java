@@ -2,7 +2,9 @@ package com.alexhilman.cameradashboard.ui.video;
 
 import com.alexhilman.cameradashboard.ui.conf.Camera;
 import com.alexhilman.cameradashboard.ui.conf.CameraConfiguration;
+import com.alexhilman.cameradashboard.ui.driver.RecordedSegment;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.apache.logging.log4j.LogManager;
@@ -10,7 +12,6 @@ import org.apache.logging.log4j.Logger;
 
 import javax.inject.Named;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -22,9 +23,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -37,11 +42,21 @@ public class MovieFileManager {
     public static final DateTimeFormatter STORAGE_FILE_DATET_TIME_FORMAT =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
     private static final Logger LOG = LogManager.getLogger(MovieFileManager.class);
-    private final CameraConfiguration cameraConfiguration;
+    private volatile CameraConfiguration cameraConfiguration;
     private final MovieHelper movieHelper;
     private final File storageDirectory;
     private final File rotatingDirectory;
     private final File savedDirectory;
+    private final File continuousDirectory;
+    private final MovieCatalog movieCatalog;
+    private final MovieQueryCache movieQueryCache;
+    private final MotionEventIndex motionEventIndex;
+    private final MovieMetadataCache movieMetadataCache;
+    private final PosterGenerator posterGenerator;
+    private final ExecutorService movieFinalizer =
+            Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("movie-finalizer-%d")
+                                                                        .setDaemon(true)
+                                                                        .build());
 
     @Inject
     public MovieFileManager(final CameraConfiguration cameraConfiguration,
@@ -58,6 +73,19 @@ public class MovieFileManager {
 
         savedDirectory = new File(storageDirectory, "saved");
         mkDirsIfMissing(savedDirectory);
+
+        continuousDirectory = new File(storageDirectory, "continuous");
+        mkDirsIfMissing(continuousDirectory);
+
+        movieCatalog = new MovieCatalog(new File(storageDirectory, ".catalog"));
+        movieCatalog.rebuild(MovieCatalog.Pool.rotating, rotatingDirectory);
+        movieCatalog.rebuild(MovieCatalog.Pool.saved, savedDirectory);
+        movieCatalog.rebuild(MovieCatalog.Pool.continuous, continuousDirectory);
+        movieQueryCache = new MovieQueryCache(movieCatalog);
+        motionEventIndex = new MotionEventIndex(new File(storageDirectory, ".motion"));
+
+        movieMetadataCache = new MovieMetadataCache(new File(storageDirectory, ".metadata"), movieHelper);
+        posterGenerator = new PosterGenerator(movieHelper);
     }
 
     static Instant createdInstantForFile(final File f) {
@@ -78,18 +106,27 @@ public class MovieFileManager {
                 .format(STORAGE_FILE_DATET_TIME_FORMAT) + "." + fileExtension;
     }
 
+    /**
+     * Replaces the configuration movies are matched to their cameras with, after {@code cameras.json} changed.
+     *
+     * @param cameraConfiguration New configuration
+     */
+    public void setCameraConfiguration(final CameraConfiguration cameraConfiguration) {
+        this.cameraConfiguration = checkNotNull(cameraConfiguration, "cameraConfiguration cannot be null");
+    }
+
     public File getStorageDirectory() {
         return storageDirectory;
     }
 
-    public void addMoviesToRotatingPool(final Camera camera,
-                                        final List<File> files) {
+    public List<Movie> addMoviesToRotatingPool(final Camera camera,
+                                               final List<File> files) {
         checkNotNull(camera, "camera cannot be null");
         checkNotNull(files, "files cannot be null");
 
         final File rotatingPool = getRotatingDirectoryForCamera(camera);
 
-        files.forEach(f -> {
+        return files.stream().map(f -> {
             final String fileExtension = extensionForFileName(f);
             File newFile =
                     new File(rotatingPool,
@@ -101,10 +138,68 @@ public class MovieFileManager {
                         .getAbsolutePath());
             }
 
-            if (!f.renameTo(newFile)) {
-                throw new RuntimeException("Could not move " + f.getAbsolutePath() + " to " + newFile.getAbsolutePath());
+            finalizeMovie(f, newFile);
+
+            movieCatalog.add(MovieCatalog.Pool.rotating, camera.getName(), newFile.getName());
+            movieMetadataCache.record(camera.getName(), newFile);
+            return new Movie(newFile, posterImageFileFor(newFile));
+        }).collect(toList());
+    }
+
+    /**
+     * Adds a freshly recorded motion clip to the camera's rotating pool in the background. Rewriting the clip for fast
+     * start reads and writes all of it, so it is kept off the threads recording the cameras; clips are finalized one at
+     * a time, in the order they were recorded.
+     *
+     * @param camera Camera which recorded the clip
+     * @param clip   Recorded clip
+     * @return The movie, once it is in the rotating pool
+     */
+    public CompletableFuture<Movie> addMotionClipToRotatingPool(final Camera camera, final File clip) {
+        checkNotNull(camera, "camera cannot be null");
+        checkNotNull(clip, "clip cannot be null");
+
+        return CompletableFuture.supplyAsync(() -> addMoviesToRotatingPool(camera, Lists.newArrayList(clip)).get(0),
+                                             movieFinalizer);
+    }
+
+    /**
+     * Moves a freshly recorded clip into its pool. The clip is first rewritten for fast start, so playback can begin
+     * before it has been downloaded completely; if that fails the clip is moved as it was recorded.
+     *
+     * @param clip      Recorded clip
+     * @param movieFile Destination within the pool
+     */
+    private void finalizeMovie(final File clip, final File movieFile) {
+        if (!"mp4".equals(extensionForFileName(clip))) {
+            moveOrThrow(clip, movieFile);
+            return;
+        }
+
+        final File remuxedFile = new File(movieFile.getParentFile(), movieFile.getName() + ".remux");
+        try {
+            movieHelper.remuxForFastStart(clip, remuxedFile);
+            if (remuxedFile.renameTo(movieFile)) {
+                if (!clip.delete()) {
+                    LOG.warn("Could not delete {} after finalizing it", clip.getAbsolutePath());
+                }
+                return;
             }
-        });
+            LOG.warn("Could not move {} to {}", remuxedFile.getAbsolutePath(), movieFile.getAbsolutePath());
+        } catch (RuntimeException e) {
+            LOG.warn("Could not rewrite {} for fast start; keeping it as recorded", clip.getAbsolutePath(), e);
+        }
+
+        if (remuxedFile.exists() && !remuxedFile.delete()) {
+            LOG.warn("Could not delete {}", remuxedFile.getAbsolutePath());
+        }
+        moveOrThrow(clip, movieFile);
+    }
+
+    private void moveOrThrow(final File file, final File destination) {
+        if (!file.renameTo(destination)) {
+            throw new RuntimeException("Could not move " + file.getAbsolutePath() + " to " + destination.getAbsolutePath());
+        }
     }
 
     public Instant lastMovieInstantFor(final Camera camera) {
@@ -142,38 +237,158 @@ public class MovieFileManager {
         return storageDirectory.getTotalSpace();
     }
 
+    /**
+     * Moves a finished segment of continuous recording into the camera's continuous pool, named by its start, and
+     * indexes the motion detected within it.
+     *
+     * @param camera  Camera which recorded the segment
+     * @param segment Finished segment
+     * @return The stored segment file
+     */
+    public File addContinuousSegment(final Camera camera, final RecordedSegment segment) {
+        checkNotNull(camera, "camera cannot be null");
+        checkNotNull(segment, "segment cannot be null");
+
+        final File segmentFile = segment.getFile();
+        final File newFile = new File(getContinuousDirectoryForCamera(camera),
+                                      movieFileNameFor(segment.getStart(), extensionForFileName(segmentFile)));
+        if (newFile.exists()) {
+            throw new RuntimeException("Cannot move " + segmentFile.getAbsolutePath() + "; the destination already exists: " +
+                                               newFile.getAbsolutePath());
+        }
+        if (!segmentFile.renameTo(newFile)) {
+            throw new RuntimeException("Could not move " + segmentFile.getAbsolutePath() + " to " + newFile.getAbsolutePath());
+        }
+
+        movieCatalog.add(MovieCatalog.Pool.continuous, camera.getName(), newFile.getName());
+        motionEventIndex.record(camera.getName(), newFile.getName(), segment.getMotion());
+        return newFile;
+    }
+
+    /**
+     * Finds the motion detected during continuous recording, as pointers into the recorded segments.
+     *
+     * @param camera Camera
+     * @param from   Beginning of the range
+     * @param to     End of the range
+     * @return Motion starting within the range, oldest first
+     */
+    public List<MotionEvent> findMotionEvents(final Camera camera, final Instant from, final Instant to) {
+        checkNotNull(camera, "camera cannot be null");
+        return motionEventIndex.findInRange(camera.getName(), getContinuousDirectoryForCamera(camera), from, to);
+    }
+
+    /**
+     * Deletes the oldest recordings across all cameras: rotating movies, with their posters and metadata, and segments
+     * of continuous recording, with their motion. Saved movies are never evicted. Recordings which cannot be deleted
+     * are dropped from the catalog all the same, so they do not hold up later evictions.
+     *
+     * @param limit Maximum number of recordings to delete
+     * @return Numbers of recordings deleted and of those which could not be deleted
+     */
+    public Eviction evictOldestRecordings(final int limit) {
+        checkArgument(limit > 0, "limit must be positive");
+
+        final List<File> oldestMovies = movieCatalog.findOldest(MovieCatalog.Pool.rotating, limit);
+        final List<File> oldestSegments = movieCatalog.findOldest(MovieCatalog.Pool.continuous, limit);
+        final Map<String, List<String>> moviesByCamera = new LinkedHashMap<>();
+        final Map<String, List<String>> segmentsByCamera = new LinkedHashMap<>();
+        int movies = 0;
+        int segments = 0;
+        int evicted = 0;
+        int failed = 0;
+        while (movies + segments < limit && (movies < oldestMovies.size() || segments < oldestSegments.size())) {
+            final boolean movie = segments >= oldestSegments.size()
+                    || movies < oldestMovies.size()
+                    && oldestMovies.get(movies).getName().compareTo(oldestSegments.get(segments).getName()) <= 0;
+            final File file = movie ? oldestMovies.get(movies++) : oldestSegments.get(segments++);
+            final String cameraName = file.getParentFile().getName();
+            if (file.exists() && !file.delete()) {
+                LOG.warn("Could not delete {}; dropping it from the catalog", file.getAbsolutePath());
+                failed++;
+            } else {
+                if (movie) {
+                    final File posterImageFile = posterImageFileFor(file);
+                    if (posterImageFile.exists() && !posterImageFile.delete()) {
+                        LOG.warn("Could not delete {}", posterImageFile.getAbsolutePath());
+                    }
+                    movieMetadataCache.forget(cameraName, file.getName());
+                }
+                evicted++;
+            }
+
+            (movie ? moviesByCamera : segmentsByCamera).computeIfAbsent(cameraName, name -> new ArrayList<>())
+                                                        .add(file.getName());
+        }
+
+        moviesByCamera.forEach((cameraName, names) -> movieCatalog.removeAll(MovieCatalog.Pool.rotating,
+                                                                             cameraName,
+                                                                             names));
+        segmentsByCamera.forEach((cameraName, names) -> {
+            movieCatalog.removeAll(MovieCatalog.Pool.continuous, cameraName, names);
+            motionEventIndex.removeAll(cameraName, names);
+        });
+        return new Eviction(evicted, failed);
+    }
+
     public List<Movie> getMoviesInRange(final Instant from, final Instant to) {
         checkNotNull(from, "from cannot be null");
         checkNotNull(to, "to cannot be null");
 
-        final String fromDateString = from.atZone(ZoneId.systemDefault()).format(STORAGE_FILE_DATET_TIME_FORMAT);
-        final String toDateString = to.atZone(ZoneId.systemDefault()).format(STORAGE_FILE_DATET_TIME_FORMAT);
-        return Stream.of(rotatingDirectory, savedDirectory)
-                     .map(File::listFiles)
-                     .flatMap(Arrays::stream)
-                     .map(rotatingCameraDirs -> {
-                         return Arrays.stream(rotatingCameraDirs.listFiles())
-                                      .filter(file -> {
-                                          return file.getName().endsWith(".mp4") &&
-                                                  fromDateString.compareTo(file.getName()
-                                                                               .substring(0,
-                                                                                          fromDateString.length())) <= 0;
-                                      })
-                                      .filter(file -> {
-                                          return file.getName().endsWith(".mp4") &&
-                                                  toDateString.compareTo(file.getName()
-                                                                             .substring(0,
-                                                                                        toDateString.length())) >= 0;
-                                      })
-                                      .collect(toList());
-                     })
-                     .flatMap(List::stream)
-                     .collect(toList())
-                     .stream()
-                     .parallel() // in case we need to generate the poster images: 4c is better than 1c
-                     .map(movieFile -> new Movie(movieFile, getPosterImageFileFrom(movieFile)))
-                     .sorted((m1, m2) -> m2.getDateTime().compareTo(m1.getDateTime()))
-                     .collect(toList());
+        return movieQueryCache.findInRange(from, to)
+                              .stream()
+                              .map(movieFile -> new Movie(movieFile, getPosterImageFileFrom(movieFile)))
+                              .collect(toList());
+    }
+
+    /**
+     * Gets a page of the movies in the range, for views which show them lazily.
+     *
+     * @param from   Beginning of the range
+     * @param to     End of the range
+     * @param offset Number of movies to skip
+     * @param limit  Maximum number of movies
+     * @return Movies, newest first
+     */
+    public List<Movie> getMoviesInRange(final Instant from, final Instant to, final int offset, final int limit) {
+        checkNotNull(from, "from cannot be null");
+        checkNotNull(to, "to cannot be null");
+        checkArgument(offset >= 0, "offset cannot be negative");
+        checkArgument(limit >= 0, "limit cannot be negative");
+
+        return movieCatalog.findInRange(from, to, offset, limit)
+                           .stream()
+                           .map(movieFile -> new Movie(movieFile, getPosterImageFileFrom(movieFile)))
+                           .collect(toList());
+    }
+
+    public int countMoviesInRange(final Instant from, final Instant to) {
+        checkNotNull(from, "from cannot be null");
+        checkNotNull(to, "to cannot be null");
+
+        return movieCatalog.countInRange(from, to);
+    }
+
+    /**
+     * Queues generation of the movie's poster image in the background, if it does not exist yet.
+     *
+     * @param movie Movie needing a poster image
+     * @return Poster image file, once it exists; fails if it could not be generated
+     */
+    public CompletableFuture<File> generatePosterFor(final Movie movie) {
+        checkNotNull(movie, "movie cannot be null");
+        return posterGenerator.generate(movie);
+    }
+
+    /**
+     * Gets the cached stream properties of a movie; only movies stored before metadata was recorded are probed.
+     *
+     * @param movie Movie
+     * @return Metadata, if the movie could be probed
+     */
+    public Optional<MovieMetadata> getMetadataFor(final Movie movie) {
+        checkNotNull(movie, "movie cannot be null");
+        return movieMetadataCache.metadataFor(movie);
     }
 
     public Camera getCameraForMovie(final Movie movie) {
@@ -265,7 +480,14 @@ public class MovieFileManager {
         return fileName.substring(fileName.lastIndexOf('.') + 1);
     }
 
-    void moveRotatingPoolVideoToSavedPool(final Movie movie) {
+    /**
+     * Saves a movie, moving it from the rotating pool to the saved pool. A poster still being generated is moved once
+     * it has been written; a missing poster is generated again the next time the saved movie is listed.
+     *
+     * @param movie Movie in the rotating pool
+     * @return Completes once the poster has been moved as well
+     */
+    CompletableFuture<Void> moveRotatingPoolVideoToSavedPool(final Movie movie) {
         checkNotNull(movie, "movieFile cannot be null");
         checkArgument(movie.getMovieFile().exists(), "movie file must exist");
         checkArgument(movie.getMovieFile().getAbsolutePath().contains(getRotatingDirectory().getAbsolutePath()),
@@ -275,7 +497,7 @@ public class MovieFileManager {
         mkDirsIfMissing(cameraDir);
 
         final File newMovieFile = new File(cameraDir, movie.getName());
-        final File newPosterFile = new File(getSavedDirectory(), movie.getPosterImageFile().getName());
+        final File newPosterFile = new File(cameraDir, movie.getPosterImageFile().getName());
 
         if (!movie.getMovieFile().renameTo(newMovieFile)) {
             throw new RuntimeException("Could not rename/move file " +
@@ -283,10 +505,23 @@ public class MovieFileManager {
                                                newMovieFile.getAbsolutePath());
         }
 
-        if (!movie.getPosterImageFile().renameTo(newPosterFile)) {
-            throw new RuntimeException("Could not rename/move file " +
-                                               movie.getPosterImageFile().getAbsolutePath() + " to " +
-                                               newPosterFile.getAbsolutePath());
+        movieCatalog.remove(MovieCatalog.Pool.rotating, cameraDir.getName(), movie.getName());
+        movieCatalog.add(MovieCatalog.Pool.saved, cameraDir.getName(), movie.getName());
+
+        return posterGenerator.pendingGenerationOf(movie.getPosterImageFile())
+                              .handle((poster, e) -> {
+                                  movePosterImage(movie.getPosterImageFile(), newPosterFile);
+                                  return null;
+                              });
+    }
+
+    private void movePosterImage(final File posterImageFile, final File newPosterFile) {
+        if (!posterImageFile.exists()) {
+            return;
+        }
+        if (!posterImageFile.renameTo(newPosterFile)) {
+            LOG.warn("Could not move poster image {} to {}", posterImageFile.getAbsolutePath(),
+                     newPosterFile.getAbsolutePath());
         }
     }
 
@@ -303,22 +538,24 @@ public class MovieFileManager {
                      .collect(toList());
     }
 
+    /**
+     * Gets the poster image file of a movie. A missing poster is queued for generation rather than created here, so the
+     * returned file will not exist until the generator has finished.
+     */
     private File getPosterImageFileFrom(final File movieFile) {
         assert movieFile != null;
 
-        final File posterImageFile = new File(movieFile.getParentFile(), fileNameWithoutExtension(movieFile) + ".jpg");
+        final File posterImageFile = posterImageFileFor(movieFile);
         if (!posterImageFile.exists()) {
-            try (final FileOutputStream out = new FileOutputStream(posterImageFile)) {
-                out.write(movieHelper.grabJpgFrame(movieFile,
-                                                   3000));
-            } catch (Exception e) {
-                LOG.warn("Poster image did not exist and could not be created for file: " + movieFile.getAbsolutePath() + ": " + e
-                        .getMessage());
-            }
+            posterGenerator.generate(new Movie(movieFile, posterImageFile));
         }
         return posterImageFile;
     }
 
+    private File posterImageFileFor(final File movieFile) {
+        return new File(movieFile.getParentFile(), fileNameWithoutExtension(movieFile) + ".jpg");
+    }
+
     private Camera getCameraForMovie(final File movieFile) {
         assert movieFile != null;
 
@@ -367,6 +604,12 @@ public class MovieFileManager {
         return savedDirectory;
     }
 
+    File getContinuousDirectoryForCamera(final Camera camera) {
+        final File file = new File(continuousDirectory, camera.getName());
+        mkDirsIfMissing(file);
+        return file;
+    }
+
     File getRotatingDirectoryForCamera(final Camera camera) {
         final File file = new File(getRotatingDirectory(), camera.getName());
         mkDirsIfMissing(file);
@@ -1,18 +1,19 @@
 package com.alexhilman.cameradashboard.ui.video;
 
 import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.avcodec;
 import org.bytedeco.javacpp.opencv_objdetect;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
 import org.bytedeco.javacv.Java2DFrameConverter;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.time.Duration;
-import java.time.temporal.ChronoUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.bytedeco.javacpp.avcodec.av_packet_unref;
 
 /**
  */
@@ -36,13 +37,59 @@ public class MovieHelper {
         }
     }
 
-    public Duration runningLengthFor(final Movie movie) {
-        checkNotNull(movie, "movie cannot be null");
+    public MovieMetadata probeMetadataFor(final File movieFile) {
+        checkNotNull(movieFile, "movieFile cannot be null");
 
-        try (final FFmpegFrameGrabber frameGrabber = FFmpegFrameGrabber.createDefault(movie.getMovieFile())) {
+        try (final FFmpegFrameGrabber frameGrabber = FFmpegFrameGrabber.createDefault(movieFile)) {
             frameGrabber.start();
-            final long runningLength = frameGrabber.getLengthInTime();
-            return Duration.of(runningLength, ChronoUnit.MICROS);
+            return new MovieMetadata(frameGrabber.getLengthInTime(),
+                                     frameGrabber.getImageWidth(),
+                                     frameGrabber.getImageHeight(),
+                                     frameGrabber.getFrameRate(),
+                                     avcodec.avcodec_get_name(frameGrabber.getVideoCodec()).getString(),
+                                     movieFile.length());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Rewrites a movie with its index (the {@code moov} atom) ahead of the media data, so a player can begin playback
+     * as soon as the first bytes arrive instead of after the whole file. Packets are copied as they are; nothing is
+     * re-encoded.
+     *
+     * @param movieFile   Movie to rewrite
+     * @param destination File to write the rewritten movie to
+     */
+    public void remuxForFastStart(final File movieFile, final File destination) {
+        checkNotNull(movieFile, "movieFile cannot be null");
+        checkNotNull(destination, "destination cannot be null");
+
+        try (final FFmpegFrameGrabber frameGrabber = FFmpegFrameGrabber.createDefault(movieFile)) {
+            frameGrabber.start();
+
+            final FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(destination,
+                                                                         frameGrabber.getImageWidth(),
+                                                                         frameGrabber.getImageHeight(),
+                                                                         0);
+            try {
+                recorder.setFormat("mp4");
+                recorder.setOption("movflags", "+faststart");
+                recorder.setVideoCodec(frameGrabber.getVideoCodec());
+                recorder.setFrameRate(frameGrabber.getFrameRate());
+                recorder.start(frameGrabber.getFormatContext());
+
+                avcodec.AVPacket packet;
+                while ((packet = frameGrabber.grabPacket()) != null) {
+                    try {
+                        recorder.recordPacket(packet);
+                    } finally {
+                        av_packet_unref(packet);
+                    }
+                }
+            } finally {
+                recorder.close();
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
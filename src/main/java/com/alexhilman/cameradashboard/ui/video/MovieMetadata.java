@@ -0,0 +1,105 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.concurrent.Immutable;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Stream properties of a movie file, probed once and kept in a sidecar file so views never need to open the movie.
+ */
+@Immutable
+public class MovieMetadata {
+    private final long durationMicros;
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private final String codec;
+    private final long sizeInBytes;
+
+    @JsonCreator
+    public MovieMetadata(@JsonProperty(value = "durationMicros", required = true) final long durationMicros,
+                         @JsonProperty("width") final int width,
+                         @JsonProperty("height") final int height,
+                         @JsonProperty("frameRate") final double frameRate,
+                         @JsonProperty("codec") final String codec,
+                         @JsonProperty("sizeInBytes") final long sizeInBytes) {
+        this.durationMicros = durationMicros;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.codec = codec;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    @JsonIgnore
+    public Duration getDuration() {
+        return Duration.of(durationMicros, ChronoUnit.MICROS);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final MovieMetadata that = (MovieMetadata) o;
+
+        if (durationMicros != that.durationMicros) return false;
+        if (width != that.width) return false;
+        if (height != that.height) return false;
+        if (Double.compare(that.frameRate, frameRate) != 0) return false;
+        if (sizeInBytes != that.sizeInBytes) return false;
+        return codec != null ? codec.equals(that.codec) : that.codec == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (durationMicros ^ (durationMicros >>> 32));
+        result = 31 * result + width;
+        result = 31 * result + height;
+        final long frameRateBits = Double.doubleToLongBits(frameRate);
+        result = 31 * result + (int) (frameRateBits ^ (frameRateBits >>> 32));
+        result = 31 * result + (codec != null ? codec.hashCode() : 0);
+        result = 31 * result + (int) (sizeInBytes ^ (sizeInBytes >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MovieMetadata{" +
+                "durationMicros=" + durationMicros +
+                ", width=" + width +
+                ", height=" + height +
+                ", frameRate=" + frameRate +
+                ", codec='" + codec + '\'' +
+                ", sizeInBytes=" + sizeInBytes +
+                '}';
+    }
+}
@@ -0,0 +1,172 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the {@link MovieMetadata} of every movie in memory and in a JSON sidecar file per movie. Sidecars are keyed by
+ * camera and movie file name so they follow the movie from the rotating pool to the saved pool.
+ * <pre>
+ * {@code
+ * metadataDir
+ * |-- cam1
+ *     |-- 2017-01-01 00:00:00.000.mp4.json
+ * }
+ * </pre>
+ * At most {@link #MAX_CACHED_MOVIES} movies are kept in memory; the rest are read from their sidecars again. A movie
+ * which cannot be probed is not probed again for {@link #FAILED_PROBE_RETRY_MINUTES} minutes.
+ */
+@ThreadSafe
+class MovieMetadataCache {
+    private static final Logger LOG = LogManager.getLogger(MovieMetadataCache.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    static final int MAX_CACHED_MOVIES = 10_000;
+    static final long FAILED_PROBE_RETRY_MINUTES = 5;
+
+    private final File metadataDirectory;
+    private final MovieHelper movieHelper;
+    private final Cache<File, MovieMetadata> metadataBySidecar;
+    private final Cache<File, Boolean> failedProbes;
+
+    MovieMetadataCache(final File metadataDirectory, final MovieHelper movieHelper) {
+        this(metadataDirectory, movieHelper, Ticker.systemTicker());
+    }
+
+    MovieMetadataCache(final File metadataDirectory, final MovieHelper movieHelper, final Ticker ticker) {
+        this.metadataDirectory = checkNotNull(metadataDirectory, "metadataDirectory cannot be null");
+        this.movieHelper = checkNotNull(movieHelper, "movieHelper cannot be null");
+        checkNotNull(ticker, "ticker cannot be null");
+
+        metadataBySidecar = CacheBuilder.newBuilder()
+                                        .maximumSize(MAX_CACHED_MOVIES)
+                                        .build();
+        failedProbes = CacheBuilder.newBuilder()
+                                   .maximumSize(MAX_CACHED_MOVIES)
+                                   .expireAfterWrite(FAILED_PROBE_RETRY_MINUTES, TimeUnit.MINUTES)
+                                   .ticker(ticker)
+                                   .build();
+    }
+
+    /**
+     * Probes a movie which just landed in storage and writes its sidecar.
+     *
+     * @param cameraName Camera which recorded the movie
+     * @param movieFile  Movie file
+     * @return Metadata, if the movie could be probed
+     */
+    Optional<MovieMetadata> record(final String cameraName, final File movieFile) {
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(movieFile, "movieFile cannot be null");
+
+        final File sidecar = sidecarFor(cameraName, movieFile.getName());
+        metadataBySidecar.invalidate(sidecar);
+        failedProbes.invalidate(sidecar);
+        return probe(movieFile, sidecar);
+    }
+
+    /**
+     * Gets the metadata of a movie from memory or from its sidecar. Movies stored before sidecars existed, and movies
+     * whose sidecar no longer matches them, are probed again.
+     *
+     * @param movie Movie
+     * @return Metadata, if known
+     */
+    Optional<MovieMetadata> metadataFor(final Movie movie) {
+        checkNotNull(movie, "movie cannot be null");
+
+        final File movieFile = movie.getMovieFile();
+        final File sidecar = sidecarFor(movieFile.getParentFile().getName(), movieFile.getName());
+        final MovieMetadata cached = metadataBySidecar.getIfPresent(sidecar);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        final Optional<MovieMetadata> stored = readSidecar(movieFile, sidecar);
+        if (stored.isPresent()) {
+            metadataBySidecar.put(sidecar, stored.get());
+            return stored;
+        }
+        if (failedProbes.getIfPresent(sidecar) != null) {
+            return Optional.empty();
+        }
+        return probe(movieFile, sidecar);
+    }
+
+    /**
+     * Drops the metadata of a deleted movie, along with its sidecar.
+     *
+     * @param cameraName    Camera which recorded the movie
+     * @param movieFileName Movie file name
+     */
+    void forget(final String cameraName, final String movieFileName) {
+        checkNotNull(cameraName, "cameraName cannot be null");
+        checkNotNull(movieFileName, "movieFileName cannot be null");
+
+        final File sidecar = sidecarFor(cameraName, movieFileName);
+        metadataBySidecar.invalidate(sidecar);
+        failedProbes.invalidate(sidecar);
+        if (sidecar.exists() && !sidecar.delete()) {
+            LOG.warn("Could not delete metadata sidecar {}", sidecar.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Reads a movie's sidecar, unless it was written for a different version of the movie file.
+     */
+    private Optional<MovieMetadata> readSidecar(final File movieFile, final File sidecar) {
+        if (!sidecar.exists()) {
+            return Optional.empty();
+        }
+        try {
+            final MovieMetadata metadata = OBJECT_MAPPER.readValue(sidecar, MovieMetadata.class);
+            if (metadata.getSizeInBytes() == movieFile.length()) {
+                return Optional.of(metadata);
+            }
+            LOG.debug("Metadata sidecar {} is stale; probing the movie again", sidecar.getAbsolutePath());
+        } catch (IOException e) {
+            LOG.warn("Could not read metadata sidecar " + sidecar.getAbsolutePath() + "; probing the movie again", e);
+        }
+        return Optional.empty();
+    }
+
+    private Optional<MovieMetadata> probe(final File movieFile, final File sidecar) {
+        final MovieMetadata metadata;
+        try {
+            metadata = movieHelper.probeMetadataFor(movieFile);
+        } catch (Exception e) {
+            LOG.warn("Could not probe metadata for " + movieFile.getAbsolutePath() + ": " + e.getMessage());
+            failedProbes.put(sidecar, Boolean.TRUE);
+            return Optional.empty();
+        }
+        metadataBySidecar.put(sidecar, metadata);
+
+        final File cameraDirectory = sidecar.getParentFile();
+        if (!cameraDirectory.exists() && !cameraDirectory.mkdirs()) {
+            LOG.warn("Cannot create metadata directory {}", cameraDirectory.getAbsolutePath());
+            return Optional.of(metadata);
+        }
+
+        try {
+            OBJECT_MAPPER.writeValue(sidecar, metadata);
+        } catch (IOException e) {
+            LOG.warn("Could not write metadata sidecar " + sidecar.getAbsolutePath(), e);
+        }
+        return Optional.of(metadata);
+    }
+
+    private File sidecarFor(final String cameraName, final String movieFileName) {
+        return new File(new File(metadataDirectory, cameraName), movieFileName + ".json");
+    }
+}
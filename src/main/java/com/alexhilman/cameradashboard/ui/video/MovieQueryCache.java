@@ -0,0 +1,164 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static com.alexhilman.cameradashboard.ui.video.MovieFileManager.STORAGE_FILE_DATET_TIME_FORMAT;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Caches the movies of the rotating and saved pools by camera and day, so the dashboards and views asking for the same
+ * days share one catalog query. Concurrent requests for a day which is not cached wait for a single query.
+ * <p>
+ * The catalog reports every movie added or removed, which invalidates only the day the movie belongs to. Ranges
+ * spanning more than {@link #MAX_CACHED_DAYS} days are rare and are answered by the catalog directly.
+ */
+@ThreadSafe
+class MovieQueryCache {
+    static final int MAX_CACHED_DAYS = 31;
+    private static final int MAX_BUCKETS = 1024;
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private final MovieCatalog movieCatalog;
+    private final ConcurrentMap<DayBucket, FutureTask<List<File>>> moviesByDay = new ConcurrentHashMap<>();
+
+    MovieQueryCache(final MovieCatalog movieCatalog) {
+        this.movieCatalog = checkNotNull(movieCatalog, "movieCatalog cannot be null");
+        movieCatalog.addChangeListener(this::catalogChanged);
+    }
+
+    /**
+     * Finds the movie files of every camera, in the rotating and saved pools, whose timestamps fall within the given
+     * range (inclusive).
+     *
+     * @param from Beginning of the range
+     * @param to   End of the range
+     * @return Movie files in the range, newest first
+     */
+    List<File> findInRange(final Instant from, final Instant to) {
+        checkNotNull(from, "from cannot be null");
+        checkNotNull(to, "to cannot be null");
+
+        final ZoneId zone = ZoneId.systemDefault();
+        final LocalDate firstDay = from.atZone(zone).toLocalDate();
+        final LocalDate lastDay = to.atZone(zone).toLocalDate();
+        if (from.isAfter(to) || ChronoUnit.DAYS.between(firstDay, lastDay) >= MAX_CACHED_DAYS) {
+            return movieCatalog.findInRange(from, to);
+        }
+
+        final String fromName = from.atZone(zone).format(STORAGE_FILE_DATET_TIME_FORMAT);
+        final String toName = to.atZone(zone).format(STORAGE_FILE_DATET_TIME_FORMAT) + Character.MAX_VALUE;
+        final List<File> files = new ArrayList<>();
+        for (final String cameraName : movieCatalog.getCameraNames()) {
+            for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+                for (final File file : moviesIn(new DayBucket(cameraName, day))) {
+                    final String name = file.getName();
+                    if (name.compareTo(fromName) >= 0 && name.compareTo(toName) <= 0) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+
+        files.sort((f1, f2) -> f2.getName().compareTo(f1.getName()));
+        return files;
+    }
+
+    int size() {
+        return moviesByDay.size();
+    }
+
+    /**
+     * Gets the movies of a bucket, querying the catalog if they are not cached. A bucket is queried by the first
+     * caller; callers arriving meanwhile wait for its result. A bucket invalidated while it is queried is removed
+     * before the result is in, so only the callers which raced the change see the old movies.
+     */
+    private List<File> moviesIn(final DayBucket bucket) {
+        FutureTask<List<File>> query = moviesByDay.get(bucket);
+        if (query == null) {
+            final FutureTask<List<File>> newQuery = new FutureTask<>(() -> findInDay(bucket));
+            query = moviesByDay.putIfAbsent(bucket, newQuery);
+            if (query == null) {
+                query = newQuery;
+                evictOldestDaysIfFull();
+                newQuery.run();
+            }
+        }
+
+        try {
+            return query.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for movies of " + bucket.day, e);
+        } catch (ExecutionException e) {
+            moviesByDay.remove(bucket, query);
+            throw new RuntimeException("Could not find movies of " + bucket.day, e.getCause());
+        }
+    }
+
+    private void evictOldestDaysIfFull() {
+        while (moviesByDay.size() > MAX_BUCKETS) {
+            moviesByDay.keySet()
+                       .stream()
+                       .map(b -> b.day)
+                       .min(LocalDate::compareTo)
+                       .ifPresent(oldestDay -> moviesByDay.keySet().removeIf(b -> b.day.equals(oldestDay)));
+        }
+    }
+
+    private List<File> findInDay(final DayBucket bucket) {
+        final ZoneId zone = ZoneId.systemDefault();
+        return movieCatalog.findInRange(bucket.cameraName,
+                                        bucket.day.atStartOfDay(zone).toInstant(),
+                                        bucket.day.plusDays(1).atStartOfDay(zone).toInstant().minusMillis(1));
+    }
+
+    private void catalogChanged(final MovieCatalog.Pool pool, final String cameraName, final String fileName) {
+        if (pool == MovieCatalog.Pool.continuous || fileName.length() < 10) {
+            return;
+        }
+        // movie file names start with their date
+        moviesByDay.remove(new DayBucket(cameraName, LocalDate.parse(fileName.substring(0, 10), DAY_FORMAT)));
+    }
+
+    @Immutable
+    private static class DayBucket {
+        private final String cameraName;
+        private final LocalDate day;
+
+        private DayBucket(final String cameraName, final LocalDate day) {
+            this.cameraName = cameraName;
+            this.day = day;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final DayBucket dayBucket = (DayBucket) o;
+
+            if (!cameraName.equals(dayBucket.cameraName)) return false;
+            return day.equals(dayBucket.day);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = cameraName.hashCode();
+            result = 31 * result + day.hashCode();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.annotation.concurrent.Immutable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Serves movies and posters out of the storage directory. Recordings are named after their timestamp and never change
+ * once they are in a pool, so they are served with a strong ETag and may be cached indefinitely. Single byte ranges
+ * are honored (subject to {@code If-Range}) so players can seek without downloading the whole movie; responses are
+ * written straight from a memory-mapped region of the file.
+ * <p>
+ * Directories and the storage directory's hidden files (catalog, metadata and motion indexes) are never served.
+ */
+public class MovieResourceHandler extends AbstractHandler {
+    static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String NO_CACHE_CONTROL = "no-cache";
+
+    private final File storageDirectory;
+    private final MimeTypes mimeTypes = new MimeTypes();
+
+    public MovieResourceHandler(final File storageDirectory) {
+        checkNotNull(storageDirectory, "storageDirectory cannot be null");
+        try {
+            this.storageDirectory = storageDirectory.getCanonicalFile();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot resolve storage directory " + storageDirectory, e);
+        }
+    }
+
+    @Override
+    public void handle(final String target,
+                       final Request baseRequest,
+                       final HttpServletRequest request,
+                       final HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+
+        final boolean head = HttpMethod.HEAD.is(request.getMethod());
+        if (!head && !HttpMethod.GET.is(request.getMethod())) {
+            response.setHeader(HttpHeader.ALLOW.asString(), "GET, HEAD");
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        final File file = resolve(target);
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final String etag = etagFor(length, lastModified);
+
+        response.setHeader(HttpHeader.ETAG.asString(), etag);
+        response.setDateHeader(HttpHeader.LAST_MODIFIED.asString(), lastModified);
+        response.setHeader(HttpHeader.ACCEPT_RANGES.asString(), "bytes");
+        response.setHeader(HttpHeader.CACHE_CONTROL.asString(),
+                           isRecordingFileName(file.getName()) ? IMMUTABLE_CACHE_CONTROL : NO_CACHE_CONTROL);
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final String contentType = mimeTypes.getMimeByExtension(file.getName());
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+
+        final String rangeHeader = request.getHeader(HttpHeader.RANGE.asString());
+        final ByteRange range = rangeHeader != null && ifRangeMatches(request, etag, lastModified)
+                ? ByteRange.parse(rangeHeader, length)
+                : null;
+
+        if (range == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            send(baseRequest, response, file, 0, length, head);
+        } else if (!range.isSatisfiable()) {
+            response.setHeader(HttpHeader.CONTENT_RANGE.asString(), "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        } else {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeader.CONTENT_RANGE.asString(),
+                               "bytes " + range.getFirst() + "-" + range.getLast() + "/" + length);
+            send(baseRequest, response, file, range.getFirst(), range.getLength(), head);
+        }
+    }
+
+    private void send(final Request baseRequest,
+                      final HttpServletResponse response,
+                      final File file,
+                      final long position,
+                      final long count,
+                      final boolean head) throws IOException {
+        response.setContentLengthLong(count);
+        if (head || count == 0) {
+            return;
+        }
+
+        final HttpOutput out = baseRequest.getResponse().getHttpOutput();
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (count <= Integer.MAX_VALUE) {
+                out.sendContent(channel.map(FileChannel.MapMode.READ_ONLY, position, count));
+            } else {
+                // too large to map in one piece; only whole files get here since ranges are capped
+                out.sendContent(channel);
+            }
+        }
+    }
+
+    /**
+     * Maps a request target onto a regular file within the storage directory.
+     *
+     * @param target Path within the context
+     * @return File, or null if the target is outside the storage directory, hidden, or not a regular file
+     */
+    File resolve(final String target) {
+        if (target == null || target.isEmpty()) {
+            return null;
+        }
+        for (final String segment : target.split("/")) {
+            if (segment.startsWith(".")) {
+                return null;
+            }
+        }
+
+        final File file;
+        try {
+            file = new File(storageDirectory, target).getCanonicalFile();
+        } catch (IOException e) {
+            return null;
+        }
+        if (!file.getPath().startsWith(storageDirectory.getPath() + File.separator) || !file.isFile()) {
+            return null;
+        }
+        return file;
+    }
+
+    static String etagFor(final long length, final long lastModified) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    static boolean isRecordingFileName(final String fileName) {
+        return MovieCatalog.isMovieFileName(fileName) ||
+                (fileName.endsWith(".jpg") && MovieCatalog.isMovieFileName(fileName.replaceFirst("\\.jpg$", ".mp4")));
+    }
+
+    private static boolean isNotModified(final HttpServletRequest request, final String etag, final long lastModified) {
+        final String ifNoneMatch = request.getHeader(HttpHeader.IF_NONE_MATCH.asString());
+        if (ifNoneMatch != null) {
+            for (final String candidate : ifNoneMatch.split(",")) {
+                final String trimmed = candidate.trim();
+                if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final long ifModifiedSince = dateHeader(request, HttpHeader.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static boolean ifRangeMatches(final HttpServletRequest request, final String etag, final long lastModified) {
+        final String ifRange = request.getHeader(HttpHeader.IF_RANGE.asString());
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range requires a strong comparison
+            return ifRange.equals(etag);
+        }
+        final long ifRangeDate = dateHeader(request, HttpHeader.IF_RANGE);
+        return ifRangeDate >= 0 && lastModified / 1000 == ifRangeDate / 1000;
+    }
+
+    private static long dateHeader(final HttpServletRequest request, final HttpHeader header) {
+        try {
+            return request.getDateHeader(header.asString());
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A single byte range of a file.
+     */
+    @Immutable
+    static class ByteRange {
+        private final long first;
+        private final long last;
+
+        ByteRange(final long first, final long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * A range no byte of the file can satisfy.
+         *
+         * @param length File length
+         * @return Unsatisfiable range
+         */
+        static ByteRange unsatisfiable(final long length) {
+            return new ByteRange(length, length - 1);
+        }
+
+        /**
+         * Parses a {@code Range} header against the length of the file. A range starting at or beyond the end of the
+         * file is unsatisfiable; a malformed header is ignored. Multiple ranges are not supported and, as permitted,
+         * are answered with the whole file.
+         *
+         * @param header Range header
+         * @param length File length
+         * @return Range, possibly unsatisfiable, or null if the header should be ignored
+         */
+        static ByteRange parse(final String header, final long length) {
+            checkNotNull(header, "header cannot be null");
+
+            final String value = header.trim();
+            if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+                return null;
+            }
+            final String spec = value.substring("bytes=".length()).trim();
+            final int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+
+            final long first;
+            final long last;
+            try {
+                if (dash == 0) {
+                    final long suffixLength = parsePosition(spec.substring(1));
+                    if (suffixLength == 0) {
+                        return unsatisfiable(length);
+                    }
+                    first = Math.max(0, length - suffixLength);
+                    last = length - 1;
+                } else {
+                    first = parsePosition(spec.substring(0, dash));
+                    if (dash == spec.length() - 1) {
+                        last = length - 1;
+                    } else {
+                        final long requestedLast = parsePosition(spec.substring(dash + 1));
+                        if (requestedLast < first) {
+                            return null;
+                        }
+                        last = Math.min(requestedLast, length - 1);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (first >= length) {
+                return unsatisfiable(length);
+            }
+            // keep a single response within what can be mapped at once; the client asks for the rest
+            return new ByteRange(first, Math.min(last, first + Integer.MAX_VALUE - 1));
+        }
+
+        /**
+         * Byte positions are plain digits; signs are not allowed.
+         */
+        private static long parsePosition(final String position) {
+            for (int i = 0; i < position.length(); i++) {
+                final char c = position.charAt(i);
+                if (c < '0' || c > '9') {
+                    throw new NumberFormatException("Not a byte position: " + position);
+                }
+            }
+            return Long.parseLong(position);
+        }
+
+        long getFirst() {
+            return first;
+        }
+
+        long getLast() {
+            return last;
+        }
+
+        long getLength() {
+            return last - first + 1;
+        }
+
+        boolean isSatisfiable() {
+            return first <= last;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final ByteRange byteRange = (ByteRange) o;
+
+            if (first != byteRange.first) return false;
+            return last == byteRange.last;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(first);
+            result = 31 * result + Long.hashCode(last);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "ByteRange{" +
+                    "first=" + first +
+                    ", last=" + last +
+                    '}';
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.google.inject.Singleton;
 import com.vaadin.server.ExternalResource;
 import com.vaadin.server.Resource;
 import com.vaadin.server.Sizeable;
+import com.vaadin.server.ThemeResource;
 import com.vaadin.shared.ui.ContentMode;
 import com.vaadin.ui.*;
 
@@ -31,15 +32,13 @@ import static java.util.stream.Collectors.toList;
 public class MovieViewHelper {
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.US);
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("h:m:s a");
+    private static final Resource PENDING_POSTER = new ThemeResource("img/poster-pending.svg");
 
     private final MovieFileManager movieFileManager;
-    private final MovieHelper movieHelper;
 
     @Inject
-    public MovieViewHelper(final MovieFileManager movieFileManager,
-                           final MovieHelper movieHelper) {
+    public MovieViewHelper(final MovieFileManager movieFileManager) {
         this.movieFileManager = movieFileManager;
-        this.movieHelper = movieHelper;
     }
 
     public String contextResourceNameFor(final File file) {
@@ -47,8 +46,17 @@ public class MovieViewHelper {
         return file.getAbsolutePath().substring(absolutePath.length() + 1);
     }
 
+    /**
+     * Gets the poster image of a movie, or a placeholder while the poster is still being generated.
+     *
+     * @param movie Movie
+     * @return Poster image resource
+     */
     public Resource posterResourceFor(final Movie movie) {
         checkNotNull(movie, "movie cannot be null");
+        if (!movie.getPosterImageFile().exists()) {
+            return PENDING_POSTER;
+        }
         return new ExternalResource("/movies/" + contextResourceNameFor(movie.getPosterImageFile()));
     }
 
@@ -62,43 +70,56 @@ public class MovieViewHelper {
 
         return movies.stream()
                      .sorted((m1, m2) -> m2.getName().compareTo(m1.getName()))
-                     .map(movie -> {
-                         final VerticalLayout posterLayout = new VerticalLayout();
-                         posterLayout.setMargin(false);
-                         posterLayout.setSpacing(true);
-                         posterLayout.setSizeFull();
-                         final Image image = new Image(null, posterResourceFor(movie));
-                         image.setSizeFull();
-                         image.addClickListener(event -> {
-                             ClassNavigator.navigateTo(WatchMovie.class, movieContextPathFor(movie));
-                         });
-                         posterLayout.addComponent(image);
-
-                         final GridLayout movieDetails = new GridLayout(2, 3);
-                         movieDetails.setMargin(false);
-                         movieDetails.setSpacing(false);
-                         posterLayout.addComponents(movieDetails);
-                         final LocalDateTime movieDateTime = movie.getDateTime();
-                         movieDetails.addComponents(new Label("Date: "),
-                                                    new Label(movieDateTime.toLocalDate()
-                                                                           .format(DATE_FORMATTER)));
-                         movieDetails.addComponents(new Label("Time: "),
-                                                    new Label(movieDateTime.toLocalTime()
-                                                                           .format(TIME_FORMATTER)));
-                         final Duration runningTime = movieHelper.runningLengthFor(movie);
-                         movieDetails.addComponents(new Label("Length:&nbsp;",
-                                                              ContentMode.HTML),
-                                                    new Label(runningTime.toMinutes() + ":" +
-                                                                      runningTime.minus(
-                                                                              runningTime.toMinutes(),
-                                                                              ChronoUnit.MINUTES)
-                                                                                 .getSeconds()));
-                         return posterLayout;
-                     })
+                     .map(this::buildPosterFor)
                      .collect(toList())
                      .toArray(new Component[movies.size()]);
     }
 
+    /**
+     * Builds the poster of a movie: its poster image, which opens the movie when clicked, and its details.
+     *
+     * @param movie Movie
+     * @return Poster component
+     */
+    public Component buildPosterFor(final Movie movie) {
+        checkNotNull(movie, "movie cannot be null");
+
+        final VerticalLayout posterLayout = new VerticalLayout();
+        posterLayout.setMargin(false);
+        posterLayout.setSpacing(true);
+        posterLayout.setSizeFull();
+        final Image image = new Image(null, posterResourceFor(movie));
+        image.setSizeFull();
+        image.addClickListener(event -> {
+            ClassNavigator.navigateTo(WatchMovie.class, movieContextPathFor(movie));
+        });
+        posterLayout.addComponent(image);
+
+        final GridLayout movieDetails = new GridLayout(2, 3);
+        movieDetails.setMargin(false);
+        movieDetails.setSpacing(false);
+        posterLayout.addComponents(movieDetails);
+        final LocalDateTime movieDateTime = movie.getDateTime();
+        movieDetails.addComponents(new Label("Date: "),
+                                   new Label(movieDateTime.toLocalDate()
+                                                          .format(DATE_FORMATTER)));
+        movieDetails.addComponents(new Label("Time: "),
+                                   new Label(movieDateTime.toLocalTime()
+                                                          .format(TIME_FORMATTER)));
+        movieDetails.addComponents(new Label("Length:&nbsp;",
+                                             ContentMode.HTML),
+                                   new Label(movieFileManager.getMetadataFor(movie)
+                                                             .map(MovieMetadata::getDuration)
+                                                             .map(MovieViewHelper::formatRunningTime)
+                                                             .orElse("?")));
+        return posterLayout;
+    }
+
+    private static String formatRunningTime(final Duration runningTime) {
+        return runningTime.toMinutes() + ":" +
+                runningTime.minus(runningTime.toMinutes(), ChronoUnit.MINUTES).getSeconds();
+    }
+
     private Component dateSeparatorComponentFor(final LocalDate date) {
         final HorizontalLayout components = new HorizontalLayout();
         components.setWidth(100, Sizeable.Unit.PERCENTAGE);
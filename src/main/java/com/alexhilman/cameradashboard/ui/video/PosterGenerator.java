@@ -0,0 +1,129 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Generates poster images in the background on a small, bounded pool of workers, so FFmpeg decoding never runs on a
+ * thread serving a view. A poster is generated at most once at a time; concurrent requests share its outcome. Requests
+ * beyond the queue capacity are dropped and will be requested again the next time the movie is listed.
+ */
+@ThreadSafe
+class PosterGenerator {
+    private static final Logger LOG = LogManager.getLogger(PosterGenerator.class);
+    private static final int POSTER_FRAME_TIMESTAMP_MILLIS = 3000;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final MovieHelper movieHelper;
+    private final ConcurrentMap<File, CompletableFuture<File>> pendingPosters = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+
+    PosterGenerator(final MovieHelper movieHelper) {
+        this.movieHelper = checkNotNull(movieHelper, "movieHelper cannot be null");
+
+        final int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        executor = new ThreadPoolExecutor(workers,
+                                          workers,
+                                          0L,
+                                          TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                                          new ThreadFactoryBuilder().setNameFormat("poster-generator-%d")
+                                                                    .setDaemon(true)
+                                                                    .build());
+    }
+
+    /**
+     * Queues generation of the poster image for a movie unless the poster exists or is already queued.
+     *
+     * @param movie Movie needing a poster image
+     * @return Poster image file, once it exists; fails if the poster could not be generated or was dropped
+     */
+    CompletableFuture<File> generate(final Movie movie) {
+        checkNotNull(movie, "movie cannot be null");
+
+        final File posterImageFile = movie.getPosterImageFile();
+        if (posterImageFile.exists()) {
+            return CompletableFuture.completedFuture(posterImageFile);
+        }
+        final CompletableFuture<File> poster = new CompletableFuture<>();
+        final CompletableFuture<File> pending = pendingPosters.putIfAbsent(posterImageFile, poster);
+        if (pending != null) {
+            return pending;
+        }
+        if (posterImageFile.exists()) {
+            // generated since it was looked for
+            finish(posterImageFile, poster, null);
+            return poster;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    writePoster(movie.getMovieFile(), posterImageFile);
+                    finish(posterImageFile, poster, null);
+                } catch (Exception e) {
+                    LOG.warn("Poster image could not be created for file: " + movie.getMovieFile().getAbsolutePath() +
+                                     ": " + e.getMessage());
+                    finish(posterImageFile, poster, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Poster generation queue is full; skipping {} for now", movie.getName());
+            finish(posterImageFile, poster, e);
+        }
+        return poster;
+    }
+
+    /**
+     * Gets the outcome of the poster's generation, if it is pending, so the poster can be handled once it is written.
+     *
+     * @param posterImageFile Poster image file
+     * @return The pending generation, or a completed one if none is pending
+     */
+    CompletableFuture<File> pendingGenerationOf(final File posterImageFile) {
+        checkNotNull(posterImageFile, "posterImageFile cannot be null");
+
+        final CompletableFuture<File> pending = pendingPosters.get(posterImageFile);
+        return pending != null ? pending : CompletableFuture.completedFuture(posterImageFile);
+    }
+
+    private void finish(final File posterImageFile, final CompletableFuture<File> poster, final Exception failure) {
+        pendingPosters.remove(posterImageFile, poster);
+        if (failure == null) {
+            poster.complete(posterImageFile);
+        } else {
+            poster.completeExceptionally(failure);
+        }
+    }
+
+    private void writePoster(final File movieFile, final File posterImageFile) throws Exception {
+        final File tmpFile = new File(posterImageFile.getParentFile(), "." + posterImageFile.getName() + ".tmp");
+        try (final FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(movieHelper.grabJpgFrame(movieFile, POSTER_FRAME_TIMESTAMP_MILLIS));
+        } catch (Exception e) {
+            tmpFile.delete();
+            throw e;
+        }
+
+        if (!tmpFile.renameTo(posterImageFile)) {
+            tmpFile.delete();
+            throw new IOException("Could not move poster image " + tmpFile.getAbsolutePath() + " to " +
+                                          posterImageFile.getAbsolutePath());
+        }
+    }
+}
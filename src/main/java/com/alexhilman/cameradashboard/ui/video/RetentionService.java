@@ -0,0 +1,144 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.inject.Named;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the storage volume from filling up. Once disk usage exceeds the high watermark, the oldest recordings of the
+ * rotating and continuous pools are evicted in batches until usage drops below the low watermark; saved movies are
+ * never touched. Batches are paced so eviction does not compete with active recordings for I/O.
+ */
+@Singleton
+public class RetentionService {
+    private static final Logger LOG = LogManager.getLogger(RetentionService.class);
+    public static final double DEFAULT_HIGH_WATERMARK = 0.90;
+    public static final double DEFAULT_LOW_WATERMARK = 0.80;
+    public static final int DEFAULT_BATCH_SIZE = 20;
+    public static final double DEFAULT_MAX_EVICTIONS_PER_SECOND = 20;
+    private static final long CHECK_INTERVAL_SECONDS = 30;
+
+    private final MovieFileManager movieFileManager;
+    private volatile double highWatermark = DEFAULT_HIGH_WATERMARK;
+    private volatile double lowWatermark = DEFAULT_LOW_WATERMARK;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile double maxEvictionsPerSecond = DEFAULT_MAX_EVICTIONS_PER_SECOND;
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    public RetentionService(final MovieFileManager movieFileManager) {
+        this.movieFileManager = checkNotNull(movieFileManager, "movieFileManager cannot be null");
+    }
+
+    @Inject(optional = true)
+    void setHighWatermark(@Named("cameradashboard.retention.highWatermark") final double highWatermark) {
+        this.highWatermark = highWatermark;
+    }
+
+    @Inject(optional = true)
+    void setLowWatermark(@Named("cameradashboard.retention.lowWatermark") final double lowWatermark) {
+        this.lowWatermark = lowWatermark;
+    }
+
+    @Inject(optional = true)
+    void setBatchSize(@Named("cameradashboard.retention.batchSize") final int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    @Inject(optional = true)
+    void setMaxEvictionsPerSecond(@Named("cameradashboard.retention.maxEvictionsPerSecond") final double maxEvictionsPerSecond) {
+        checkArgument(maxEvictionsPerSecond > 0, "maxEvictionsPerSecond must be positive");
+        this.maxEvictionsPerSecond = maxEvictionsPerSecond;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        checkArgument(lowWatermark < highWatermark, "low watermark must be below the high watermark");
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("retention")
+                                                                                         .setDaemon(true)
+                                                                                         .build());
+        scheduler.scheduleWithFixedDelay(this::checkUsage, 0, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Share of the storage volume in use.
+     *
+     * @return Usage between 0 and 1
+     */
+    public double getUsage() {
+        final long totalSpace = movieFileManager.getTotalSpace();
+        if (totalSpace <= 0) {
+            return 0;
+        }
+        return 1.0 - (double) movieFileManager.getUsableSpace() / totalSpace;
+    }
+
+    private void checkUsage() {
+        try {
+            enforceWatermarks();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOG.error("Could not evict old recordings", e);
+        }
+    }
+
+    /**
+     * Evicts batches of the oldest recordings while usage is above the low watermark, if it exceeded the high
+     * watermark.
+     *
+     * @return Number of recordings evicted
+     * @throws InterruptedException If interrupted while pacing the batches
+     */
+    int enforceWatermarks() throws InterruptedException {
+        double usage = getUsage();
+        if (usage <= highWatermark) {
+            return 0;
+        }
+        LOG.info("Storage is {}% full; evicting the oldest recordings", Math.round(usage * 100));
+
+        final long pauseMillis = Math.round(batchSize * 1000 / maxEvictionsPerSecond);
+        int evicted = 0;
+        int failed = 0;
+        while (usage > lowWatermark) {
+            final Eviction eviction = movieFileManager.evictOldestRecordings(batchSize);
+            if (eviction.isEmpty()) {
+                LOG.warn("Storage is {}% full, but no recordings are left to evict; {} could not be deleted",
+                         Math.round(usage * 100),
+                         failed);
+                break;
+            }
+            evicted += eviction.getEvicted();
+            failed += eviction.getFailed();
+            usage = getUsage();
+            if (usage > lowWatermark) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+        LOG.info("Evicted {} recordings and could not delete {}; storage is {}% full",
+                 evicted,
+                 failed,
+                 Math.round(usage * 100));
+        return evicted;
+    }
+}
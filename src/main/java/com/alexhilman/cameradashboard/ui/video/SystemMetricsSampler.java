@@ -0,0 +1,196 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Samples the storage and memory usage once for the whole application and hands the samples to every subscriber.
+ * Storage is sampled every {@value #STORAGE_INTERVAL_SECONDS} seconds and memory every
+ * {@value #MEMORY_INTERVAL_MILLIS} milliseconds.
+ * <p>
+ * Samples are delivered through the executor each subscriber gives, such as {@code ui::access}. A subscriber gets
+ * at most one delivery at a time; samples taken while one is pending replace the sample it will see.
+ */
+@Singleton
+@ThreadSafe
+public class SystemMetricsSampler {
+    private static final Logger LOG = LogManager.getLogger(SystemMetricsSampler.class);
+    static final long STORAGE_INTERVAL_SECONDS = 10;
+    static final long MEMORY_INTERVAL_MILLIS = 750;
+
+    private final MovieFileManager movieFileManager;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile SystemMetrics latest = new SystemMetrics(0, 0, 0, 0);
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    public SystemMetricsSampler(final MovieFileManager movieFileManager) {
+        this.movieFileManager = checkNotNull(movieFileManager, "movieFileManager cannot be null");
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("system-metrics")
+                                                                                         .setDaemon(true)
+                                                                                         .build());
+        scheduler.scheduleWithFixedDelay(this::sampleStorage, 0, STORAGE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::sampleMemory, 0, MEMORY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Subscribes to the samples, starting with the latest one. A subscription whose executor rejects a delivery, as
+     * {@code ui::access} does once the UI is detached, is closed.
+     *
+     * @param executor Executor to deliver the samples through
+     * @param consumer Consumer of the samples
+     * @return Subscription, which must be closed once the samples are no longer needed
+     */
+    public Subscription subscribe(final Executor executor, final Consumer<SystemMetrics> consumer) {
+        checkNotNull(executor, "executor cannot be null");
+        checkNotNull(consumer, "consumer cannot be null");
+
+        final Subscription subscription = new Subscription(executor, consumer);
+        subscriptions.add(subscription);
+        subscription.offer(latest);
+        return subscription;
+    }
+
+    public SystemMetrics getLatest() {
+        return latest;
+    }
+
+    int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    void sampleStorage() {
+        try {
+            final long totalSpace = movieFileManager.getTotalSpace();
+            final long usableSpace = movieFileManager.getUsableSpace();
+            publish(latest.withStorage(totalSpace, usableSpace));
+        } catch (RuntimeException e) {
+            LOG.warn("Could not sample storage usage", e);
+        }
+    }
+
+    void sampleMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        publish(latest.withMemory(runtime.totalMemory() - runtime.freeMemory(), runtime.maxMemory()));
+    }
+
+    // samples are only taken on the scheduler's thread
+    private void publish(final SystemMetrics metrics) {
+        latest = metrics;
+        for (final Subscription subscription : subscriptions) {
+            subscription.offer(metrics);
+        }
+    }
+
+    /**
+     * A subscriber to the samples.
+     */
+    public class Subscription implements AutoCloseable {
+        private final Executor executor;
+        private final Consumer<SystemMetrics> consumer;
+        private final AtomicReference<SystemMetrics> pending = new AtomicReference<>();
+
+        private Subscription(final Executor executor, final Consumer<SystemMetrics> consumer) {
+            this.executor = executor;
+            this.consumer = consumer;
+        }
+
+        private void offer(final SystemMetrics metrics) {
+            if (pending.getAndSet(metrics) != null) {
+                // the delivery already pending will pick this sample up
+                return;
+            }
+
+            try {
+                executor.execute(this::deliver);
+            } catch (RuntimeException e) {
+                LOG.debug("Closing subscription whose executor rejected a sample", e);
+                close();
+            }
+        }
+
+        private void deliver() {
+            final SystemMetrics metrics = pending.getAndSet(null);
+            if (metrics != null && subscriptions.contains(this)) {
+                consumer.accept(metrics);
+            }
+        }
+
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+        }
+    }
+
+    @Immutable
+    public static class SystemMetrics {
+        private final long totalSpace;
+        private final long usableSpace;
+        private final long usedMemory;
+        private final long maxMemory;
+
+        SystemMetrics(final long totalSpace, final long usableSpace, final long usedMemory, final long maxMemory) {
+            this.totalSpace = totalSpace;
+            this.usableSpace = usableSpace;
+            this.usedMemory = usedMemory;
+            this.maxMemory = maxMemory;
+        }
+
+        public long getTotalSpace() {
+            return totalSpace;
+        }
+
+        public long getUsableSpace() {
+            return usableSpace;
+        }
+
+        public long getUsedSpace() {
+            return totalSpace - usableSpace;
+        }
+
+        public long getUsedMemory() {
+            return usedMemory;
+        }
+
+        public long getMaxMemory() {
+            return maxMemory;
+        }
+
+        private SystemMetrics withStorage(final long totalSpace, final long usableSpace) {
+            return new SystemMetrics(totalSpace, usableSpace, usedMemory, maxMemory);
+        }
+
+        private SystemMetrics withMemory(final long usedMemory, final long maxMemory) {
+            return new SystemMetrics(totalSpace, usableSpace, usedMemory, maxMemory);
+        }
+    }
+}
@@ -4,23 +4,43 @@ import com.alexhilman.cameradashboard.ui.conf.Camera;
 import com.alexhilman.cameradashboard.ui.video.CameraWatcher;
 import com.google.inject.Inject;
 import com.vaadin.guice.annotation.GuiceView;
+import com.vaadin.icons.VaadinIcons;
 import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewBeforeLeaveEvent;
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.Sizeable;
 import com.vaadin.server.StreamResource;
+import com.vaadin.shared.Registration;
 import com.vaadin.ui.Component;
+import com.vaadin.ui.Image;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.UI;
 import com.vaadin.ui.VerticalLayout;
-import com.vaadin.ui.Video;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.util.Base64;
-import java.util.Comparator;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
+ * Live view of every camera. Viewers observe the stream the camera is already being recorded from, so the camera
+ * serves a single connection no matter how many viewers there are. A camera which is not streaming yet shows a
+ * placeholder until it is.
  */
 @GuiceView("cameras")
 public class Cameras implements View {
+    private static final Logger LOG = LogManager.getLogger(Cameras.class);
+    private static final String DEFAULT_STREAM_CONTENT_TYPE = "multipart/x-mixed-replace";
+    private static final int RETRY_INTERVAL_MILLIS = 2000;
+
     private final CameraWatcher cameraWatcher;
+    private final Map<Camera, Panel> waitingCameras = new LinkedHashMap<>();
     private VerticalLayout layout;
+    private UI ui;
+    private Registration retries;
 
     @Inject
     public Cameras(final CameraWatcher cameraWatcher) {
@@ -29,45 +49,103 @@ public class Cameras implements View {
 
     @Override
     public Component getViewComponent() {
-        final Camera camera = cameraWatcher.getCameras().get(0);
+        ui = UI.getCurrent();
+        waitingCameras.clear();
 
-        // TODO maybe I just need to open a new stream to the camera's viewport and redirect that stream, rather than observing the recording stream
         layout = new VerticalLayout();
-        layout.setSizeFull();
-        final StreamResource source =
-                new StreamResource(() -> {
-                    try {
-                        return camera.getStreams()
-                                     .stream()
-                                     .sorted(Comparator.comparingInt(s -> s.getQuality().ordinal()))
-                                     .findFirst()
-                                     .map(s -> {
-                                         final HttpURLConnection urlConnection;
-                                         try {
-                                             urlConnection = (HttpURLConnection) s.getUrl().openConnection();
-                                             if (camera.getUsername() != null && camera.getPassword() != null) {
-                                                 String userpass = camera.getUsername() + ":" + camera.getPassword();
-                                                 String basicAuth = "Basic " + new String(Base64.getEncoder()
-                                                                                                .encode(userpass.getBytes()));
-                                                 urlConnection.setRequestProperty("Authorization", basicAuth);
-                                             }
-                                         } catch (IOException e) {
-                                             throw new RuntimeException(e);
-                                         }
-                                         return urlConnection;
-                                     })
-                                     .orElseThrow(() -> new RuntimeException("No stream found"))
-                                     .getInputStream();
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                },
-                                   "live.mp4");
-        source.setMIMEType("video/x-motion-jpeg");
-        final Video liveVideo = new Video("Live View of " + camera.getName(), source);
-        liveVideo.setAutoplay(true);
-        layout.addComponentsAndExpand(liveVideo);
+        layout.setMargin(true);
+        layout.setSpacing(true);
+        layout.setWidth(100, Sizeable.Unit.PERCENTAGE);
+
+        cameraWatcher.getCameras()
+                     .forEach(camera -> {
+                         final Panel panel = new Panel("Live View of " + camera.getName());
+                         panel.setIcon(VaadinIcons.CAMERA);
+                         panel.setWidth(100, Sizeable.Unit.PERCENTAGE);
+                         showLiveView(camera, panel);
+                         layout.addComponent(panel);
+                     });
 
         return layout;
     }
+
+    @Override
+    public void beforeLeave(final ViewBeforeLeaveEvent event) {
+        waitingCameras.clear();
+        stopRetrying();
+        event.navigate();
+    }
+
+    /**
+     * Shows the live view of a camera if it is streaming, or a placeholder to be replaced on a later retry. Must
+     * hold the UI lock.
+     */
+    private void showLiveView(final Camera camera, final Panel panel) {
+        if (cameraWatcher.getStreamContentType(camera).isPresent()) {
+            waitingCameras.remove(camera);
+            panel.setContent(buildLiveViewFor(camera, panel));
+        } else {
+            waitFor(camera, panel);
+        }
+        updateRetries();
+    }
+
+    private void waitFor(final Camera camera, final Panel panel) {
+        final Label placeholder = new Label("Waiting for " + camera.getName() + " to stream...");
+        placeholder.setIcon(VaadinIcons.HOURGLASS);
+        panel.setContent(placeholder);
+        waitingCameras.put(camera, panel);
+    }
+
+    private void updateRetries() {
+        if (waitingCameras.isEmpty()) {
+            stopRetrying();
+        } else if (retries == null) {
+            retries = ui.addPollListener(event -> new ArrayList<>(waitingCameras.entrySet())
+                    .forEach(waiting -> showLiveView(waiting.getKey(), waiting.getValue())));
+            ui.setPollInterval(RETRY_INTERVAL_MILLIS);
+        }
+    }
+
+    private void stopRetrying() {
+        if (retries != null) {
+            retries.remove();
+            retries = null;
+            ui.setPollInterval(-1);
+        }
+    }
+
+    private Component buildLiveViewFor(final Camera camera, final Panel panel) {
+        final StreamResource source = new StreamResource(() -> observe(camera), "live-" + camera.getName()) {
+            @Override
+            public DownloadStream getStream() {
+                // the multipart boundary is only known once the camera's stream is open
+                final DownloadStream stream = super.getStream();
+                if (stream.getStream() == null) {
+                    // the camera stopped streaming since the view was shown; called holding the session lock
+                    waitFor(camera, panel);
+                    updateRetries();
+                    return stream;
+                }
+                cameraWatcher.getStreamContentType(camera)
+                             .ifPresent(stream::setContentType);
+                return stream;
+            }
+        };
+        source.setMIMEType(DEFAULT_STREAM_CONTENT_TYPE);
+        source.setCacheTime(0);
+
+        final Image liveView = new Image(null, source);
+        liveView.setWidth(100, Sizeable.Unit.PERCENTAGE);
+        return liveView;
+    }
+
+    private InputStream observe(final Camera camera) {
+        try {
+            return cameraWatcher.observe(camera);
+        } catch (RuntimeException e) {
+            LOG.warn("Cannot show live view of {}", camera.getName(), e);
+            return null;
+        }
+    }
 }
@@ -1,7 +1,9 @@
 package com.alexhilman.cameradashboard.ui.view;
 
+import com.alexhilman.cameradashboard.ui.video.CameraWatcher;
 import com.alexhilman.cameradashboard.ui.video.MovieFileManager;
 import com.alexhilman.cameradashboard.ui.video.MovieViewHelper;
+import com.alexhilman.cameradashboard.ui.video.SystemMetricsSampler;
 import com.google.inject.Inject;
 import com.vaadin.guice.annotation.GuiceView;
 import com.vaadin.icons.VaadinIcons;
@@ -19,17 +21,18 @@ import com.vaadin.ui.ProgressBar;
 import com.vaadin.ui.UI;
 import com.vaadin.ui.VerticalLayout;
 import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.time.Instant;
 import java.time.ZoneId;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  */
@@ -37,20 +40,31 @@ import java.util.concurrent.TimeUnit;
 public class Dashboard implements View {
     private static final Logger LOG = LogManager.getLogger(Dashboard.class);
     private static final NumberFormat NUMBER_FORMAT = new DecimalFormat("#,##0.0");
+    private static final int COLUMNS = 3;
 
     private final MovieFileManager movieFileManager;
     private final MovieViewHelper movieViewHelper;
-    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private final CameraWatcher cameraWatcher;
+    private final SystemMetricsSampler systemMetricsSampler;
     private VerticalLayout rootLayout;
     private ProgressBar storageBar;
     private Panel todayMovies;
     private ProgressBar memoryBar;
+    private GridLayout posterGrid;
+    private Map<File, Component> posters;
+    private final Map<File, Component> pendingPosters = new LinkedHashMap<>();
+    private volatile Disposable newMovies;
+    private SystemMetricsSampler.Subscription metricsSubscription;
 
     @Inject
     public Dashboard(final MovieFileManager movieFileManager,
-                     final MovieViewHelper movieViewHelper) {
+                     final MovieViewHelper movieViewHelper,
+                     final CameraWatcher cameraWatcher,
+                     final SystemMetricsSampler systemMetricsSampler) {
         this.movieFileManager = movieFileManager;
         this.movieViewHelper = movieViewHelper;
+        this.cameraWatcher = cameraWatcher;
+        this.systemMetricsSampler = systemMetricsSampler;
     }
 
     public static String humanReadableByteCount(long bytes) {
@@ -84,78 +98,146 @@ public class Dashboard implements View {
 
     @Override
     public void beforeLeave(final ViewBeforeLeaveEvent event) {
-        executorService.shutdownNow();
+        closeMetricsSubscription();
+        stopWatchingNewMovies();
+        event.navigate();
     }
 
     @Override
     public void enter(final ViewChangeListener.ViewChangeEvent event) {
         final UI ui = UI.getCurrent();
 
-        executorService.scheduleWithFixedDelay(
-                () -> {
-                    if (!ui.isAttached()) {
-                        executorService.shutdownNow();
-                        return;
-                    }
-
-                    final long usableSpace = movieFileManager.getUsableSpace();
-                    final long totalSpace = movieFileManager.getTotalSpace();
-                    final long usedSpace = totalSpace - usableSpace;
-                    ui.access(() -> {
-                        final float progress = (float) ((double) usedSpace / (double) totalSpace);
-                        storageBar.setValue(progress);
-                        storageBar.setCaption("Storage space: " + humanReadableByteCount(usedSpace) +
-                                                      " used out of " + humanReadableByteCount(totalSpace) +
-                                                      " (" + humanReadableByteCount(usableSpace) + " free)");
-                    });
-                },
-                0,
-                10,
-                TimeUnit.SECONDS
-        );
-
-        executorService.scheduleWithFixedDelay(
-                () -> {
-                    if (!ui.isAttached()) {
-                        executorService.shutdownNow();
-                        return;
-                    }
-
-                    final Runtime runtime = Runtime.getRuntime();
-                    ui.access(() -> {
-                        final long usedMemory = runtime.totalMemory() - runtime.freeMemory();
-                        final long totalMemory = runtime.maxMemory();
-                        final double usedMemoryMB = usedMemory / 1024.0 / 1024.0;
-                        memoryBar.setValue((float) usedMemory / (float) totalMemory);
-                        memoryBar.setCaption("Used memory: " + NUMBER_FORMAT.format(usedMemoryMB) + "MB");
-                    });
-                },
-                0,
-                750,
-                TimeUnit.MILLISECONDS);
+        closeMetricsSubscription();
+        metricsSubscription = systemMetricsSampler.subscribe(ui::access, this::showMetrics);
 
         todayMovies.setContent(buildLoadingSpinner());
+        posters = null;
+        posterGrid = null;
+        pendingPosters.clear();
+        stopWatchingNewMovies();
+        newMovies = cameraWatcher.observeNewMovies()
+                                 .observeOn(Schedulers.computation())
+                                 .subscribe(movie -> {
+                                     if (!ui.isAttached()) {
+                                         stopWatchingNewMovies();
+                                         return;
+                                     }
+                                     final Component poster = movieViewHelper.buildPosterFor(movie);
+                                     ui.access(() -> {
+                                         showNewPoster(movie.getMovieFile(), poster);
+                                         ui.push();
+                                     });
+                                 }, e -> LOG.warn("Stopped receiving new movies", e));
+
         Flowable.fromCallable(() -> movieFileManager.getMoviesInRange(midnightThisMorning(), Instant.now()))
-                .map(movieViewHelper::buildPostersFor)
                 .subscribeOn(Schedulers.computation())
-                .subscribe(components -> {
+                .subscribe(movies -> {
+                    final Component[] components = movieViewHelper.buildPostersFor(movies);
                     ui.access(() -> {
-                        if (components.length == 0) {
-                            todayMovies.setContent(new Label("No videos for this day"));
-                        } else {
-                            final int columns = 3;
-                            final int rows = components.length / columns + (components.length % columns > 0 ? 1 : 0);
-                            final GridLayout content = new GridLayout(columns, rows, components);
-                            content.setSpacing(true);
-                            content.setMargin(true);
-                            content.setWidth(100, Sizeable.Unit.PERCENTAGE);
-                            todayMovies.setContent(content);
+                        posters = new LinkedHashMap<>();
+                        for (int i = 0; i < components.length; i++) {
+                            posters.put(movies.get(i).getMovieFile(), components[i]);
                         }
+                        // movies captured while loading may or may not have been found
+                        pendingPosters.forEach(this::addNewPoster);
+                        pendingPosters.clear();
+                        showPosters();
                         ui.push();
                     });
                 });
     }
 
+    /**
+     * Shows the poster of a movie captured while the view is open, ahead of the older ones. Must hold the UI lock.
+     */
+    private void showNewPoster(final File movieFile, final Component poster) {
+        if (posters == null) {
+            pendingPosters.put(movieFile, poster);
+        } else if (addNewPoster(movieFile, poster)) {
+            if (posterGrid == null) {
+                showPosters();
+            } else {
+                insertFirstPoster(poster);
+            }
+        }
+    }
+
+    /**
+     * Puts a poster in the top left cell, opening a new top row when the first one is full so that only the few
+     * posters of the first row ever move.
+     */
+    private void insertFirstPoster(final Component poster) {
+        if (posterGrid.getComponent(COLUMNS - 1, 0) != null) {
+            posterGrid.insertRow(0);
+        } else {
+            for (int column = COLUMNS - 2; column >= 0; column--) {
+                final Component shifted = posterGrid.getComponent(column, 0);
+                if (shifted != null) {
+                    posterGrid.removeComponent(shifted);
+                    posterGrid.addComponent(shifted, column + 1, 0);
+                }
+            }
+        }
+        posterGrid.addComponent(poster, 0, 0);
+    }
+
+    private boolean addNewPoster(final File movieFile, final Component poster) {
+        if (posters.containsKey(movieFile)) {
+            return false;
+        }
+
+        final Map<File, Component> newestFirst = new LinkedHashMap<>();
+        newestFirst.put(movieFile, poster);
+        newestFirst.putAll(posters);
+        posters = newestFirst;
+        return true;
+    }
+
+    private void showMetrics(final SystemMetricsSampler.SystemMetrics metrics) {
+        if (metrics.getTotalSpace() > 0) {
+            final long usedSpace = metrics.getUsedSpace();
+            storageBar.setValue((float) ((double) usedSpace / (double) metrics.getTotalSpace()));
+            storageBar.setCaption("Storage space: " + humanReadableByteCount(usedSpace) +
+                                          " used out of " + humanReadableByteCount(metrics.getTotalSpace()) +
+                                          " (" + humanReadableByteCount(metrics.getUsableSpace()) + " free)");
+        }
+        if (metrics.getMaxMemory() > 0) {
+            final double usedMemoryMB = metrics.getUsedMemory() / 1024.0 / 1024.0;
+            memoryBar.setValue((float) metrics.getUsedMemory() / (float) metrics.getMaxMemory());
+            memoryBar.setCaption("Used memory: " + NUMBER_FORMAT.format(usedMemoryMB) + "MB");
+        }
+    }
+
+    private void closeMetricsSubscription() {
+        if (metricsSubscription != null) {
+            metricsSubscription.close();
+            metricsSubscription = null;
+        }
+    }
+
+    private void stopWatchingNewMovies() {
+        final Disposable subscription = newMovies;
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private void showPosters() {
+        if (posters.isEmpty()) {
+            posterGrid = null;
+            todayMovies.setContent(new Label("No videos for this day"));
+            return;
+        }
+
+        final int rows = posters.size() / COLUMNS + (posters.size() % COLUMNS > 0 ? 1 : 0);
+        posterGrid = new GridLayout(COLUMNS, rows);
+        posterGrid.setSpacing(true);
+        posterGrid.setMargin(true);
+        posterGrid.setWidth(100, Sizeable.Unit.PERCENTAGE);
+        posters.values().forEach(posterGrid::addComponent);
+        todayMovies.setContent(posterGrid);
+    }
+
     private Component buildLoadingSpinner() {
         final HorizontalLayout layout = new HorizontalLayout();
         layout.setMargin(true);
@@ -1,23 +1,26 @@
 package com.alexhilman.cameradashboard.ui.view;
 
+import com.alexhilman.cameradashboard.ui.video.Movie;
 import com.alexhilman.cameradashboard.ui.video.MovieFileManager;
 import com.alexhilman.cameradashboard.ui.video.MovieViewHelper;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
+import com.vaadin.data.provider.DataProvider;
 import com.vaadin.guice.annotation.GuiceView;
 import com.vaadin.icons.VaadinIcons;
 import com.vaadin.navigator.View;
 import com.vaadin.navigator.ViewChangeListener;
-import com.vaadin.server.Sizeable;
 import com.vaadin.ui.*;
-import io.reactivex.Flowable;
-import io.reactivex.schedulers.Schedulers;
 
 import java.time.*;
+import java.util.List;
 
 /**
  */
 @GuiceView("movies")
 public class Movies implements View {
+    private static final int COLUMNS = 3;
+
     private final MovieFileManager movieFileManager;
     private final MovieViewHelper movieViewHelper;
     private Panel movies;
@@ -74,46 +77,39 @@ public class Movies implements View {
         loadMovies(midnightThisMorning(), Instant.now());
     }
 
+    /**
+     * Shows the movies in the range in a grid of posters. Rows are fetched from the catalog and built only as they
+     * are scrolled into view.
+     */
     private void loadMovies(final Instant from, final Instant to) {
-        final UI ui = UI.getCurrent();
-
-        movies.setContent(buildLoadingSpinner());
-
-        Flowable.fromCallable(() -> movieFileManager.getMoviesInRange(from, to))
-                .map(movieViewHelper::buildPostersFor)
-                .subscribeOn(Schedulers.computation())
-                .subscribe(components -> {
-                    ui.access(() -> {
-                        if (components.length == 0) {
-                            movies.setContent(new Label("No videos for this day"));
-                        } else {
-                            final int columns = 3;
-                            final int rows = components.length / columns + (components.length % columns > 0 ? 1 : 0);
-                            final GridLayout content = new GridLayout(columns, rows, components);
-                            content.setSpacing(true);
-                            content.setMargin(true);
-                            content.setWidth(100, Sizeable.Unit.PERCENTAGE);
-                            movies.setContent(content);
-                        }
-
-                        ui.push();
-                    });
-                });
-    }
-
-    private Component buildLoadingSpinner() {
-        final HorizontalLayout layout = new HorizontalLayout();
-        layout.setMargin(true);
-        layout.setSpacing(true);
-        layout.setSizeFull();
-
-        final ProgressBar progressBar = new ProgressBar();
-        progressBar.setIndeterminate(true);
-
-        layout.addComponent(progressBar);
-        layout.setComponentAlignment(progressBar, Alignment.MIDDLE_CENTER);
-
-        return layout;
+        if (movieFileManager.countMoviesInRange(from, to) == 0) {
+            movies.setContent(new Label("No videos for this day"));
+            return;
+        }
+
+        final DataProvider<List<Movie>, Void> rows = DataProvider.fromCallbacks(
+                query -> Lists.partition(movieFileManager.getMoviesInRange(from,
+                                                                           to,
+                                                                           query.getOffset() * COLUMNS,
+                                                                           query.getLimit() * COLUMNS),
+                                         COLUMNS)
+                              .stream(),
+                query -> (movieFileManager.countMoviesInRange(from, to) + COLUMNS - 1) / COLUMNS
+        );
+
+        final Grid<List<Movie>> content = new Grid<>(rows);
+        for (int i = 0; i < COLUMNS; i++) {
+            final int column = i;
+            content.addComponentColumn(row -> column < row.size()
+                    ? movieViewHelper.buildPosterFor(row.get(column))
+                    : new Label());
+        }
+        content.setHeaderVisible(false);
+        content.setSelectionMode(Grid.SelectionMode.NONE);
+        // the theme makes the rows as tall as a poster; Grid cannot set its row height before Vaadin 8.2
+        content.addStyleName("movie-posters");
+        content.setSizeFull();
+        movies.setContent(content);
     }
 
     private Instant midnightThisMorning() {
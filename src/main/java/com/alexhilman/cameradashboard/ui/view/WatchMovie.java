@@ -1,7 +1,7 @@
 package com.alexhilman.cameradashboard.ui.view;
 
 import com.alexhilman.cameradashboard.ui.conf.Camera;
-import com.alexhilman.cameradashboard.ui.conf.CameraConfiguration;
+import com.alexhilman.cameradashboard.ui.video.CameraWatcher;
 import com.alexhilman.cameradashboard.ui.video.Movie;
 import com.alexhilman.cameradashboard.ui.video.MovieFileManager;
 import com.alexhilman.cameradashboard.ui.video.MovieHelper;
@@ -24,7 +24,7 @@ public class WatchMovie implements View {
     private final MovieFileManager movieFileManager;
     private final MovieHelper movieHelper;
     private final MovieViewHelper movieViewHelper;
-    private final CameraConfiguration cameraConfiguration;
+    private final CameraWatcher cameraWatcher;
 
     private Video video;
 
@@ -32,11 +32,11 @@ public class WatchMovie implements View {
     public WatchMovie(final MovieFileManager movieFileManager,
                       final MovieHelper movieHelper,
                       final MovieViewHelper movieViewHelper,
-                      final CameraConfiguration cameraConfiguration) {
+                      final CameraWatcher cameraWatcher) {
         this.movieFileManager = movieFileManager;
         this.movieHelper = movieHelper;
         this.movieViewHelper = movieViewHelper;
-        this.cameraConfiguration = cameraConfiguration;
+        this.cameraWatcher = cameraWatcher;
     }
 
     @Override
@@ -69,12 +69,12 @@ public class WatchMovie implements View {
         }
 
         final Camera camera =
-                cameraConfiguration.getCameras()
-                                   .stream()
-                                   .filter(configuredCamera -> configuredCamera.getName().equals(cameraName))
-                                   .findFirst()
-                                   .orElseThrow(() -> new RuntimeException(
-                                           "Could not find configuration for camera \"" + cameraName + "\""));
+                cameraWatcher.getCameras()
+                             .stream()
+                             .filter(configuredCamera -> configuredCamera.getName().equals(cameraName))
+                             .findFirst()
+                             .orElseThrow(() -> new RuntimeException(
+                                     "Could not find configuration for camera \"" + cameraName + "\""));
 
         final Optional<Movie> optionalMovie = movieFileManager.findMovie(camera, fileName);
 
@@ -1,5 +1,6 @@
 package com.alexhilman.cameradashboard.ui.view.layout;
 
+import com.alexhilman.cameradashboard.ui.view.Cameras;
 import com.alexhilman.cameradashboard.ui.view.ClassNavigator;
 import com.alexhilman.cameradashboard.ui.view.Dashboard;
 import com.alexhilman.cameradashboard.ui.view.Movies;
@@ -43,10 +44,10 @@ public class RootLayout extends HorizontalLayout {
         homeButton.addStyleNames(ValoTheme.BUTTON_HUGE, "circle-button");
         actions.addComponent(homeButton);
 
-//        final Button camerasButton = new Button(VaadinIcons.MOVIE);
-//        camerasButton.addClickListener(event -> ClassNavigator.navigateTo(Cameras.class));
-//        camerasButton.addStyleNames(ValoTheme.BUTTON_HUGE, "circle-button");
-//        actions.addComponent(camerasButton);
+        final Button camerasButton = new Button(VaadinIcons.CAMERA);
+        camerasButton.addClickListener(event -> ClassNavigator.navigateTo(Cameras.class));
+        camerasButton.addStyleNames(ValoTheme.BUTTON_HUGE, "circle-button");
+        actions.addComponent(camerasButton);
 
         final Button moviesButton = new Button(VaadinIcons.FILM);
         moviesButton.addClickListener(event -> ClassNavigator.navigateTo(Movies.class));
@@ -3,9 +3,13 @@ package com.alexhilman.cameradashboard.ui.conf;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static com.alexhilman.cameradashboard.ui.CameraConfigurationReader.readCameraConfig;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
@@ -16,4 +20,36 @@ public class CameraConfigurationTest {
 
         assertThat(cameraConfiguration, is(notNullValue()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldFindRemovedAndAddedCameras() throws IOException {
+        final Camera kept = camera("kept", "http://localhost/kept");
+        final Camera removed = camera("removed", "http://localhost/removed");
+        final Camera added = camera("added", "http://localhost/added");
+        final CameraConfiguration previous = new CameraConfiguration(Arrays.asList(kept, removed));
+        final CameraConfiguration next = new CameraConfiguration(Arrays.asList(kept, added));
+
+        assertThat(previous.camerasNotIn(next), is(Collections.singletonList(removed)));
+        assertThat(next.camerasNotIn(previous), is(Collections.singletonList(added)));
+        assertThat(next.camerasNotIn(next), is(empty()));
+    }
+
+    @Test
+    public void shouldTreatChangedCameraAsRemovedAndAdded() throws IOException {
+        final Camera before = camera("front", "http://localhost/before");
+        final Camera after = camera("front", "http://localhost/after");
+        final CameraConfiguration previous = new CameraConfiguration(Collections.singletonList(before));
+        final CameraConfiguration next = new CameraConfiguration(Collections.singletonList(after));
+
+        assertThat(previous.camerasNotIn(next), is(Collections.singletonList(before)));
+        assertThat(next.camerasNotIn(previous), is(Collections.singletonList(after)));
+    }
+
+    private static Camera camera(final String name, final String url) throws IOException {
+        return new Camera(name,
+                          null,
+                          null,
+                          Collections.singletonList(new StreamSource(StreamSource.StreamQuality.high, new URL(url))),
+                          null);
+    }
+}
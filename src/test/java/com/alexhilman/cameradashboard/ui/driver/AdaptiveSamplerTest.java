@@ -0,0 +1,63 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class AdaptiveSamplerTest {
+    private static final long CHEAP = 1_000_000;
+
+    @Test
+    public void shouldSampleQuietSceneAtQuietRate() {
+        final AdaptiveSampler sampler = new AdaptiveSampler(10, 1, 1);
+
+        assertThat(sampledOf(sampler, 30), is(3));
+        assertThat(sampler.getMetrics().getSamplesPerSecond(), is(closeTo(1, 0.001)));
+    }
+
+    @Test
+    public void shouldSampleEveryFrameDuringMotion() {
+        final AdaptiveSampler sampler = new AdaptiveSampler(10, 1, 1);
+        sampler.recordSample(CHEAP, CHEAP, true);
+
+        assertThat(sampler.getInterval(), is(1));
+        assertThat(sampledOf(sampler, 5), is(5));
+    }
+
+    @Test
+    public void shouldBackOffGraduallyOnceMotionStops() {
+        final AdaptiveSampler sampler = new AdaptiveSampler(10, 1, 1);
+        sampler.recordSample(CHEAP, CHEAP, true);
+
+        sampler.recordSample(CHEAP, CHEAP, false);
+        assertThat(sampler.getInterval(), is(2));
+        sampler.recordSample(CHEAP, CHEAP, false);
+        assertThat(sampler.getInterval(), is(4));
+        sampler.recordSample(CHEAP, CHEAP, false);
+        assertThat(sampler.getInterval(), is(8));
+        sampler.recordSample(CHEAP, CHEAP, false);
+        assertThat(sampler.getInterval(), is(10));
+    }
+
+    @Test
+    public void shouldNotExceedCpuBudget() {
+        // 50ms per sample on a 10 fps camera with a budget of a quarter core affords 5 samples per second
+        final AdaptiveSampler sampler = new AdaptiveSampler(10, 1, 0.25);
+        sampler.recordSample(20_000_000, 30_000_000, true);
+
+        assertThat(sampler.getInterval(), is(2));
+        assertThat(sampler.getMetrics().getCpuShare(), is(closeTo(0.25, 0.001)));
+    }
+
+    private static int sampledOf(final AdaptiveSampler sampler, final int frames) {
+        int sampled = 0;
+        for (int i = 0; i < frames; i++) {
+            if (sampler.shouldSample()) {
+                sampled++;
+            }
+        }
+        return sampled;
+    }
+}
@@ -0,0 +1,155 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameRecorder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class FrameRingTest {
+    private FrameRecorder recorder;
+    private List<Long> recordedTimestamps;
+
+    @Before
+    public void setup() throws FrameRecorder.Exception {
+        recorder = mock(FrameRecorder.class);
+        recordedTimestamps = new ArrayList<>();
+        doAnswer(invocation -> {
+            recordedTimestamps.add(((Frame) invocation.getArguments()[0]).timestamp);
+            return null;
+        }).when(recorder).record(any(Frame.class));
+    }
+
+    @Test
+    public void shouldKeepOnlyTheNewestFrames() throws FrameRecorder.Exception {
+        final FrameRing ring = FrameRing.withCapacity(3);
+        for (int i = 0; i < 5; i++) {
+            ring.push(frame(i, true));
+        }
+
+        assertThat(ring.size(), is(3));
+        ring.drainTo(recorder);
+
+        assertThat(recordedTimestamps, contains(2L, 3L, 4L));
+        assertThat(ring.size(), is(0));
+    }
+
+    @Test
+    public void shouldStartRecordingAtOldestKeyFrame() throws FrameRecorder.Exception {
+        final FrameRing ring = FrameRing.withCapacity(4);
+        ring.push(frame(0, false));
+        ring.push(frame(1, true));
+        ring.push(frame(2, false));
+        ring.push(frame(3, true));
+
+        ring.drainTo(recorder);
+
+        assertThat(recordedTimestamps, contains(1L, 2L, 3L));
+    }
+
+    @Test
+    public void shouldKeepFramesBackToKeyFrameWhenKeyFramesAreFurtherApartThanCapacity()
+            throws FrameRecorder.Exception {
+        final FrameRing ring = FrameRing.withCapacity(3);
+        ring.push(frame(0, false));
+        ring.push(frame(1, true));
+        for (int i = 2; i < 6; i++) {
+            ring.push(frame(i, false));
+        }
+
+        assertThat(ring.size(), is(5));
+        ring.drainTo(recorder);
+
+        assertThat(recordedTimestamps, contains(1L, 2L, 3L, 4L, 5L));
+    }
+
+    @Test
+    public void shouldKeepFramesBackToMostRecentKeyFrameOnly() throws FrameRecorder.Exception {
+        final FrameRing ring = FrameRing.withCapacity(3);
+        ring.push(frame(0, true));
+        ring.push(frame(1, false));
+        ring.push(frame(2, true));
+        for (int i = 3; i < 6; i++) {
+            ring.push(frame(i, false));
+        }
+
+        ring.drainTo(recorder);
+
+        assertThat(recordedTimestamps, contains(2L, 3L, 4L, 5L));
+    }
+
+    @Test
+    public void shouldKeepOnlyNewestFramesWhenKeyFrameIsTooFarBack() {
+        final FrameRing ring = FrameRing.withCapacity(3);
+        ring.push(frame(0, true));
+        for (int i = 1; i < 7; i++) {
+            ring.push(frame(i, false));
+        }
+
+        assertThat(ring.size(), is(3));
+    }
+
+    @Test
+    public void shouldAllocateOnlyCapacityForKeyFramesOnly() {
+        final FrameRing ring = FrameRing.withCapacity(5);
+        for (int i = 0; i < 50; i++) {
+            ring.push(frame(i, true));
+        }
+
+        assertThat(ring.size(), is(5));
+        assertThat(ring.allocatedFrames(), is(5));
+    }
+
+    @Test
+    public void shouldAllocateBeyondCapacityOnlyBackToKeyFrame() {
+        final FrameRing ring = FrameRing.withCapacity(3);
+        ring.push(frame(0, true));
+        for (int i = 1; i < 5; i++) {
+            ring.push(frame(i, false));
+        }
+
+        assertThat(ring.size(), is(5));
+        assertThat(ring.allocatedFrames(), is(5));
+    }
+
+    @Test
+    public void shouldCopyFrameImages() throws FrameRecorder.Exception {
+        final FrameRing ring = FrameRing.withCapacity(2);
+        final Frame source = frame(0, true);
+        ring.push(source);
+        ((ByteBuffer) source.image[0]).put(0, (byte) 42);
+
+        final List<Byte> firstBytes = new ArrayList<>();
+        doAnswer(invocation -> {
+            firstBytes.add(((ByteBuffer) ((Frame) invocation.getArguments()[0]).image[0]).get(0));
+            return null;
+        }).when(recorder).record(any(Frame.class));
+        ring.drainTo(recorder);
+
+        assertThat(firstBytes, contains((byte) 0));
+    }
+
+    private Frame frame(final long timestamp, final boolean keyFrame) {
+        final Frame frame = new Frame();
+        frame.imageWidth = 4;
+        frame.imageHeight = 2;
+        frame.imageDepth = Frame.DEPTH_UBYTE;
+        frame.imageChannels = 3;
+        frame.imageStride = 12;
+        frame.image = new Buffer[]{ByteBuffer.allocateDirect(24)};
+        frame.keyFrame = keyFrame;
+        frame.timestamp = timestamp;
+        return frame;
+    }
+}
@@ -0,0 +1,106 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class MotionClipRecorderTest {
+    private List<String> events;
+    private List<File> finishedClips;
+    private RecordingRecorder recorder;
+
+    @Before
+    public void setup() {
+        events = new ArrayList<>();
+        finishedClips = new ArrayList<>();
+        recorder = new RecordingRecorder();
+    }
+
+    @Test
+    public void shouldBufferUntilMotionThenWriteBufferedItemsFirst() throws Exception {
+        recorder.offer(1, false);
+        recorder.offer(2, false);
+        recorder.offer(3, true);
+
+        assertThat(events, contains("buffer 1", "buffer 2", "open clip", "write buffered", "write 3"));
+        assertThat(recorder.isRecording(), is(true));
+    }
+
+    @Test
+    public void shouldFinishClipAfterMargin() throws Exception {
+        recorder.offer(1, true);
+        recorder.offer(2, false);
+        recorder.offer(3, false);
+        recorder.offer(4, false);
+        recorder.offer(5, false);
+
+        assertThat(events, contains("open clip", "write buffered", "write 1", "write 2", "write 3", "write 4",
+                                    "close clip", "buffer 5"));
+        assertThat(finishedClips, contains(new File("clip")));
+    }
+
+    @Test
+    public void shouldKeepRecordingWhenMotionResumesWithinMargin() throws Exception {
+        recorder.offer(1, true);
+        recorder.offer(2, false);
+        recorder.offer(3, true);
+        recorder.offer(4, false);
+        recorder.offer(5, false);
+
+        assertThat(finishedClips, is(empty()));
+        assertThat(recorder.isRecording(), is(true));
+    }
+
+    @Test
+    public void shouldFinishClipInProgressOnClose() throws Exception {
+        recorder.offer(1, true);
+        recorder.close();
+
+        assertThat(finishedClips, contains(new File("clip")));
+        assertThat(recorder.isRecording(), is(false));
+    }
+
+    private class RecordingRecorder extends MotionClipRecorder<Integer> {
+        RecordingRecorder() {
+            super(new Camera("test", null, null, Collections.emptyList(), Collections.emptyList()),
+                  2,
+                  () -> new File("clip"),
+                  finishedClips::add);
+        }
+
+        @Override
+        protected void open(final File clip) {
+            events.add("open " + clip.getName());
+        }
+
+        @Override
+        protected void writeBuffered() {
+            events.add("write buffered");
+        }
+
+        @Override
+        protected void write(final Integer item) {
+            events.add("write " + item);
+        }
+
+        @Override
+        protected void buffer(final Integer item) {
+            events.add("buffer " + item);
+        }
+
+        @Override
+        protected void closeClip() {
+            events.add("close clip");
+        }
+    }
+}
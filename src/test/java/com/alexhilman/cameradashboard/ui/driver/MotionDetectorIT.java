@@ -0,0 +1,59 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.opencv_core;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the detector over a recorded clip, e.g. one made with
+ * {@code ffmpeg -f lavfi -i testsrc=size=1280x720:rate=10 -t 30 sample.mp4}, given as {@code -Dmotion.sample.clip}.
+ */
+public class MotionDetectorIT {
+    private static final int WARM_UP_FRAMES = 10;
+
+    private File sampleClip;
+
+    @Before
+    public void setup() {
+        final String sampleClipPath = System.getProperty("motion.sample.clip");
+        assumeTrue("motion.sample.clip is not set", sampleClipPath != null);
+        sampleClip = new File(sampleClipPath);
+    }
+
+    @Test
+    public void shouldNotAllocateNativeMemoryInSteadyState() throws Exception {
+        try (final FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(sampleClip)) {
+            grabber.start();
+            final OpenCVFrameConverter.ToIplImage converter = new OpenCVFrameConverter.ToIplImage();
+
+            try (final MotionDetector motionDetector = new MotionDetector(MotionProcessor.DEFAULT_ANALYSIS_WIDTH,
+                                                                          MotionProcessor.DEFAULT_ANALYSIS_HEIGHT)) {
+                int frames = 0;
+                long allocatedBytes = 0;
+                Frame frame;
+                while ((frame = grabber.grabImage()) != null) {
+                    final opencv_core.IplImage image = converter.convert(frame);
+                    final long totalBytesBefore = Pointer.totalBytes();
+                    motionDetector.detect(image);
+                    if (++frames > WARM_UP_FRAMES) {
+                        allocatedBytes += Math.max(0, Pointer.totalBytes() - totalBytesBefore);
+                    }
+                }
+
+                assertThat(frames, is(greaterThan(WARM_UP_FRAMES)));
+                assertThat(allocatedBytes, is(0L));
+            }
+        }
+    }
+}
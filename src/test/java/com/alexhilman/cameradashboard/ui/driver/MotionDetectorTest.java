@@ -0,0 +1,133 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.MotionZone;
+import com.google.common.collect.ImmutableList;
+import org.bytedeco.javacpp.opencv_core;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+public class MotionDetectorTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 18;
+    private static final int STILL_FRAMES = 10;
+
+    private MotionDetector motionDetector;
+    private opencv_core.IplImage image;
+
+    @Before
+    public void setup() {
+        motionDetector = new MotionDetector(WIDTH, HEIGHT);
+    }
+
+    @After
+    public void teardown() {
+        motionDetector.close();
+        if (image != null) {
+            image.close();
+        }
+    }
+
+    @Test
+    public void shouldDetectMotionInLargerColorImage() {
+        image = opencv_core.IplImage.create(WIDTH * 4, HEIGHT * 4, IPL_DEPTH_8U, 3);
+
+        assertMotionDetectedOnlyAfterChange();
+    }
+
+    @Test
+    public void shouldDetectMotionInGrayscaleImageOfAnalysisSize() {
+        image = opencv_core.IplImage.create(WIDTH, HEIGHT, IPL_DEPTH_8U, 1);
+
+        assertMotionDetectedOnlyAfterChange();
+    }
+
+    @Test
+    public void shouldNotWrapPooledImagesAgain() {
+        assertWrapsOncePerPooledImage(Collections.emptyList());
+    }
+
+    @Test
+    public void shouldNotWrapPooledImagesAgainWithZones() {
+        assertWrapsOncePerPooledImage(Collections.singletonList(
+                new MotionZone("left",
+                               null,
+                               ImmutableList.of(ImmutableList.of(0.0, 0.0),
+                                                ImmutableList.of(0.5, 0.0),
+                                                ImmutableList.of(0.5, 1.0),
+                                                ImmutableList.of(0.0, 1.0)))));
+    }
+
+    /**
+     * Rotates a pool of distinct images of the analysis geometry, as {@link MotionPipeline} does.
+     */
+    private static void assertWrapsOncePerPooledImage(final List<MotionZone> zones) {
+        final AtomicInteger wraps = new AtomicInteger();
+        final opencv_core.IplImage[] pool = new opencv_core.IplImage[4];
+        try (final MotionDetector detector = new MotionDetector(WIDTH, HEIGHT, zones) {
+            @Override
+            WrappedImage wrap(final opencv_core.IplImage image) {
+                wraps.incrementAndGet();
+                return super.wrap(image);
+            }
+        }) {
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = opencv_core.IplImage.create(WIDTH, HEIGHT, IPL_DEPTH_8U, 1);
+                fill(pool[i], i % 2 == 0 ? WIDTH : WIDTH / 2);
+            }
+            for (final opencv_core.IplImage pooled : pool) {
+                detector.detect(pooled);
+            }
+            assertThat(wraps.get(), is(pool.length));
+
+            for (int round = 0; round < 10; round++) {
+                for (final opencv_core.IplImage pooled : pool) {
+                    detector.detect(pooled);
+                }
+            }
+            assertThat(wraps.get(), is(pool.length));
+        } finally {
+            for (final opencv_core.IplImage pooled : pool) {
+                if (pooled != null) {
+                    pooled.close();
+                }
+            }
+        }
+    }
+
+    private void assertMotionDetectedOnlyAfterChange() {
+        fill(image, image.width());
+        for (int i = 0; i < STILL_FRAMES; i++) {
+            motionDetector.detect(image);
+        }
+        assertThat(motionDetector.isPrimed(), is(true));
+        assertThat(motionDetector.isMotionDetected(), is(false));
+
+        fill(image, image.width() / 2);
+
+        assertThat(motionDetector.detect(image), is(true));
+        assertThat(motionDetector.getZoneScores().values().iterator().next(), is(greaterThan(1.0)));
+    }
+
+    /**
+     * Paints the image black up to the given column and white from there on.
+     */
+    private static void fill(final opencv_core.IplImage image, final int whiteFromX) {
+        final ByteBuffer buffer = image.getByteBuffer();
+        for (int y = 0; y < image.height(); y++) {
+            for (int x = 0; x < image.width() * image.nChannels(); x++) {
+                buffer.put(y * image.widthStep() + x, (byte) (x / image.nChannels() < whiteFromX ? 0 : 255));
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class MotionProcessorTest {
+    private MotionProcessor motionProcessor;
+
+    @Before
+    public void setup() {
+        motionProcessor = new MotionProcessor(new Camera("test", null, null, Collections.emptyList(),
+                                                         Collections.emptyList()),
+                                              new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    @Test
+    public void shouldAnalyzeAtDefaultSize() {
+        assertAnalysisSize(1280, 720, MotionProcessor.DEFAULT_ANALYSIS_WIDTH, MotionProcessor.DEFAULT_ANALYSIS_HEIGHT);
+    }
+
+    @Test
+    public void shouldKeepAspectRatioOfCamera() {
+        assertAnalysisSize(640, 480, 240, 180);
+        assertAnalysisSize(1080, 1920, 101, 180);
+    }
+
+    @Test
+    public void shouldNotUpscaleSmallCamera() {
+        assertAnalysisSize(160, 120, 160, 120);
+    }
+
+    @Test
+    public void shouldAnalyzeAtConfiguredSize() {
+        motionProcessor.withAnalysisSize(640, 360);
+
+        assertAnalysisSize(1920, 1080, 640, 360);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyAnalysisSize() {
+        motionProcessor.withAnalysisSize(0, 180);
+    }
+
+    private void assertAnalysisSize(final int cameraWidth,
+                                    final int cameraHeight,
+                                    final int expectedWidth,
+                                    final int expectedHeight) {
+        try (final MotionDetector motionDetector = motionProcessor.motionDetectorFor(cameraWidth, cameraHeight)) {
+            assertThat(motionDetector.getWidth(), is(expectedWidth));
+            assertThat(motionDetector.getHeight(), is(expectedHeight));
+        }
+    }
+}
@@ -90,4 +90,99 @@ public class ObservableInputStreamTest {
             assertThat(s, is(masterStreamContent.toString()));
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void slowObserverShouldSkipAheadWithoutBlockingMasterReader() throws IOException {
+        final byte[] content = new byte[64];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        final ObservableInputStream smallBufferStream =
+                new ObservableInputStream(new ByteArrayInputStream(content), 16);
+        final InputStream slowObserver = smallBufferStream.newObserver();
+
+        final byte[] masterBuffer = new byte[8];
+        int masterBytesRead = 0;
+        int read;
+        while ((read = smallBufferStream.read(masterBuffer, 0, masterBuffer.length)) > -1) {
+            masterBytesRead += read;
+        }
+        assertThat(masterBytesRead, is(content.length));
+
+        final byte[] observerBuffer = new byte[100];
+        final int observerBytesRead = slowObserver.read(observerBuffer, 0, observerBuffer.length);
+        assertThat(observerBytesRead, is(16));
+        assertThat(observerBuffer[0], is((byte) 48));
+        assertThat(observerBuffer[15], is((byte) 63));
+        assertThat(slowObserver.read(), is(-1));
+    }
+
+    @Test
+    public void observerShouldSkipToNewestKeyframeWhenLagging() throws IOException {
+        final ObservableInputStream mjpegStream =
+                new ObservableInputStream(new ByteArrayInputStream(
+                        "\r\n--frame\r\none\r\n--frame\r\ntwo".getBytes("utf-8")));
+        final ObservableInputStream.Observer observer = mjpegStream.newObserver(BackpressurePolicy.SKIP_TO_KEYFRAME, 4);
+
+        final byte[] masterBuffer = new byte[100];
+        while (mjpegStream.read(masterBuffer, 0, masterBuffer.length) > -1) {
+            // drain
+        }
+
+        final byte[] observerBuffer = new byte[100];
+        final int observerBytesRead = observer.read(observerBuffer, 0, observerBuffer.length);
+        assertThat(new String(observerBuffer, 0, observerBytesRead, "utf-8"), is("--frame\r\ntwo"));
+        assertThat(observer.getDrops(), is(1L));
+        assertThat(observer.getDroppedBytes(), is(16L));
+    }
+
+    @Test
+    public void observerShouldSkipToKeyframeSplitAcrossReads() throws IOException {
+        final ObservableInputStream mjpegStream =
+                new ObservableInputStream(new ByteArrayInputStream(
+                        "\r\n--frame\r\none\r\n--frame\r\ntwo".getBytes("utf-8")));
+        final ObservableInputStream.Observer observer = mjpegStream.newObserver(BackpressurePolicy.SKIP_TO_KEYFRAME, 4);
+
+        final byte[] masterBuffer = new byte[17];
+        assertThat(mjpegStream.read(masterBuffer, 0, 17), is(17));
+        while (mjpegStream.read(masterBuffer, 0, 1) > -1) {
+            // drain
+        }
+
+        final byte[] observerBuffer = new byte[100];
+        final int observerBytesRead = observer.read(observerBuffer, 0, observerBuffer.length);
+        assertThat(new String(observerBuffer, 0, observerBytesRead, "utf-8"), is("--frame\r\ntwo"));
+    }
+
+    @Test
+    public void observerShouldDropOldestBytesOfStreamWhichIsNotMultipart() throws IOException {
+        final ObservableInputStream mjpegStream =
+                new ObservableInputStream(new ByteArrayInputStream(
+                        "\r\n--frame\r\none\r\n--frame\r\ntwo".getBytes("utf-8")), 1024, false);
+        final ObservableInputStream.Observer observer = mjpegStream.newObserver(BackpressurePolicy.SKIP_TO_KEYFRAME, 4);
+
+        final byte[] masterBuffer = new byte[100];
+        while (mjpegStream.read(masterBuffer, 0, masterBuffer.length) > -1) {
+            // drain
+        }
+
+        final byte[] observerBuffer = new byte[100];
+        final int observerBytesRead = observer.read(observerBuffer, 0, observerBuffer.length);
+        assertThat(new String(observerBuffer, 0, observerBytesRead, "utf-8"), is("\ntwo"));
+    }
+
+    @Test
+    public void observerShouldBeDisconnectedWhenLaggingPastThreshold() throws IOException {
+        final ObservableInputStream.Observer observer =
+                observableInputStream.newObserver(BackpressurePolicy.DISCONNECT, 4);
+
+        final byte[] masterBuffer = new byte[100];
+        final int masterBytesRead = observableInputStream.read(masterBuffer, 0, masterBuffer.length);
+
+        assertThat(masterBytesRead, is(8));
+        assertThat(observer.isDisconnected(), is(true));
+        assertThat(observer.getLag(), is(8L));
+        assertThat(observer.read(), is(-1));
+        assertThat(observableInputStream.getObservers().isEmpty(), is(true));
+    }
+}
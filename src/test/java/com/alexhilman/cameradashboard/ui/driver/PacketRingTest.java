@@ -0,0 +1,78 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bytedeco.javacpp.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.javacpp.avcodec.av_new_packet;
+import static org.bytedeco.javacpp.avcodec.av_packet_alloc;
+import static org.bytedeco.javacpp.avcodec.av_packet_free;
+import static org.bytedeco.javacpp.avcodec.av_packet_unref;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class PacketRingTest {
+    private avcodec.AVPacket packet;
+    private PacketRing ring;
+    private FFmpegFrameRecorder recorder;
+    private List<Long> recordedTimestamps;
+
+    @Before
+    public void setup() throws Exception {
+        packet = av_packet_alloc();
+        ring = new PacketRing(3);
+        recorder = mock(FFmpegFrameRecorder.class);
+        recordedTimestamps = new ArrayList<>();
+        doAnswer(invocation -> recordedTimestamps.add(((avcodec.AVPacket) invocation.getArguments()[0]).pts()))
+                .when(recorder).recordPacket(any(avcodec.AVPacket.class));
+    }
+
+    @After
+    public void teardown() {
+        ring.close();
+        av_packet_free(packet);
+    }
+
+    @Test
+    public void shouldKeepPacketsBackToKeyFrameWhenKeyFramesAreFurtherApartThanCapacity() throws Exception {
+        push(0, false);
+        push(1, true);
+        for (int i = 2; i < 6; i++) {
+            push(i, false);
+        }
+
+        assertThat(ring.size(), is(5));
+        ring.drainTo(recorder);
+
+        assertThat(recordedTimestamps, contains(1L, 2L, 3L, 4L, 5L));
+    }
+
+    @Test
+    public void shouldKeepOnlyNewestPacketsWhenKeyFrameIsTooFarBack() {
+        push(0, true);
+        for (int i = 1; i < 7; i++) {
+            push(i, false);
+        }
+
+        assertThat(ring.size(), is(3));
+    }
+
+    private void push(final long pts, final boolean keyFrame) {
+        av_new_packet(packet, 4);
+        packet.pts(pts);
+        packet.dts(pts);
+        packet.flags(keyFrame ? AV_PKT_FLAG_KEY : 0);
+        ring.push(packet);
+        av_packet_unref(packet);
+    }
+}
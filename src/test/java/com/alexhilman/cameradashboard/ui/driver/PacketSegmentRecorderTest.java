@@ -0,0 +1,126 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.bytedeco.javacpp.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.javacpp.avcodec.av_new_packet;
+import static org.bytedeco.javacpp.avcodec.av_packet_alloc;
+import static org.bytedeco.javacpp.avcodec.av_packet_free;
+import static org.bytedeco.javacpp.avcodec.av_packet_unref;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class PacketSegmentRecorderTest {
+    private static final byte[] BYTES = {1, 2, 3, 4};
+
+    private avcodec.AVPacket packet;
+    private avutil.AVRational timeBase;
+    private List<byte[]> segmentPackets;
+    private ConsumingSegmentRecorder segmentRecorder;
+    private PacketRing clipBuffer;
+
+    @Before
+    public void setup() {
+        packet = av_packet_alloc();
+        av_new_packet(packet, BYTES.length);
+        packet.data().put(BYTES);
+        packet.pts(0);
+        packet.dts(0);
+        packet.flags(AV_PKT_FLAG_KEY);
+
+        timeBase = new avutil.AVRational().num(1).den(1000);
+        segmentPackets = new ArrayList<>();
+        segmentRecorder = new ConsumingSegmentRecorder();
+        clipBuffer = new PacketRing(4);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        segmentRecorder.close();
+        clipBuffer.close();
+        av_packet_free(packet);
+        timeBase.close();
+    }
+
+    @Test
+    public void shouldLeavePacketIntactForClipAndDecoder() throws Exception {
+        // in the order of the record stage: segment, motion clip, then the decoder
+        segmentRecorder.offer(packet, false);
+        clipBuffer.push(packet);
+        final byte[] decoderBytes = bytesOf(packet);
+
+        final List<byte[]> clipPackets = new ArrayList<>();
+        final FFmpegFrameRecorder clipRecorder = mock(FFmpegFrameRecorder.class);
+        doAnswer(invocation -> clipPackets.add(bytesOf((avcodec.AVPacket) invocation.getArguments()[0])))
+                .when(clipRecorder).recordPacket(any(avcodec.AVPacket.class));
+        clipBuffer.drainTo(clipRecorder);
+
+        assertThat(segmentPackets, contains(BYTES));
+        assertThat(clipPackets, contains(BYTES));
+        assertThat(decoderBytes, is(BYTES));
+        assertThat(packet.pts(), is(0L));
+    }
+
+    @Test
+    public void shouldLeavePacketIntactForEverySegmentWrite() throws Exception {
+        segmentRecorder.offer(packet, false);
+        packet.pts(100);
+        packet.dts(100);
+        segmentRecorder.offer(packet, false);
+
+        assertThat(segmentPackets, contains(BYTES, BYTES));
+        assertThat(bytesOf(packet), is(BYTES));
+    }
+
+    private static byte[] bytesOf(final avcodec.AVPacket packet) {
+        final byte[] bytes = new byte[packet.size()];
+        if (bytes.length > 0) {
+            packet.data().get(bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Takes over the packets it writes, as the muxer does.
+     */
+    private class ConsumingSegmentRecorder extends PacketSegmentRecorder {
+        ConsumingSegmentRecorder() {
+            super(new Camera("test", null, null, Collections.emptyList(), Collections.emptyList()),
+                  1000,
+                  () -> new File("segment"),
+                  segment -> {
+                  },
+                  null,
+                  timeBase);
+        }
+
+        @Override
+        protected void open(final File segment) {
+        }
+
+        @Override
+        void recordPacket(final avcodec.AVPacket packet) {
+            segmentPackets.add(bytesOf(packet));
+            av_packet_unref(packet);
+        }
+
+        @Override
+        protected void closeSegment() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class PipelineStageTest {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final List<Integer> handled = new ArrayList<>();
+
+    @Test
+    public void shouldHandleItemsInOrderOnExecutor() {
+        final PipelineStage<Integer> stage = new PipelineStage<>("test", 4, tasks::add, handled::add);
+
+        stage.offer(1);
+        stage.offer(2);
+        stage.offer(3);
+        assertThat(tasks.size(), is(1));
+        assertThat(stage.getMetrics().getQueueDepth(), is(3));
+
+        runTasks();
+        assertThat(handled, is(Arrays.asList(1, 2, 3)));
+        assertThat(stage.getMetrics().getQueueDepth(), is(0));
+        assertThat(stage.getMetrics().getProcessed(), is(3L));
+    }
+
+    @Test
+    public void shouldRefuseAndCountItemsBeyondCapacity() {
+        final PipelineStage<Integer> stage = new PipelineStage<>("test", 2, tasks::add, handled::add);
+
+        assertThat(stage.offer(1), is(true));
+        assertThat(stage.offer(2), is(true));
+        assertThat(stage.offer(3), is(false));
+        assertThat(stage.getMetrics().getDropped(), is(1L));
+
+        runTasks();
+        assertThat(handled, is(Arrays.asList(1, 2)));
+    }
+
+    @Test
+    public void shouldHandleRemainingItemsOnFinish() throws Exception {
+        final PipelineStage<Integer> stage = new PipelineStage<>("test", 4, task -> {
+            throw new RejectedExecutionException();
+        }, handled::add);
+
+        stage.offer(1);
+        stage.offer(2);
+        stage.finish();
+
+        assertThat(handled, is(Arrays.asList(1, 2)));
+    }
+
+    @Test
+    public void shouldWaitForRunningDrainWhenInterrupted() throws Exception {
+        final CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> handledItems = Collections.synchronizedList(new ArrayList<>());
+        final PipelineStage<Integer> stage = new PipelineStage<>("test", 4, task -> new Thread(task).start(), item -> {
+            handling.countDown();
+            Uninterruptibles.awaitUninterruptibly(release);
+            handledItems.add(item);
+        });
+
+        stage.offer(1);
+        stage.offer(2);
+        handling.await();
+        new Thread(() -> {
+            Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+            release.countDown();
+        }).start();
+        Thread.currentThread().interrupt();
+        stage.finish();
+
+        assertThat(Thread.interrupted(), is(true));
+        assertThat(handledItems, is(Arrays.asList(1, 2)));
+    }
+
+    @Test
+    public void shouldKeepDrainingAfterHandlerFailure() {
+        final PipelineStage<Integer> stage = new PipelineStage<>("test", 4, tasks::add, item -> {
+            if (item == 1) {
+                throw new IllegalStateException("broken item");
+            }
+            handled.add(item);
+        });
+
+        stage.offer(1);
+        stage.offer(2);
+        runTasks();
+
+        assertThat(handled, is(Arrays.asList(2)));
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class SegmentRecorderTest {
+    private List<String> events;
+    private List<RecordedSegment> segments;
+    private int segmentCount;
+    private RecordingRecorder recorder;
+
+    @Before
+    public void setup() {
+        events = new ArrayList<>();
+        segments = new ArrayList<>();
+        recorder = new RecordingRecorder();
+    }
+
+    @Test
+    public void shouldStartOnFirstKeyframe() throws Exception {
+        recorder.offer(1, 0, false, false);
+        recorder.offer(2, 100, true, false);
+        recorder.offer(3, 200, false, false);
+
+        assertThat(events, contains("open segment1", "write 2", "write 3"));
+    }
+
+    @Test
+    public void shouldCutSegmentsOnKeyframesAfterSegmentLength() throws Exception {
+        recorder.offer(1, 0, true, false);
+        recorder.offer(2, 600, false, false);
+        recorder.offer(3, 1000, false, false);
+        recorder.offer(4, 1200, true, false);
+
+        assertThat(events, contains("open segment1", "write 1", "write 2", "write 3",
+                                    "close", "open segment2", "write 4"));
+        assertThat(segments, hasSize(1));
+        assertThat(segments.get(0).getFile(), is(new File("segment1")));
+        assertThat(segments.get(0).getMotion(), is(empty()));
+    }
+
+    @Test
+    public void shouldReportMotionRelativeToSegment() throws Exception {
+        recorder.offer(1, 5000, true, false);
+        recorder.offer(2, 5200, false, true);
+        recorder.offer(3, 5500, false, true);
+        recorder.offer(4, 5700, false, false);
+        recorder.close();
+
+        assertThat(segments.get(0).getMotion(), contains(new MotionInterval(200, 500)));
+    }
+
+    @Test
+    public void shouldSplitMotionSpanningSegments() throws Exception {
+        recorder.offer(1, 0, true, false);
+        recorder.offer(2, 800, false, true);
+        recorder.offer(3, 1100, true, true);
+        recorder.offer(4, 1300, false, false);
+        recorder.close();
+
+        assertThat(segments, hasSize(2));
+        assertThat(segments.get(0).getMotion(), contains(new MotionInterval(800, 300)));
+        assertThat(segments.get(1).getMotion(), contains(new MotionInterval(0, 200)));
+    }
+
+    private class RecordingRecorder extends SegmentRecorder<Integer> {
+        RecordingRecorder() {
+            super(new Camera("test", null, null, Collections.emptyList(), Collections.emptyList()),
+                  1000,
+                  () -> new File("segment" + ++segmentCount),
+                  segments::add,
+                  Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+        }
+
+        @Override
+        protected void open(final File segment) {
+            events.add("open " + segment.getName());
+        }
+
+        @Override
+        protected void write(final Integer item) {
+            events.add("write " + item);
+        }
+
+        @Override
+        protected void closeSegment() {
+            events.add("close");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.alexhilman.cameradashboard.ui.driver;
+
+import com.alexhilman.cameradashboard.ui.conf.MotionZone;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ZoneMaskTest {
+    @Test
+    public void shouldCoverWholeFrameWithoutZones() {
+        final ZoneMask zoneMask = ZoneMask.of(Collections.emptyList(), 8, 4);
+
+        assertThat(zoneMask.isWholeFrame(), is(true));
+        assertThat(zoneMask.getZoneCount(), is(1));
+        assertThat(zoneMask.getZonePixels(0), is(32));
+        assertThat(zoneMask.getRoiWidth(), is(8));
+        assertThat(zoneMask.getRoiHeight(), is(4));
+    }
+
+    @Test
+    public void shouldCropToBoundingBoxOfZones() {
+        final ZoneMask zoneMask = ZoneMask.of(Collections.singletonList(rectangle("right", 0.5, 0.5, 1, 1)), 8, 4);
+
+        assertThat(zoneMask.isWholeFrame(), is(false));
+        assertThat(zoneMask.getRoiX(), is(4));
+        assertThat(zoneMask.getRoiY(), is(2));
+        assertThat(zoneMask.getRoiWidth(), is(4));
+        assertThat(zoneMask.getRoiHeight(), is(2));
+        assertThat(zoneMask.getZonePixels(0), is(8));
+    }
+
+    @Test
+    public void shouldCountForegroundPerZoneInOnePass() {
+        final ZoneMask zoneMask = ZoneMask.of(Arrays.asList(rectangle("left", 0, 0, 0.5, 1),
+                                                            rectangle("right", 0.5, 0, 1, 1)),
+                                              4,
+                                              2);
+        final int stride = 8;
+        final ByteBuffer foreground = ByteBuffer.allocate(stride * 2);
+        foreground.put(0, (byte) 255);
+        foreground.put(3, (byte) 255);
+        foreground.put(stride + 2, (byte) 255);
+        foreground.put(4, (byte) 255); // padding beyond the row, not part of the picture
+
+        final int[] counts = new int[2];
+        zoneMask.countForeground(foreground, stride, counts);
+
+        assertThat(counts[0], is(1));
+        assertThat(counts[1], is(2));
+    }
+
+    @Test
+    public void shouldGiveTinyZoneAtLeastOnePixel() {
+        final ZoneMask zoneMask = ZoneMask.of(Collections.singletonList(rectangle("tiny", 0.51, 0.51, 0.52, 0.52)),
+                                              8,
+                                              4);
+
+        assertThat(zoneMask.getZonePixels(0), is(1));
+        assertThat(zoneMask.getRoiWidth(), is(1));
+    }
+
+    @Test
+    public void shouldGiveTinyZoneAPixelOfNoOtherZone() {
+        final ZoneMask zoneMask = ZoneMask.of(Arrays.asList(rectangle("left", 0, 0, 0.5, 1),
+                                                            rectangle("tiny", 0.26, 0.51, 0.27, 0.52)),
+                                              8,
+                                              4);
+
+        assertThat(zoneMask.getZonePixels(0), is(16));
+        assertThat(zoneMask.getZonePixels(1), is(1));
+
+        final ByteBuffer foreground = ByteBuffer.allocate(zoneMask.getRoiWidth() * zoneMask.getRoiHeight());
+        for (int i = 0; i < foreground.capacity(); i++) {
+            foreground.put(i, (byte) 255);
+        }
+        final int[] counts = new int[2];
+        zoneMask.countForeground(foreground, zoneMask.getRoiWidth(), counts);
+        assertThat(counts[0], is(16));
+        assertThat(counts[1], is(1));
+    }
+
+    @Test
+    public void shouldLeaveTinyZoneWithoutPixelWhenAllAreTaken() {
+        final ZoneMask zoneMask = ZoneMask.of(Arrays.asList(rectangle("all", 0, 0, 1, 1),
+                                                            rectangle("tiny", 0.51, 0.51, 0.52, 0.52)),
+                                              8,
+                                              4);
+
+        assertThat(zoneMask.getZonePixels(0), is(32));
+        assertThat(zoneMask.getZonePixels(1), is(0));
+    }
+
+    private static MotionZone rectangle(final String name,
+                                        final double left,
+                                        final double top,
+                                        final double right,
+                                        final double bottom) {
+        final List<List<Double>> points = ImmutableList.of(ImmutableList.of(left, top),
+                                                           ImmutableList.of(right, top),
+                                                           ImmutableList.of(right, bottom),
+                                                           ImmutableList.of(left, bottom));
+        return new MotionZone(name, null, points);
+    }
+}
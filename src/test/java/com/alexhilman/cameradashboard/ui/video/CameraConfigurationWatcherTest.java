@@ -0,0 +1,87 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.conf.CameraConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static com.alexhilman.cameradashboard.ui.App.CAMERAS_CONFIG_FILE;
+import static com.alexhilman.cameradashboard.ui.App.CONFIGURATION_DIRECTORY_SYSTEM_PROPERTY;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CameraConfigurationWatcherTest {
+    private static final String ONE_CAMERA = "{\"cameras\":[{\"name\":\"cam1\",\"streams\":[]}]}";
+    private static final String TWO_CAMERAS =
+            "{\"cameras\":[{\"name\":\"cam1\",\"streams\":[]},{\"name\":\"cam2\",\"streams\":[]}]}";
+
+    private String configurationDirectoryProperty;
+    private File configurationDirectory;
+    private File configurationFile;
+    private CameraWatcher cameraWatcher;
+    private CameraConfigurationWatcher cameraConfigurationWatcher;
+
+    @Before
+    public void setup() throws IOException {
+        configurationDirectoryProperty = System.getProperty(CONFIGURATION_DIRECTORY_SYSTEM_PROPERTY);
+        configurationDirectory = Files.createTempDirectory("camera-configuration").toFile();
+        System.setProperty(CONFIGURATION_DIRECTORY_SYSTEM_PROPERTY, configurationDirectory.getAbsolutePath());
+        configurationFile = new File(configurationDirectory, CAMERAS_CONFIG_FILE);
+        write(ONE_CAMERA);
+
+        cameraWatcher = mock(CameraWatcher.class);
+        cameraConfigurationWatcher = new CameraConfigurationWatcher(cameraWatcher);
+        cameraConfigurationWatcher.start();
+    }
+
+    @After
+    public void tearDown() {
+        cameraConfigurationWatcher.stop();
+        if (configurationDirectoryProperty == null) {
+            System.clearProperty(CONFIGURATION_DIRECTORY_SYSTEM_PROPERTY);
+        } else {
+            System.setProperty(CONFIGURATION_DIRECTORY_SYSTEM_PROPERTY, configurationDirectoryProperty);
+        }
+        configurationFile.delete();
+        configurationDirectory.delete();
+    }
+
+    @Test
+    public void shouldReloadOnceAfterQuickSuccessiveWrites() throws Exception {
+        write(ONE_CAMERA);
+        Thread.sleep(100);
+        write(TWO_CAMERAS);
+
+        final ArgumentCaptor<CameraConfiguration> configuration = ArgumentCaptor.forClass(CameraConfiguration.class);
+        verify(cameraWatcher, timeout(10_000)).reconfigure(configuration.capture());
+        assertThat(configuration.getValue().getCameras().size(), is(2));
+
+        // a second reload would follow the quiet period
+        Thread.sleep(1_500);
+        verify(cameraWatcher, times(1)).reconfigure(any(CameraConfiguration.class));
+    }
+
+    @Test
+    public void shouldKeepRunningCamerasWhenFileIsIncorrect() throws Exception {
+        write("{\"cameras\":");
+
+        Thread.sleep(1_500);
+        verify(cameraWatcher, never()).reconfigure(any(CameraConfiguration.class));
+    }
+
+    private void write(final String json) throws IOException {
+        Files.write(configurationFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,97 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import com.alexhilman.cameradashboard.ui.driver.MotionProcessor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CameraSupervisorTest {
+    private MotionProcessor motionProcessor;
+    private List<Runnable> scheduledAttempts;
+    private List<Long> scheduledDelays;
+    private CameraSupervisor supervisor;
+
+    @Before
+    public void setup() throws Exception {
+        motionProcessor = mock(MotionProcessor.class);
+        doThrow(new IOException("camera is offline")).when(motionProcessor).processStream();
+
+        scheduledAttempts = new ArrayList<>();
+        scheduledDelays = new ArrayList<>();
+        final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            scheduledAttempts.add((Runnable) invocation.getArguments()[0]);
+            scheduledDelays.add((Long) invocation.getArguments()[1]);
+            return mock(ScheduledFuture.class);
+        });
+
+        supervisor = new CameraSupervisor(new Camera("test", null, null, Collections.emptyList(), null),
+                                          () -> motionProcessor,
+                                          scheduler);
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyWhileCameraIsOffline() {
+        supervisor.start();
+        runScheduledAttempts(3);
+
+        assertThat(scheduledDelays, contains(0L, 1_000L, 2_000L, 4_000L));
+        assertThat(supervisor.getHealth(), is(CameraHealth.BACKING_OFF));
+        assertThat(supervisor.getConsecutiveFailures(), is(3));
+    }
+
+    @Test
+    public void shouldCapBackoff() {
+        supervisor.start();
+        runScheduledAttempts(10);
+
+        assertThat(scheduledDelays.get(scheduledDelays.size() - 1), is(CameraSupervisor.MAX_BACKOFF_MILLIS));
+    }
+
+    @Test
+    public void shouldNotReconnectOnceStopped() throws Exception {
+        supervisor.start();
+        runScheduledAttempts(1);
+        supervisor.stop();
+        runScheduledAttempts(1);
+
+        verify(motionProcessor).stop();
+        verify(motionProcessor, times(1)).processStream();
+        assertThat(supervisor.getHealth(), is(CameraHealth.STOPPED));
+    }
+
+    @Test
+    public void shouldStartAfreshOnRestart() {
+        supervisor.start();
+        runScheduledAttempts(3);
+        supervisor.restart();
+
+        assertThat(scheduledDelays.get(scheduledDelays.size() - 1), is(0L));
+        assertThat(supervisor.getConsecutiveFailures(), is(0));
+    }
+
+    private void runScheduledAttempts(final int attempts) {
+        for (int i = 0; i < attempts; i++) {
+            scheduledAttempts.get(scheduledAttempts.size() - 1).run();
+        }
+    }
+}
@@ -1,4 +1,190 @@
 package com.alexhilman.cameradashboard.ui.video;
 
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import com.alexhilman.cameradashboard.ui.conf.CameraConfiguration;
+import com.vaadin.server.ExternalResource;
+import io.reactivex.observers.TestObserver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 public class CameraWatcherTest {
-}
\ No newline at end of file
+    private File storageDirectory;
+    private Camera camera;
+    private MovieFileManager movieFileManager;
+    private CameraWatcher cameraWatcher;
+    private final Map<Camera, CameraSupervisor> supervisors = new HashMap<>();
+
+    @Before
+    public void setup() throws IOException {
+        storageDirectory = Files.createTempDirectory("camera-watcher").toFile();
+        camera = new Camera("cam1", null, null, Collections.emptyList(), Collections.emptyList());
+        movieFileManager = mock(MovieFileManager.class);
+        when(movieFileManager.getStorageDirectory()).thenReturn(storageDirectory);
+        cameraWatcher = new CameraWatcher(new CameraConfiguration(Collections.singletonList(camera)),
+                                          movieFileManager) {
+            @Override
+            CameraSupervisor newSupervisor(final Camera camera) {
+                final CameraSupervisor supervisor = mock(CameraSupervisor.class);
+                supervisors.put(camera, supervisor);
+                return supervisor;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        cameraWatcher.stop();
+        final File[] files = storageDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        storageDirectory.delete();
+    }
+
+    @Test
+    public void shouldStartAddedAndChangedCamerasAndStopRemovedOnes() {
+        final Camera removed = new Camera("cam2", null, null, Collections.emptyList(), Collections.emptyList());
+        final Camera changed = new Camera("cam3", null, null, Collections.emptyList(), Collections.emptyList());
+        cameraWatcher.reconfigure(new CameraConfiguration(Arrays.asList(camera, removed, changed)));
+        cameraWatcher.start();
+        final CameraSupervisor unchangedSupervisor = supervisors.get(camera);
+        final CameraSupervisor removedSupervisor = supervisors.get(removed);
+        final CameraSupervisor changedSupervisor = supervisors.get(changed);
+        assertThat(cameraWatcher.getScheduler().getCorePoolSize(), is(3));
+
+        final Camera reconfigured = new Camera("cam3", "admin", null, Collections.emptyList(), Collections.emptyList());
+        final Camera added = new Camera("cam4", null, null, Collections.emptyList(), Collections.emptyList());
+        final Camera another = new Camera("cam5", null, null, Collections.emptyList(), Collections.emptyList());
+        final CameraConfiguration configuration =
+                new CameraConfiguration(Arrays.asList(camera, reconfigured, added, another));
+        cameraWatcher.reconfigure(configuration);
+
+        verify(removedSupervisor).stop();
+        verify(changedSupervisor).stop();
+        verify(unchangedSupervisor, never()).stop();
+        verify(supervisors.get(reconfigured)).start();
+        verify(supervisors.get(added)).start();
+        verify(supervisors.get(another)).start();
+        verify(unchangedSupervisor, times(1)).start();
+        assertThat(supervisors.get(reconfigured), is(not(sameInstance(changedSupervisor))));
+        assertThat(cameraWatcher.getCameras(), is(configuration.getCameras()));
+        assertThat(cameraWatcher.getScheduler().getCorePoolSize(), is(4));
+        verify(movieFileManager).setCameraConfiguration(configuration);
+    }
+
+    @Test
+    public void shouldIgnoreIdenticalConfiguration() {
+        cameraWatcher.start();
+        final CameraSupervisor supervisor = supervisors.get(camera);
+
+        cameraWatcher.reconfigure(new CameraConfiguration(Collections.singletonList(
+                new Camera("cam1", null, null, Collections.emptyList(), Collections.emptyList()))));
+
+        verify(supervisor, never()).stop();
+        assertThat(supervisors.size(), is(1));
+        verify(movieFileManager, never()).setCameraConfiguration(any(CameraConfiguration.class));
+    }
+
+    @Test
+    public void shouldHaveNoStreamContentTypeForCameraWhichIsNotStreaming() {
+        cameraWatcher.start();
+        final Camera removed = new Camera("cam2", null, null, Collections.emptyList(), Collections.emptyList());
+
+        assertThat(cameraWatcher.getStreamContentType(camera).isPresent(), is(false));
+        assertThat(cameraWatcher.getStreamContentType(removed).isPresent(), is(false));
+    }
+
+    @Test
+    public void shouldAnnounceNewMovieOnceItsPosterExists() throws IOException {
+        final File clip = new File(storageDirectory, "clip.mp4");
+        final Movie movie = new Movie(new File(storageDirectory, "2017-01-01 00:00:00.000.mp4"),
+                                      new File(storageDirectory, "2017-01-01 00:00:00.000.jpg"));
+        final CompletableFuture<File> poster = new CompletableFuture<>();
+        when(movieFileManager.addMotionClipToRotatingPool(camera, clip))
+                .thenReturn(CompletableFuture.completedFuture(movie));
+        when(movieFileManager.generatePosterFor(movie)).thenReturn(poster);
+        final TestObserver<Movie> newMovies = cameraWatcher.observeNewMovies().test();
+
+        cameraWatcher.motionCaptured(camera, clip);
+        newMovies.assertNoValues();
+
+        Files.write(movie.getPosterImageFile().toPath(), new byte[]{1});
+        poster.complete(movie.getPosterImageFile());
+
+        newMovies.assertValue(movie);
+        assertThat(new MovieViewHelper(movieFileManager).posterResourceFor(movie),
+                   is(instanceOf(ExternalResource.class)));
+    }
+
+    @Test
+    public void shouldAnnounceNewMovieWhosePosterFailed() {
+        final File clip = new File(storageDirectory, "clip.mp4");
+        final Movie movie = new Movie(new File(storageDirectory, "2017-01-01 00:00:00.000.mp4"),
+                                      new File(storageDirectory, "2017-01-01 00:00:00.000.jpg"));
+        final CompletableFuture<File> poster = new CompletableFuture<>();
+        when(movieFileManager.addMotionClipToRotatingPool(camera, clip))
+                .thenReturn(CompletableFuture.completedFuture(movie));
+        when(movieFileManager.generatePosterFor(movie)).thenReturn(poster);
+        final TestObserver<Movie> newMovies = cameraWatcher.observeNewMovies().test();
+
+        cameraWatcher.motionCaptured(camera, clip);
+        poster.completeExceptionally(new IOException("corrupt clip"));
+
+        newMovies.assertValue(movie);
+    }
+
+    @Test
+    public void shouldNotAnnounceMovieUntilItIsInTheRotatingPool() {
+        final File clip = new File(storageDirectory, "clip.mp4");
+        final Movie movie = new Movie(new File(storageDirectory, "2017-01-01 00:00:00.000.mp4"),
+                                      new File(storageDirectory, "2017-01-01 00:00:00.000.jpg"));
+        final CompletableFuture<Movie> stored = new CompletableFuture<>();
+        when(movieFileManager.addMotionClipToRotatingPool(camera, clip)).thenReturn(stored);
+        when(movieFileManager.generatePosterFor(movie)).thenReturn(CompletableFuture.completedFuture(null));
+        final TestObserver<Movie> newMovies = cameraWatcher.observeNewMovies().test();
+
+        cameraWatcher.motionCaptured(camera, clip);
+        newMovies.assertNoValues();
+
+        stored.complete(movie);
+        newMovies.assertValue(movie);
+    }
+
+    @Test
+    public void shouldNotAnnounceClipWhichCouldNotBeStored() {
+        final File clip = new File(storageDirectory, "clip.mp4");
+        final CompletableFuture<Movie> stored = new CompletableFuture<>();
+        when(movieFileManager.addMotionClipToRotatingPool(camera, clip)).thenReturn(stored);
+        final TestObserver<Movie> newMovies = cameraWatcher.observeNewMovies().test();
+
+        cameraWatcher.motionCaptured(camera, clip);
+        stored.completeExceptionally(new RuntimeException("destination already exists"));
+
+        newMovies.assertNoValues();
+        newMovies.assertNoErrors();
+    }
+}
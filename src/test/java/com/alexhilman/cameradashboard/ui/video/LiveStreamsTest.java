@@ -0,0 +1,89 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.conf.Camera;
+import org.bytedeco.javacpp.opencv_core;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.javacpp.opencv_core.cvScalarAll;
+import static org.bytedeco.javacpp.opencv_core.cvSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+
+public class LiveStreamsTest {
+    private Camera camera;
+    private LiveStreams liveStreams;
+
+    @Before
+    public void setup() {
+        camera = new Camera("cam1", null, null, Collections.emptyList(), Collections.emptyList());
+        liveStreams = new LiveStreams(mock(CameraWatcher.class));
+    }
+
+    @Test
+    public void shouldShareStreamsWithTheSameParameters() {
+        liveStreams.subscribe(camera, 5, 640);
+        liveStreams.subscribe(camera, 5, 640);
+        assertThat(liveStreams.getStreamCount(), is(1));
+
+        liveStreams.subscribe(camera, 5, 320);
+        liveStreams.subscribe(camera, 10, 640);
+        assertThat(liveStreams.getStreamCount(), is(3));
+    }
+
+    @Test
+    public void shouldClampParametersBeforeSharing() {
+        liveStreams.subscribe(camera, 60, 4000);
+        liveStreams.subscribe(camera, LiveStreams.MAX_FRAMES_PER_SECOND, LiveStreams.MAX_WIDTH);
+        assertThat(liveStreams.getStreamCount(), is(1));
+    }
+
+    @Test
+    public void shouldDropStreamsWithoutViewers() throws Exception {
+        final LiveStreams.Subscription first = liveStreams.subscribe(camera, 5, 640);
+        final LiveStreams.Subscription second = liveStreams.subscribe(camera, 5, 640);
+
+        first.close();
+        assertThat(liveStreams.getStreamCount(), is(1));
+        second.close();
+        assertThat(liveStreams.getStreamCount(), is(0));
+        assertThat(second.awaitFrame(1, TimeUnit.MILLISECONDS), is(nullValue()));
+    }
+
+    @Test
+    public void shouldScaleCopyOfFrameForEachStream() throws Exception {
+        liveStreams.start();
+        final opencv_core.IplImage image = opencv_core.IplImage.create(256, 144, IPL_DEPTH_8U, 3);
+        try (final LiveStreams.Subscription small = liveStreams.subscribe(camera, 5, 64);
+             final LiveStreams.Subscription large = liveStreams.subscribe(camera, 5, 128)) {
+            cvSet(image, cvScalarAll(0));
+            liveStreams.frameDecoded(camera, image);
+            // the pipeline reuses its image as soon as the listener returns
+            cvSet(image, cvScalarAll(255));
+
+            assertBlackFrame(small.awaitFrame(10, TimeUnit.SECONDS), 64, 36);
+            assertBlackFrame(large.awaitFrame(10, TimeUnit.SECONDS), 128, 72);
+        } finally {
+            liveStreams.stop();
+            image.close();
+        }
+    }
+
+    private static void assertBlackFrame(final byte[] jpeg, final int width, final int height) throws Exception {
+        final BufferedImage frame = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertThat(frame.getWidth(), is(width));
+        assertThat(frame.getHeight(), is(height));
+        assertThat(frame.getRGB(width / 2, height / 2) & 0xff, is(lessThan(16)));
+    }
+}
@@ -0,0 +1,227 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.alexhilman.cameradashboard.ui.video.MovieFileManager.movieFileNameFor;
+import static java.time.temporal.ChronoUnit.DAYS;
+import static java.time.temporal.ChronoUnit.HOURS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class MovieCatalogTest {
+    private File storageDirectory;
+    private File rotatingDirectory;
+    private File savedDirectory;
+    private File catalogDirectory;
+    private Instant now;
+
+    @Before
+    public void setup() throws IOException {
+        storageDirectory = Files.createTempDirectory("movie-catalog").toFile();
+        rotatingDirectory = new File(storageDirectory, "rotating");
+        savedDirectory = new File(storageDirectory, "saved");
+        catalogDirectory = new File(storageDirectory, ".catalog");
+        new File(rotatingDirectory, "cam1").mkdirs();
+        new File(savedDirectory, "cam1").mkdirs();
+        now = Instant.now();
+    }
+
+    @After
+    public void tearDown() {
+        recurseDelete(storageDirectory);
+    }
+
+    @Test
+    public void shouldRebuildFromDirectories() throws IOException {
+        final String oldMovie = createMovie(rotatingDirectory, "cam1", now.minus(2, DAYS));
+        final String newMovie = createMovie(rotatingDirectory, "cam1", now.minus(1, HOURS));
+        final String savedMovie = createMovie(savedDirectory, "cam1", now.minus(2, HOURS));
+        new File(new File(rotatingDirectory, "cam1"), "not-a-movie.mp4").createNewFile();
+
+        final MovieCatalog catalog = newCatalog();
+
+        assertThat(namesOf(catalog.findInRange(now.minus(1, DAYS), now)), contains(newMovie, savedMovie));
+        assertThat(namesOf(catalog.findInRange(Instant.EPOCH, now)), contains(newMovie, savedMovie, oldMovie));
+    }
+
+    @Test
+    public void shouldFindNothingOutsideOfRange() throws IOException {
+        createMovie(rotatingDirectory, "cam1", now.minus(2, DAYS));
+        final MovieCatalog catalog = newCatalog();
+
+        assertThat(catalog.findInRange(now.minus(1, DAYS), now), is(empty()));
+        assertThat(catalog.findInRange(now, now.minus(1, DAYS)), is(empty()));
+    }
+
+    @Test
+    public void shouldTrackAddedAndRemovedMovies() throws IOException {
+        final MovieCatalog catalog = newCatalog();
+        final String movie = createMovie(rotatingDirectory, "cam1", now.minus(1, HOURS));
+        catalog.add(MovieCatalog.Pool.rotating, "cam1", movie);
+
+        assertThat(namesOf(catalog.findInRange(Instant.EPOCH, now)), contains(movie));
+
+        catalog.remove(MovieCatalog.Pool.rotating, "cam1", movie);
+        catalog.add(MovieCatalog.Pool.saved, "cam1", movie);
+
+        final List<File> files = catalog.findInRange(Instant.EPOCH, now);
+        assertThat(namesOf(files), contains(movie));
+        assertThat(files.get(0).getParentFile().getParentFile(), is(savedDirectory));
+    }
+
+    @Test
+    public void shouldNotifyOnlyOfActualChanges() throws IOException {
+        final MovieCatalog catalog = newCatalog();
+        final String movie = createMovie(rotatingDirectory, "cam1", now.minus(1, HOURS));
+        final List<String> changes = new ArrayList<>();
+        catalog.addChangeListener((pool, cameraName, fileName) -> changes.add(pool + "/" + fileName));
+
+        catalog.add(MovieCatalog.Pool.rotating, "cam1", movie);
+        catalog.add(MovieCatalog.Pool.rotating, "cam1", movie);
+        catalog.remove(MovieCatalog.Pool.rotating, "cam1", movie);
+        catalog.remove(MovieCatalog.Pool.rotating, "cam1", movie);
+
+        assertThat(changes, contains("rotating/" + movie, "rotating/" + movie));
+    }
+
+    @Test
+    public void shouldReloadFromIndexFiles() throws IOException {
+        final MovieCatalog catalog = newCatalog();
+        final String movie = createMovie(rotatingDirectory, "cam1", now.minus(1, HOURS));
+        catalog.add(MovieCatalog.Pool.rotating, "cam1", movie);
+
+        assertThat(namesOf(newCatalog().findInRange(Instant.EPOCH, now)), contains(movie));
+    }
+
+    @Test
+    public void shouldFindOldestMoviesAcrossCameras() throws IOException {
+        new File(rotatingDirectory, "cam2").mkdirs();
+        final String oldest = createMovie(rotatingDirectory, "cam1", now.minus(3, DAYS));
+        final String older = createMovie(rotatingDirectory, "cam2", now.minus(2, DAYS));
+        final String old = createMovie(rotatingDirectory, "cam1", now.minus(1, DAYS));
+        createMovie(rotatingDirectory, "cam2", now.minus(1, HOURS));
+        createMovie(savedDirectory, "cam1", now.minus(4, DAYS));
+        final MovieCatalog catalog = newCatalog();
+
+        final List<File> files = catalog.findOldest(MovieCatalog.Pool.rotating, 3);
+        assertThat(namesOf(files), contains(oldest, older, old));
+        assertThat(files.get(1).getParentFile(), is(new File(rotatingDirectory, "cam2")));
+    }
+
+    @Test
+    public void shouldRemoveSeveralMovies() throws IOException {
+        final String first = createMovie(rotatingDirectory, "cam1", now.minus(2, HOURS));
+        final String second = createMovie(rotatingDirectory, "cam1", now.minus(1, HOURS));
+        final MovieCatalog catalog = newCatalog();
+
+        catalog.removeAll(MovieCatalog.Pool.rotating, "cam1", Arrays.asList(first, second));
+
+        assertThat(catalog.findOldest(MovieCatalog.Pool.rotating, 10), is(empty()));
+        assertThat(catalog.findInRange(Instant.EPOCH, now), is(empty()));
+    }
+
+    @Test
+    public void shouldPageThroughMoviesInRangeAcrossPoolsAndCameras() throws IOException {
+        new File(rotatingDirectory, "cam2").mkdirs();
+        final String newest = createMovie(rotatingDirectory, "cam2", now.minus(1, HOURS));
+        final String newer = createMovie(savedDirectory, "cam1", now.minus(2, HOURS));
+        final String older = createMovie(rotatingDirectory, "cam1", now.minus(3, HOURS));
+        final String oldest = createMovie(rotatingDirectory, "cam2", now.minus(4, HOURS));
+        createMovie(rotatingDirectory, "cam1", now.minus(2, DAYS));
+        final MovieCatalog catalog = newCatalog();
+
+        assertThat(catalog.countInRange(now.minus(1, DAYS), now), is(4));
+        assertThat(namesOf(catalog.findInRange(now.minus(1, DAYS), now, 0, 2)), contains(newest, newer));
+        assertThat(namesOf(catalog.findInRange(now.minus(1, DAYS), now, 2, 2)), contains(older, oldest));
+        assertThat(catalog.findInRange(now.minus(1, DAYS), now, 4, 2), is(empty()));
+    }
+
+    @Test
+    public void shouldIndexOnlyMovieFiles() throws IOException {
+        final String movie = createMovie(rotatingDirectory, "cam1", now.minus(1, HOURS));
+        final File cameraDirectory = new File(rotatingDirectory, "cam1");
+        final String timestamp = movie.substring(0, movie.lastIndexOf('.'));
+        new File(cameraDirectory, timestamp + ".jpg").createNewFile();
+        new File(cameraDirectory, "." + timestamp + ".jpg.tmp").createNewFile();
+        new File(cameraDirectory, movie + ".remux").createNewFile();
+        new File(cameraDirectory, timestamp + ".partial").createNewFile();
+        new File(cameraDirectory, timestamp + ".mp4.json").createNewFile();
+
+        assertThat(namesOf(newCatalog().findInRange(Instant.EPOCH, now)), contains(movie));
+    }
+
+    @Test
+    public void shouldTrustIndexWhenDirectoryChangesAfterIt() throws IOException {
+        final String movie = createMovie(rotatingDirectory, "cam1", now.minus(2, HOURS));
+        newCatalog();
+        final File cameraDirectory = new File(rotatingDirectory, "cam1");
+        new File(cameraDirectory, movie.replace(".mp4", ".jpg")).createNewFile();
+        createMovie(rotatingDirectory, "cam1", now.minus(1, HOURS));
+        cameraDirectory.setLastModified(System.currentTimeMillis() + 60_000);
+
+        assertThat(namesOf(newCatalog().findInRange(Instant.EPOCH, now)), contains(movie));
+    }
+
+    @Test
+    public void shouldRebuildIndexOfAnotherCatalogVersion() throws IOException {
+        final String movie = createMovie(rotatingDirectory, "cam1", now.minus(1, HOURS));
+        final File indexDirectory = new File(catalogDirectory, "rotating");
+        indexDirectory.mkdirs();
+        Files.write(new File(indexDirectory, "cam1.idx").toPath(),
+                    Arrays.asList(movie, movie + ".remux"),
+                    StandardCharsets.UTF_8);
+        Files.write(new File(indexDirectory, "version").toPath(),
+                    Collections.singletonList(String.valueOf(MovieCatalog.CATALOG_VERSION - 1)),
+                    StandardCharsets.UTF_8);
+
+        assertThat(namesOf(newCatalog().findInRange(Instant.EPOCH, now)), contains(movie));
+        assertThat(Files.readAllLines(new File(indexDirectory, "cam1.idx").toPath(), StandardCharsets.UTF_8),
+                   contains(movie));
+    }
+
+    private MovieCatalog newCatalog() {
+        final MovieCatalog catalog = new MovieCatalog(catalogDirectory);
+        catalog.rebuild(MovieCatalog.Pool.rotating, rotatingDirectory);
+        catalog.rebuild(MovieCatalog.Pool.saved, savedDirectory);
+        return catalog;
+    }
+
+    private String createMovie(final File poolDirectory, final String cameraName, final Instant instant)
+            throws IOException {
+        final String name = movieFileNameFor(instant, "mp4");
+        new File(new File(poolDirectory, cameraName), name).createNewFile();
+        return name;
+    }
+
+    private List<String> namesOf(final List<File> files) {
+        return files.stream()
+                    .map(File::getName)
+                    .collect(toList());
+    }
+
+    private void recurseDelete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            Arrays.stream(files)
+                  .forEach(this::recurseDelete);
+        }
+        if (!file.delete()) {
+            throw new IllegalStateException("Could not delete file: " + file.getAbsolutePath());
+        }
+    }
+}
@@ -4,23 +4,44 @@ import com.alexhilman.cameradashboard.ui.Fixtures;
 import com.alexhilman.cameradashboard.ui.conf.Camera;
 import com.alexhilman.cameradashboard.ui.conf.CameraConfiguration;
 import com.google.common.collect.Lists;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
 import static com.alexhilman.cameradashboard.ui.CameraConfigurationReader.readCameraConfig;
 import static java.util.stream.Collectors.toList;
+import static org.bytedeco.javacpp.avcodec.AV_CODEC_ID_MPEG4;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class MovieFileManagerTest {
     private MovieFileManager movieFileManager;
@@ -88,4 +109,142 @@ public class MovieFileManagerTest {
                             assertThat(movieFileManager.getCameraForMovie(movie), is(camera));
                         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldMoveIndexAheadOfMediaDataOfMotionClip() throws Exception {
+        final File clip = recordClip();
+        final List<String> recordedAtoms = topLevelAtomsOf(clip);
+        assertThat(recordedAtoms.indexOf("moov"), greaterThan(recordedAtoms.indexOf("mdat")));
+
+        final Movie movie = movieFileManager.addMotionClipToRotatingPool(camera, clip).get(30, TimeUnit.SECONDS);
+
+        final List<String> atoms = topLevelAtomsOf(movie.getMovieFile());
+        assertThat(atoms, hasItems("moov", "mdat"));
+        assertThat(atoms.indexOf("moov"), lessThan(atoms.indexOf("mdat")));
+        assertThat(clip.exists(), is(false));
+    }
+
+    @Test
+    public void shouldKeepMotionClipAsRecordedWhenRemuxFails() throws Exception {
+        final MovieHelper movieHelper = mock(MovieHelper.class);
+        doThrow(new RuntimeException("not a movie")).when(movieHelper)
+                                                     .remuxForFastStart(any(File.class), any(File.class));
+        when(movieHelper.probeMetadataFor(any(File.class))).thenThrow(new RuntimeException("not a movie"));
+        final MovieFileManager manager = new MovieFileManager(readCameraConfig(),
+                                                              movieHelper,
+                                                              movieFileManager.getStorageDirectory()
+                                                                              .getAbsolutePath());
+        final File clip = Fixtures.emptyFile();
+        final byte[] bytes = {1, 2, 3, 4};
+        Files.write(clip.toPath(), bytes);
+
+        final Movie movie = manager.addMotionClipToRotatingPool(camera, clip).get(30, TimeUnit.SECONDS);
+
+        assertThat(Files.readAllBytes(movie.getMovieFile().toPath()), is(bytes));
+        assertThat(new File(movie.getMovieFile().getParentFile(), movie.getMovieFile().getName() + ".remux").exists(),
+                   is(false));
+        assertThat(clip.exists(), is(false));
+    }
+
+    @Test
+    public void shouldMovePendingPosterAfterMovieIsSaved() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final MovieHelper movieHelper = mock(MovieHelper.class);
+        doThrow(new RuntimeException("not a movie")).when(movieHelper)
+                                                     .remuxForFastStart(any(File.class), any(File.class));
+        when(movieHelper.probeMetadataFor(any(File.class))).thenThrow(new RuntimeException("not a movie"));
+        when(movieHelper.grabJpgFrame(any(File.class), anyInt())).thenAnswer(invocation -> {
+            release.await();
+            return new byte[]{1};
+        });
+        final MovieFileManager manager = new MovieFileManager(readCameraConfig(),
+                                                              movieHelper,
+                                                              movieFileManager.getStorageDirectory()
+                                                                              .getAbsolutePath());
+        final Movie movie = manager.addMoviesToRotatingPool(camera, Lists.newArrayList(Fixtures.emptyFile())).get(0);
+        final CompletableFuture<File> poster = manager.generatePosterFor(movie);
+
+        final CompletableFuture<Void> saved = manager.moveRotatingPoolVideoToSavedPool(movie);
+        assertThat(saved.isDone(), is(false));
+        release.countDown();
+        saved.get(10, TimeUnit.SECONDS);
+
+        final File savedDirectory = manager.getSavedDirectoryForCamera(camera);
+        assertThat(poster.isDone(), is(true));
+        assertThat(new File(savedDirectory, movie.getName()).exists(), is(true));
+        assertThat(new File(savedDirectory, movie.getPosterImageFile().getName()).exists(), is(true));
+        assertThat(movie.getPosterImageFile().exists(), is(false));
+    }
+
+    @Test
+    public void shouldDropRecordingWhichCannotBeDeletedFromCatalog() throws Exception {
+        final List<File> movieFiles = movieFileManager.addMoviesToRotatingPool(camera, mockFiles.subList(0, 2))
+                                                      .stream()
+                                                      .map(Movie::getMovieFile)
+                                                      .sorted()
+                                                      .collect(toList());
+        // a non-empty directory cannot be deleted, even by a privileged user
+        final File undeletable = movieFiles.get(0);
+        Files.delete(undeletable.toPath());
+        Files.createDirectories(undeletable.toPath().resolve("busy"));
+
+        final Eviction failed = movieFileManager.evictOldestRecordings(1);
+        assertThat(failed.getEvicted(), is(0));
+        assertThat(failed.getFailed(), is(1));
+
+        final Eviction evicted = movieFileManager.evictOldestRecordings(1);
+        assertThat(evicted.getEvicted(), is(1));
+        assertThat(evicted.getFailed(), is(0));
+        assertThat(movieFiles.get(1).exists(), is(false));
+        assertThat(movieFileManager.evictOldestRecordings(1).isEmpty(), is(true));
+    }
+
+    /**
+     * Records a short clip the way a camera's clips are muxed, with the index written last.
+     */
+    private static File recordClip() throws Exception {
+        final File clip = new File(Fixtures.tmpFolder(), System.nanoTime() + ".mp4");
+        try (final FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(clip, 64, 48, 0)) {
+            recorder.setFormat("mp4");
+            recorder.setVideoCodec(AV_CODEC_ID_MPEG4);
+            recorder.setFrameRate(15);
+            recorder.start();
+            final Frame frame = new Frame(64, 48, Frame.DEPTH_UBYTE, 3);
+            for (int i = 0; i < 30; i++) {
+                recorder.record(frame);
+            }
+            recorder.stop();
+        }
+        return clip;
+    }
+
+    private static List<String> topLevelAtomsOf(final File movieFile) throws IOException {
+        final List<String> atoms = new ArrayList<>();
+        try (final DataInputStream in = new DataInputStream(new FileInputStream(movieFile))) {
+            while (true) {
+                final long size;
+                final byte[] type = new byte[4];
+                try {
+                    size = in.readInt() & 0xFFFFFFFFL;
+                    in.readFully(type);
+                } catch (EOFException e) {
+                    return atoms;
+                }
+                atoms.add(new String(type, StandardCharsets.US_ASCII));
+                if (size == 0) {
+                    return atoms;
+                }
+                final long header = size == 1 ? 16 : 8;
+                final long atomSize = size == 1 ? in.readLong() : size;
+                long remaining = atomSize - header;
+                while (remaining > 0) {
+                    final long skipped = in.skip(remaining);
+                    if (skipped <= 0) {
+                        return atoms;
+                    }
+                    remaining -= skipped;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.google.common.base.Ticker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MovieMetadataCacheTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    private File storageDirectory;
+    private File metadataDirectory;
+    private File movieFile;
+    private Movie movie;
+    private MovieHelper movieHelper;
+
+    @Before
+    public void setup() throws IOException {
+        storageDirectory = Files.createTempDirectory("movie-metadata").toFile();
+        metadataDirectory = new File(storageDirectory, ".metadata");
+        final File cameraDirectory = new File(storageDirectory, "cam1");
+        cameraDirectory.mkdirs();
+        movieFile = new File(cameraDirectory, "2017-01-01 00:00:00.000.mp4");
+        Files.write(movieFile.toPath(), new byte[]{1, 2, 3, 4});
+        movie = new Movie(movieFile, new File(cameraDirectory, "2017-01-01 00:00:00.000.jpg"));
+        movieHelper = mock(MovieHelper.class);
+    }
+
+    @After
+    public void tearDown() {
+        recurseDelete(storageDirectory);
+    }
+
+    private void recurseDelete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            Arrays.stream(files).forEach(this::recurseDelete);
+        }
+        if (!file.delete()) {
+            throw new IllegalStateException("Could not delete file: " + file.getAbsolutePath());
+        }
+    }
+
+    @Test
+    public void shouldReadRecordedMetadataFromSidecar() {
+        final MovieMetadata metadata = metadataOf(movieFile);
+        when(movieHelper.probeMetadataFor(movieFile)).thenReturn(metadata);
+        new MovieMetadataCache(metadataDirectory, movieHelper, ticker).record("cam1", movieFile);
+
+        final Optional<MovieMetadata> read = new MovieMetadataCache(metadataDirectory, movieHelper, ticker)
+                .metadataFor(movie);
+
+        assertThat(read, is(Optional.of(metadata)));
+        verify(movieHelper, times(1)).probeMetadataFor(movieFile);
+    }
+
+    @Test
+    public void shouldProbeMovieWhoseSidecarIsStale() throws IOException {
+        when(movieHelper.probeMetadataFor(movieFile)).thenReturn(metadataOf(movieFile));
+        new MovieMetadataCache(metadataDirectory, movieHelper, ticker).record("cam1", movieFile);
+
+        Files.write(movieFile.toPath(), new byte[]{1, 2, 3, 4, 5, 6});
+        final MovieMetadata rewritten = metadataOf(movieFile);
+        when(movieHelper.probeMetadataFor(movieFile)).thenReturn(rewritten);
+        final Optional<MovieMetadata> read = new MovieMetadataCache(metadataDirectory, movieHelper, ticker)
+                .metadataFor(movie);
+
+        assertThat(read, is(Optional.of(rewritten)));
+        verify(movieHelper, times(2)).probeMetadataFor(movieFile);
+    }
+
+    @Test
+    public void shouldProbeAgainAfterFailedProbeExpires() {
+        final MovieMetadataCache cache = new MovieMetadataCache(metadataDirectory, movieHelper, ticker);
+        when(movieHelper.probeMetadataFor(movieFile)).thenThrow(new RuntimeException("still being written"));
+
+        assertThat(cache.metadataFor(movie), is(Optional.empty()));
+        assertThat(cache.metadataFor(movie), is(Optional.empty()));
+        verify(movieHelper, times(1)).probeMetadataFor(movieFile);
+
+        final MovieMetadata metadata = metadataOf(movieFile);
+        doReturn(metadata).when(movieHelper).probeMetadataFor(movieFile);
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(MovieMetadataCache.FAILED_PROBE_RETRY_MINUTES + 1));
+
+        assertThat(cache.metadataFor(movie), is(Optional.of(metadata)));
+        assertThat(cache.metadataFor(movie), is(Optional.of(metadata)));
+        verify(movieHelper, times(2)).probeMetadataFor(movieFile);
+    }
+
+    private static MovieMetadata metadataOf(final File movieFile) {
+        return new MovieMetadata(10_000_000L, 1280, 720, 15, "h264", movieFile.length());
+    }
+}
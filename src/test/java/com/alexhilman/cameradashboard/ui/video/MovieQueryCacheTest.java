@@ -0,0 +1,105 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.alexhilman.cameradashboard.ui.video.MovieFileManager.movieFileNameFor;
+import static java.time.temporal.ChronoUnit.DAYS;
+import static java.time.temporal.ChronoUnit.HOURS;
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class MovieQueryCacheTest {
+    private File storageDirectory;
+    private File rotatingDirectory;
+    private File savedDirectory;
+    private MovieCatalog catalog;
+    private MovieQueryCache cache;
+    private Instant noon;
+
+    @Before
+    public void setup() throws IOException {
+        storageDirectory = Files.createTempDirectory("movie-query-cache").toFile();
+        rotatingDirectory = new File(storageDirectory, "rotating");
+        savedDirectory = new File(storageDirectory, "saved");
+        new File(rotatingDirectory, "cam1").mkdirs();
+        new File(rotatingDirectory, "cam2").mkdirs();
+        new File(savedDirectory, "cam1").mkdirs();
+        noon = LocalDate.now().atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant();
+
+        catalog = new MovieCatalog(new File(storageDirectory, ".catalog"));
+        catalog.rebuild(MovieCatalog.Pool.rotating, rotatingDirectory);
+        catalog.rebuild(MovieCatalog.Pool.saved, savedDirectory);
+        cache = new MovieQueryCache(catalog);
+    }
+
+    @After
+    public void tearDown() {
+        recurseDelete(storageDirectory);
+    }
+
+    @Test
+    public void shouldAnswerLikeTheCatalog() {
+        final String morning = addMovie(MovieCatalog.Pool.rotating, "cam1", noon.minus(3, HOURS));
+        final String saved = addMovie(MovieCatalog.Pool.saved, "cam1", noon.minus(2, HOURS));
+        final String otherCamera = addMovie(MovieCatalog.Pool.rotating, "cam2", noon.minus(1, HOURS));
+        final String yesterday = addMovie(MovieCatalog.Pool.rotating, "cam2", noon.minus(1, DAYS));
+
+        assertThat(namesOf(cache.findInRange(noon.minus(4, HOURS), noon)), contains(otherCamera, saved, morning));
+        assertThat(namesOf(cache.findInRange(noon.minus(150, MINUTES), noon)),
+                   contains(otherCamera, saved));
+        assertThat(namesOf(cache.findInRange(noon.minus(2, DAYS), noon)),
+                   contains(otherCamera, saved, morning, yesterday));
+        assertThat(cache.findInRange(Instant.EPOCH, noon), is(catalog.findInRange(Instant.EPOCH, noon)));
+    }
+
+    @Test
+    public void shouldInvalidateOnlyTheChangedDay() {
+        addMovie(MovieCatalog.Pool.rotating, "cam1", noon.minus(1, DAYS));
+        cache.findInRange(noon.minus(1, DAYS), noon);
+        final int buckets = cache.size();
+
+        final String added = addMovie(MovieCatalog.Pool.rotating, "cam1", noon.minus(1, HOURS));
+        assertThat(cache.size(), is(buckets - 1));
+        assertThat(namesOf(cache.findInRange(noon.minus(2, HOURS), noon)), contains(added));
+
+        catalog.remove(MovieCatalog.Pool.rotating, "cam1", added);
+        assertThat(cache.findInRange(noon.minus(2, HOURS), noon).isEmpty(), is(true));
+    }
+
+    private String addMovie(final MovieCatalog.Pool pool, final String cameraName, final Instant instant) {
+        final String name = movieFileNameFor(instant, "mp4");
+        catalog.add(pool, cameraName, name);
+        return name;
+    }
+
+    private List<String> namesOf(final List<File> files) {
+        return files.stream()
+                    .map(File::getName)
+                    .collect(toList());
+    }
+
+    private void recurseDelete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            Arrays.stream(files)
+                  .forEach(this::recurseDelete);
+        }
+        if (!file.delete()) {
+            throw new IllegalStateException("Could not delete file: " + file.getAbsolutePath());
+        }
+    }
+}
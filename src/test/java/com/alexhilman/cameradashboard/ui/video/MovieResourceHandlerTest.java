@@ -0,0 +1,117 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import com.alexhilman.cameradashboard.ui.video.MovieResourceHandler.ByteRange;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MovieResourceHandlerTest {
+    private File storageDirectory;
+    private MovieResourceHandler handler;
+
+    @Before
+    public void setup() throws IOException {
+        storageDirectory = Files.createTempDirectory("movie-resources").toFile();
+        new File(storageDirectory, "rotating/cam1").mkdirs();
+        Files.write(new File(storageDirectory, "rotating/cam1/2017-01-01 00:00:00.000.mp4").toPath(), new byte[10]);
+        new File(storageDirectory, ".catalog").mkdirs();
+        new File(storageDirectory, ".catalog/cam1.idx").createNewFile();
+        handler = new MovieResourceHandler(storageDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        recurseDelete(storageDirectory);
+    }
+
+    @Test
+    public void shouldParseByteRanges() {
+        assertThat(ByteRange.parse("bytes=0-99", 1000), is(new ByteRange(0, 99)));
+        assertThat(ByteRange.parse("bytes=500-", 1000), is(new ByteRange(500, 999)));
+        assertThat(ByteRange.parse("bytes=-100", 1000), is(new ByteRange(900, 999)));
+        assertThat(ByteRange.parse("bytes=900-5000", 1000), is(new ByteRange(900, 999)));
+        assertThat(ByteRange.parse("bytes=-5000", 1000), is(new ByteRange(0, 999)));
+    }
+
+    @Test
+    public void shouldReportUnsatisfiableRanges() {
+        assertThat(ByteRange.parse("bytes=1000-", 1000).isSatisfiable(), is(false));
+        assertThat(ByteRange.parse("bytes=-0", 1000).isSatisfiable(), is(false));
+        assertThat(ByteRange.parse("bytes=5000-", 1000).isSatisfiable(), is(false));
+        assertThat(ByteRange.parse("bytes=1000-1999", 1000).isSatisfiable(), is(false));
+        assertThat(ByteRange.parse("bytes=-100", 0).isSatisfiable(), is(false));
+    }
+
+    @Test
+    public void shouldAnswerUnsatisfiableRangeWithLengthOfFile() throws Exception {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getDateHeader(anyString())).thenReturn(-1L);
+        when(request.getHeader(HttpHeader.RANGE.asString())).thenReturn("bytes=10-");
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+
+        handler.handle("/rotating/cam1/2017-01-01 00:00:00.000.mp4", mock(Request.class), request, response);
+
+        verify(response).setHeader(HttpHeader.CONTENT_RANGE.asString(), "bytes */10");
+        verify(response).sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        verify(response, never()).setStatus(anyInt());
+    }
+
+    @Test
+    public void shouldIgnoreMalformedAndMultipleRanges() {
+        assertThat(ByteRange.parse("items=0-99", 1000), is(nullValue()));
+        assertThat(ByteRange.parse("bytes=99-0", 1000), is(nullValue()));
+        assertThat(ByteRange.parse("bytes=a-b", 1000), is(nullValue()));
+        assertThat(ByteRange.parse("bytes=--5", 1000), is(nullValue()));
+        assertThat(ByteRange.parse("bytes=+1-2", 1000), is(nullValue()));
+        assertThat(ByteRange.parse("bytes=-", 1000), is(nullValue()));
+        assertThat(ByteRange.parse("bytes=0-9,20-29", 1000), is(nullValue()));
+    }
+
+    @Test
+    public void shouldResolveMoviesOnly() {
+        assertThat(handler.resolve("/rotating/cam1/2017-01-01 00:00:00.000.mp4").getName(),
+                   is("2017-01-01 00:00:00.000.mp4"));
+        assertThat(handler.resolve("/rotating/cam1"), is(nullValue()));
+        assertThat(handler.resolve("/rotating/cam1/missing.mp4"), is(nullValue()));
+        assertThat(handler.resolve("/.catalog/cam1.idx"), is(nullValue()));
+        assertThat(handler.resolve("/rotating/../../etc/passwd"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldTreatRecordingsAsImmutable() {
+        assertThat(MovieResourceHandler.isRecordingFileName("2017-01-01 00:00:00.000.mp4"), is(true));
+        assertThat(MovieResourceHandler.isRecordingFileName("2017-01-01 00:00:00.000.jpg"), is(true));
+        assertThat(MovieResourceHandler.isRecordingFileName("poster.jpg"), is(false));
+    }
+
+    private void recurseDelete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            Arrays.stream(files)
+                  .forEach(this::recurseDelete);
+        }
+        if (!file.delete()) {
+            throw new IllegalStateException("Could not delete file: " + file.getAbsolutePath());
+        }
+    }
+}
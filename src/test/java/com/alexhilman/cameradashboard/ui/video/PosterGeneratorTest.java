@@ -0,0 +1,109 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PosterGeneratorTest {
+    private static final byte[] JPG = {1, 2, 3};
+
+    private File directory;
+    private MovieHelper movieHelper;
+    private PosterGenerator posterGenerator;
+    private Movie movie;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("poster-generator").toFile();
+        movieHelper = mock(MovieHelper.class);
+        posterGenerator = new PosterGenerator(movieHelper);
+        movie = new Movie(new File(directory, "2017-01-01 00:00:00.000.mp4"),
+                          new File(directory, "2017-01-01 00:00:00.000.jpg"));
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void shouldGeneratePosterOnceForConcurrentRequests() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(movieHelper.grabJpgFrame(any(File.class), anyInt())).thenAnswer(invocation -> {
+            release.await();
+            return JPG;
+        });
+
+        final CompletableFuture<File> first = posterGenerator.generate(movie);
+        final CompletableFuture<File> second = posterGenerator.generate(movie);
+        assertThat(second, is(sameInstance(first)));
+        assertThat(posterGenerator.pendingGenerationOf(movie.getPosterImageFile()), is(sameInstance(first)));
+        assertThat(first.isDone(), is(false));
+
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS), is(movie.getPosterImageFile()));
+        assertThat(Files.readAllBytes(movie.getPosterImageFile().toPath()), is(JPG));
+        verify(movieHelper, times(1)).grabJpgFrame(any(File.class), anyInt());
+        assertThat(posterGenerator.pendingGenerationOf(movie.getPosterImageFile()).isDone(), is(true));
+    }
+
+    @Test
+    public void shouldFailGenerationAndTryAgainOnNextRequest() throws Exception {
+        when(movieHelper.grabJpgFrame(any(File.class), anyInt())).thenThrow(new RuntimeException("corrupt movie"));
+
+        final CompletableFuture<File> poster = posterGenerator.generate(movie);
+        try {
+            poster.get(10, TimeUnit.SECONDS);
+            fail("Poster generation should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), is("corrupt movie"));
+        }
+        assertThat(movie.getPosterImageFile().exists(), is(false));
+        assertThat(directory.listFiles(), is(arrayWithSize(0)));
+
+        final CompletableFuture<File> retry = posterGenerator.generate(movie);
+        assertThat(retry, is(not(sameInstance(poster))));
+        try {
+            retry.get(10, TimeUnit.SECONDS);
+            fail("Poster generation should have failed");
+        } catch (ExecutionException e) {
+            verify(movieHelper, times(2)).grabJpgFrame(any(File.class), anyInt());
+        }
+    }
+
+    @Test
+    public void shouldNotGenerateExistingPoster() throws Exception {
+        Files.write(movie.getPosterImageFile().toPath(), JPG);
+
+        assertThat(posterGenerator.generate(movie).get(), is(movie.getPosterImageFile()));
+        verify(movieHelper, times(0)).grabJpgFrame(any(File.class), anyInt());
+    }
+}
@@ -0,0 +1,65 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RetentionServiceTest {
+    private MovieFileManager movieFileManager;
+    private RetentionService retentionService;
+
+    @Before
+    public void setup() {
+        movieFileManager = mock(MovieFileManager.class);
+        when(movieFileManager.getTotalSpace()).thenReturn(100L);
+
+        retentionService = new RetentionService(movieFileManager);
+        retentionService.setBatchSize(10);
+        retentionService.setMaxEvictionsPerSecond(1_000_000);
+    }
+
+    @Test
+    public void shouldNotEvictBelowHighWatermark() throws Exception {
+        when(movieFileManager.getUsableSpace()).thenReturn(15L);
+
+        assertThat(retentionService.getUsage(), is(closeTo(0.85, 0.001)));
+        assertThat(retentionService.enforceWatermarks(), is(0));
+        verify(movieFileManager, never()).evictOldestRecordings(anyInt());
+    }
+
+    @Test
+    public void shouldEvictBatchesUntilBelowLowWatermark() throws Exception {
+        when(movieFileManager.getUsableSpace()).thenReturn(5L, 12L, 18L, 21L);
+        when(movieFileManager.evictOldestRecordings(10)).thenReturn(new Eviction(10, 0));
+
+        assertThat(retentionService.enforceWatermarks(), is(30));
+        verify(movieFileManager, times(3)).evictOldestRecordings(10);
+    }
+
+    @Test
+    public void shouldStopWhenNothingIsLeftToEvict() throws Exception {
+        when(movieFileManager.getUsableSpace()).thenReturn(5L, 7L);
+        when(movieFileManager.evictOldestRecordings(10)).thenReturn(new Eviction(4, 0), new Eviction(0, 0));
+
+        assertThat(retentionService.enforceWatermarks(), is(4));
+        verify(movieFileManager, times(2)).evictOldestRecordings(10);
+    }
+
+    @Test
+    public void shouldKeepEvictingPastRecordingsWhichCannotBeDeleted() throws Exception {
+        when(movieFileManager.getUsableSpace()).thenReturn(5L, 5L, 21L);
+        when(movieFileManager.evictOldestRecordings(10)).thenReturn(new Eviction(0, 10), new Eviction(10, 0));
+
+        assertThat(retentionService.enforceWatermarks(), is(10));
+        verify(movieFileManager, times(2)).evictOldestRecordings(10);
+    }
+}
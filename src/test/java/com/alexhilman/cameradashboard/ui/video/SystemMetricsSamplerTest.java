@@ -0,0 +1,89 @@
+package com.alexhilman.cameradashboard.ui.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SystemMetricsSamplerTest {
+    private MovieFileManager movieFileManager;
+    private SystemMetricsSampler sampler;
+    private Queue<Runnable> deliveries;
+    private List<SystemMetricsSampler.SystemMetrics> received;
+
+    @Before
+    public void setup() {
+        movieFileManager = mock(MovieFileManager.class);
+        when(movieFileManager.getTotalSpace()).thenReturn(100L);
+        when(movieFileManager.getUsableSpace()).thenReturn(40L, 30L, 20L);
+
+        sampler = new SystemMetricsSampler(movieFileManager);
+        deliveries = new ArrayDeque<>();
+        received = new ArrayList<>();
+    }
+
+    @Test
+    public void shouldSampleStorageOnceForAllSubscribers() {
+        final List<SystemMetricsSampler.SystemMetrics> otherReceived = new ArrayList<>();
+        sampler.subscribe(Runnable::run, received::add);
+        sampler.subscribe(Runnable::run, otherReceived::add);
+
+        sampler.sampleStorage();
+
+        verify(movieFileManager, times(1)).getUsableSpace();
+        assertThat(received, hasSize(2));
+        assertThat(received.get(1).getUsedSpace(), is(60L));
+        assertThat(otherReceived, hasSize(2));
+        assertThat(otherReceived.get(1).getUsedSpace(), is(60L));
+    }
+
+    @Test
+    public void shouldCoalesceSamplesWhileDeliveryIsPending() {
+        sampler.subscribe(deliveries::add, received::add);
+
+        sampler.sampleStorage();
+        sampler.sampleStorage();
+        sampler.sampleStorage();
+
+        assertThat(deliveries, hasSize(1));
+        deliveries.poll().run();
+        assertThat(received, hasSize(1));
+        assertThat(received.get(0).getUsedSpace(), is(80L));
+
+        sampler.sampleMemory();
+        assertThat(deliveries, hasSize(1));
+    }
+
+    @Test
+    public void shouldCloseSubscriptionWhenExecutorRejects() {
+        sampler.subscribe(r -> {
+            throw new RejectedExecutionException("detached");
+        }, received::add);
+
+        assertThat(sampler.getSubscriptionCount(), is(0));
+    }
+
+    @Test
+    public void shouldNotDeliverAfterClose() {
+        final SystemMetricsSampler.Subscription subscription = sampler.subscribe(deliveries::add, received::add);
+
+        sampler.sampleStorage();
+        subscription.close();
+        deliveries.forEach(Runnable::run);
+
+        assertThat(received, hasSize(0));
+        assertThat(sampler.getSubscriptionCount(), is(0));
+    }
+}